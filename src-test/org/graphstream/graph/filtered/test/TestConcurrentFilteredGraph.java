@@ -0,0 +1,311 @@
+package org.graphstream.graph.filtered.test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Element;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.filtered.AttributeFilter;
+import org.graphstream.graph.filtered.ConcurrentFilteredGraph;
+import org.graphstream.graph.filtered.FilteredEdge;
+import org.graphstream.graph.filtered.FilteredGraph;
+import org.graphstream.graph.implementations.AdjacencyListGraph;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.util.Filters;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestConcurrentFilteredGraph {
+
+	static class OnFilter<T extends Element> implements AttributeFilter<T> {
+		public boolean isAvailable(T e) {
+			return Boolean.TRUE.equals(e.getAttribute("on"));
+		}
+
+		public String[] getAttributeKeys() {
+			return new String[] { "on" };
+		}
+	}
+
+	static String target(Edge e) {
+		return ((FilteredEdge) e).getFilteredElement().getTargetNode().getId();
+	}
+
+	@Test
+	public void checkSequential() {
+		Graph base = new AdjacencyListGraph("base");
+		final FilteredGraph g = new ConcurrentFilteredGraph("g", base,
+				new OnFilter<Node>(), Filters.<Edge> trueFilter());
+		final boolean[] consistent = { true };
+
+		//
+		// Sinks are called before the change is published, lookups by id
+		// must agree with the iteration.
+		//
+		g.addElementSink(new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				check(nodeId);
+			}
+
+			public void nodeRemoved(String sourceId, long timeId,
+					String nodeId) {
+				check(nodeId);
+			}
+
+			void check(String nodeId) {
+				boolean listed = false;
+
+				for (Node n : g.getEachNode()) {
+					listed |= n.getId().equals(nodeId);
+					consistent[0] &= g.getNode(n.getId()) == n;
+				}
+
+				consistent[0] &= listed == (g.getNode(nodeId) != null);
+			}
+		});
+
+		base.addNode("A").addAttribute("on", true);
+		base.addNode("B").addAttribute("on", true);
+		base.addNode("C");
+		base.addEdge("AB", "A", "B", true);
+		base.addEdge("BC", "B", "C");
+
+		assertEquals(2, g.getNodeCount());
+		assertEquals(2, g.getEdgeCount());
+		assertEquals(1, g.getNode("A").getDegree());
+		assertEquals(1, g.getNode("A").getOutDegree());
+		assertEquals(2, g.getNode("B").getDegree());
+		assertEquals(2, g.getNode("B").getInDegree());
+		assertNotNull(g.getNode("A").getEdgeToward("B"));
+		assertNull(g.getNode("A").getEdgeFrom("B"));
+		assertNotNull(g.getNode("B").getEdgeBetween("C"));
+		assertNull(g.getEdge("BC").getTargetNode());
+		assertEquals(1.0, g.getDensity(), 1e-9);
+
+		Node c = base.getNode("C");
+		c.setAttribute("on", true);
+
+		assertEquals(3, g.getNodeCount());
+		assertSame(g.getNode("C"), g.getEdge("BC").getTargetNode());
+		assertEquals(1, g.getNode("C").getDegree());
+		assertEquals(2.0 / 3, g.getDensity(), 1e-9);
+
+		base.removeNode("B");
+
+		assertEquals(2, g.getNodeCount());
+		assertEquals(0, g.getEdgeCount());
+		assertNull(g.getNode("B"));
+		assertEquals(0, g.getNode("A").getDegree());
+
+		//
+		// The removal of the attribute is the last event, reads leave the
+		// node in the graph until it is flushed.
+		//
+		c.removeAttribute("on");
+
+		assertNotNull(g.getNode("C"));
+		assertEquals(2, g.getNodeCount());
+
+		g.flush();
+
+		assertNull(g.getNode("C"));
+		assertEquals(1, g.getNodeCount());
+
+		c.setAttribute("on", true);
+		g.setNodeFilter(Filters.<Node> falseFilter());
+		assertEquals(0, g.getNodeCount());
+
+		g.setNodeFilter(new OnFilter<Node>());
+		assertEquals(2, g.getNodeCount());
+		assertTrue(consistent[0]);
+
+		try {
+			g.setLazy(true);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+
+		Iterator<Node> ite = g.getNodeIterator();
+		base.clear();
+
+		assertEquals(0, g.getNodeCount());
+		assertTrue(ite.hasNext());
+	}
+
+	@Test
+	public void checkConcurrentReaders() throws InterruptedException {
+		final Graph base = new AdjacencyListGraph("base");
+		final ConcurrentFilteredGraph g = new ConcurrentFilteredGraph("g",
+				base, new OnFilter<Node>(), Filters.<Edge> trueFilter());
+		final List<Throwable> errors = Collections
+				.synchronizedList(new LinkedList<Throwable>());
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		for (int i = 0; i < 200; i++)
+			base.addNode("n" + i).addAttribute("on", i % 2 == 0);
+
+		//
+		// Reads never change the graph, so events are only sent by the
+		// writer.
+		//
+		final Thread[] writerThread = new Thread[1];
+
+		g.addElementSink(new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				check();
+			}
+
+			public void nodeRemoved(String sourceId, long timeId,
+					String nodeId) {
+				check();
+			}
+
+			void check() {
+				if (Thread.currentThread() != writerThread[0])
+					errors.add(new AssertionError("event sent by a reader"));
+			}
+		});
+
+		Thread writer = new Thread() {
+			public void run() {
+				Random random = new Random(1);
+				int ids = 0;
+
+				try {
+					for (int step = 0; step < 30000; step++) {
+						int op = random.nextInt(10);
+						Node n = base.getNode(random.nextInt(base
+								.getNodeCount()));
+
+						if (op < 2) {
+							n.setAttribute("on", random.nextBoolean());
+						} else if (op < 4) {
+							n.removeAttribute("on");
+						} else if (op < 7) {
+							Node o = base.getNode(random.nextInt(base
+									.getNodeCount()));
+
+							if (o != n)
+								base.addEdge("e" + ids++, n, o, random
+										.nextBoolean());
+						} else if (op < 9) {
+							if (n.getDegree() > 0)
+								base.removeEdge(n.<Edge> getEdge(random
+										.nextInt(n.getDegree())));
+						} else {
+							base.removeNode(n);
+							base.addNode("m" + ids++).addAttribute("on",
+									true);
+						}
+					}
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}
+		};
+
+		Thread[] readers = new Thread[4];
+
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				public void run() {
+					try {
+						while (!done.get()) {
+							for (Node n : g.getEachNode()) {
+								//
+								// Degrees and edges may be published again
+								// between two calls, so each call is checked
+								// on its own.
+								//
+								for (Edge e : n.getEachEdge())
+									assertNotNull(e);
+
+								for (Edge e : n.getEachEnteringEdge())
+									assertTrue(!e.isDirected()
+											|| target(e).equals(n.getId()));
+
+								for (Edge e : n.getEachLeavingEdge())
+									assertTrue(!e.isDirected()
+											|| !target(e).equals(n.getId()));
+
+								assertTrue(n.getDegree() >= 0);
+
+								Node m = g.getNode(n.getId());
+								assertTrue(m == null
+										|| m.getId().equals(n.getId()));
+							}
+
+							for (Edge e : g.getEachEdge())
+								assertNotNull(e.getId());
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			};
+
+			readers[i].start();
+		}
+
+		writerThread[0] = writer;
+		writer.start();
+		writer.join();
+
+		done.set(true);
+
+		for (Thread reader : readers)
+			reader.join();
+
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+
+		//
+		// The last event may be the removal of an attribute.
+		//
+		writerThread[0] = Thread.currentThread();
+		g.flush();
+
+		int nodeCount = 0;
+
+		for (Node n : base.getEachNode()) {
+			Node m = g.getNode(n.getId());
+
+			if (Boolean.TRUE.equals(n.getAttribute("on"))) {
+				nodeCount++;
+				assertNotNull(m);
+				assertEquals(n.getDegree(), m.getDegree());
+				assertEquals(n.getInDegree(), m.getInDegree());
+				assertEquals(n.getOutDegree(), m.getOutDegree());
+			} else
+				assertNull(m);
+		}
+
+		int linkedEdges = 0;
+
+		for (Edge e : base.getEachEdge()) {
+			if (g.getNode(e.getNode0().getId()) != null
+					&& g.getNode(e.getNode1().getId()) != null)
+				linkedEdges++;
+		}
+
+		assertEquals(nodeCount, g.getNodeCount());
+		assertEquals(base.getEdgeCount(), g.getEdgeCount());
+		assertEquals(nodeCount < 2 ? 0 : linkedEdges
+				/ (nodeCount * (nodeCount - 1) / 2.0), g.getDensity(), 1e-9);
+
+		for (int i = 0; i < g.getNodeCount(); i++)
+			assertSame(g.getNode(g.getNode(i).getId()), g.getNode(i));
+	}
+}
@@ -2,25 +2,44 @@ package org.graphstream.graph.filtered.test;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
 
 import org.graphstream.graph.Edge;
+import org.graphstream.graph.Element;
+import org.graphstream.graph.ElementNotFoundException;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
+import org.graphstream.graph.filtered.AsyncDelivery;
+import org.graphstream.graph.filtered.AttributeFilter;
+import org.graphstream.graph.filtered.BatchSink;
+import org.graphstream.graph.filtered.ComponentTracker;
+import org.graphstream.graph.filtered.EgoGraph;
+import org.graphstream.graph.filtered.EgoNetworks;
+import org.graphstream.graph.filtered.EventBatch;
 import org.graphstream.graph.filtered.FilteredEdge;
 import org.graphstream.graph.filtered.FilteredGraph;
 import org.graphstream.graph.filtered.FilteredNode;
+import org.graphstream.graph.filtered.FilteredTraversal;
+import org.graphstream.graph.filtered.GraphPartition;
+import org.graphstream.graph.filtered.SubgraphManager;
 import org.graphstream.graph.implementations.AdjacencyListGraph;
+import org.graphstream.stream.SinkAdapter;
 import org.graphstream.stream.file.FileSourceDGS;
 import org.graphstream.util.Filter;
+import org.graphstream.util.Filters;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class TestFilteredGraph {
 
@@ -61,6 +80,1320 @@ public class TestFilteredGraph {
 		checkPart("C");
 	}
 
+	@Test
+	public void checkBaseRemoval() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		FilteredGraph c = new FilteredGraph("C", baseGraph,
+				new TypeFilter<Node>("C"), new TypeFilter<Edge>("C"));
+
+		baseGraph.removeNode("A1");
+		baseGraph.removeNode("B0");
+		baseGraph.removeEdge("C12");
+
+		checkIndex(g);
+		checkIndex(c);
+
+		assertEquals(3, c.getNodeCount());
+		assertEquals(2, c.getEdgeCount());
+		assertEquals(1, c.getNode("C1").getDegree());
+		assertEquals(2, c.getNode("C0").getDegree());
+		assertNotNull(c.getEdge("C01"));
+		assertEquals(null, c.getEdge("C12"));
+
+		assertEquals(2, g.getNodeCount());
+		assertEquals(1, g.getEdgeCount());
+		assertEquals(null, g.getNode("A1"));
+		assertEquals(null, g.getEdge("A01"));
+
+		for (Node n : baseGraph) {
+			boolean in = n.getLabel("type").equals("A");
+			assertEquals(in, g.contains(n));
+
+			if (in)
+				assertEquals(n, g.<FilteredNode> getNode(n.getId())
+						.getFilteredElement());
+		}
+
+		for (Edge e : baseGraph.getEachEdge()) {
+			boolean in = e.hasAttribute("type")
+					&& e.getLabel("type").equals("A");
+			assertEquals(in, g.contains(e));
+		}
+
+		assertEquals(1, g.getNode("A0").getDegree());
+		assertEquals(1, g.getNode("A2").getDegree());
+	}
+
+	@Test
+	public void checkIteration() {
+		FilteredGraph g = new FilteredGraph("B", baseGraph, new TypeFilter<Node>(
+				"B"), new TypeFilter<Edge>("B"));
+
+		HashSet<String> ids = new HashSet<String>();
+
+		for (Node n : g) {
+			checkIsFiltered(n);
+			ids.add(n.getId());
+		}
+
+		assertEquals(new HashSet<String>(Arrays.asList("B0", "B1", "B2")), ids);
+
+		Iterator<Node> it = g.getNodeIterator();
+		it.next();
+		g.include(baseGraph.<Node> getNode("A0"));
+
+		try {
+			it.next();
+			fail();
+		} catch (ConcurrentModificationException e) {
+		}
+
+		Iterator<Edge> eit = g.getEdgeIterator();
+
+		while (eit.hasNext()) {
+			if (eit.next().getId().equals("B01"))
+				eit.remove();
+		}
+
+		assertEquals(2, g.getEdgeCount());
+		assertEquals(null, baseGraph.getEdge("B01"));
+		checkIndex(g);
+	}
+
+	@Test
+	public void checkAdjacency() {
+		Graph base = new AdjacencyListGraph("base");
+
+		base.addNode("a");
+		base.addNode("b");
+		base.addNode("c");
+		base.addEdge("ab", "a", "b", true);
+		base.addEdge("ca", "c", "a", true);
+		base.addEdge("ac", "a", "c", false);
+		base.addEdge("aa", "a", "a", true);
+		base.addEdge("bc", "b", "c", false);
+
+		FilteredGraph g = new FilteredGraph("g", base);
+
+		for (Edge e : base.getEachEdge())
+			g.include(e);
+
+		g.include(base.<Node> getNode("a"));
+		g.include(base.<Node> getNode("c"));
+
+		FilteredNode a = g.getNode("a");
+
+		assertEquals(4, a.getDegree());
+		assertEquals(3, a.getInDegree());
+		assertEquals(3, a.getOutDegree());
+
+		for (int i = 0; i < a.getDegree(); i++)
+			checkIsFiltered(a.<Edge> getEdge(i));
+
+		assertEquals("ab", a.getEdgeToward("b").getId());
+		assertEquals("ca", a.getEdgeFrom("c").getId());
+		assertEquals(null, a.getEdgeFrom("b"));
+
+		HashSet<String> neighbors = new HashSet<String>();
+		Iterator<Node> it = a.getNeighborNodeIterator();
+
+		while (it.hasNext())
+			neighbors.add(it.next().getId());
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")), neighbors);
+
+		g.notInclude(base.<Edge> getEdge("ca"));
+		g.notInclude(base.<Edge> getEdge("aa"));
+
+		assertEquals(2, a.getDegree());
+		assertEquals(1, a.getInDegree());
+		assertEquals(2, a.getOutDegree());
+		assertEquals("ac", a.getEnteringEdge(0).getId());
+		assertEquals(2, g.<Node> getNode("c").getDegree());
+
+		Edge bc = g.getEdge("bc");
+
+		assertEquals(null, bc.getNode0());
+		assertEquals("c", bc.getOpposite(base.getNode("b")).getId());
+
+		g.notInclude(base.<Node> getNode("c"));
+
+		assertEquals(null, bc.getNode1());
+		assertEquals(a, g.getEdge("ab").getSourceNode());
+
+		g.include(base.<Node> getNode("b"));
+
+		assertEquals(g.getNode("b"), bc.getNode0());
+		assertEquals(g.getNode("b"), g.getEdge("ab").getTargetNode());
+	}
+
+	@Test
+	public void checkCompaction() {
+		Graph base = new AdjacencyListGraph("base");
+
+		for (int i = 0; i < 100; i++)
+			base.addNode(Integer.toString(i));
+
+		FilteredGraph g = new FilteredGraph("g", base, Filters
+				.<Node> trueFilter(), Filters.<Edge> trueFilter(), 10, 0);
+		g.setAutoCompaction(true);
+
+		assertEquals(100, g.getNodeCount());
+
+		for (int i = 0; i < 95; i++)
+			base.removeNode(Integer.toString(i));
+
+		assertEquals(5, g.getNodeCount());
+		checkIndex(g);
+
+		g.trimToSize();
+
+		for (int i = 95; i < 100; i++)
+			assertNotNull(g.getNode(Integer.toString(i)));
+
+		base.addNode("new");
+		assertNotNull(g.getNode("new"));
+		checkIndex(g);
+	}
+
+	@Test
+	public void checkParallelBuild() {
+		Graph base = new AdjacencyListGraph("base");
+		int size = 20000;
+
+		for (int i = 0; i < size; i++) {
+			base.addNode(Integer.toString(i));
+			base.getNode(i).addAttribute("value", i);
+		}
+
+		for (int i = 0; i < size; i++)
+			base.addEdge(i + "_" + (i + 1) % size, i, (i + 1) % size);
+
+		Filter<Node> even = new Filter<Node>() {
+			public boolean isAvailable(Node n) {
+				return ((Integer) n.getAttribute("value")) % 2 == 0;
+			}
+		};
+
+		FilteredGraph g = new FilteredGraph("g", base, even, Filters
+				.<Edge> trueFilter(), 4);
+
+		assertEquals(size / 2, g.getNodeCount());
+		assertEquals(size, g.getEdgeCount());
+		checkIndex(g);
+
+		for (Node n : g)
+			assertEquals(2, n.getDegree());
+
+		Graph copy = new AdjacencyListGraph("copy");
+		copy.setStrict(false);
+		copy.setAutoCreate(true);
+		g.replay(copy);
+
+		assertEquals(size, copy.getNodeCount());
+		assertEquals(size, copy.getEdgeCount());
+		assertEquals(0, copy.getNode("0").getAttribute("value"));
+		assertTrue(!copy.getNode("1").hasAttribute("value"));
+	}
+
+	@Test
+	public void checkAttributeRefilter() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		Graph copy = new AdjacencyListGraph("copy");
+
+		copy.setStrict(false);
+		copy.setAutoCreate(true);
+		g.replay(copy);
+		g.addSink(copy);
+
+		baseGraph.getNode("B0").setAttribute("type", "A");
+		baseGraph.getEdge("AB").addAttribute("type", "A");
+
+		assertEquals(4, g.getNodeCount());
+		assertEquals(4, g.getEdgeCount());
+		assertEquals(3, g.getNode("A0").getDegree());
+		assertEquals(1, g.getNode("B0").getDegree());
+		assertNotNull(copy.getEdge("AB"));
+
+		baseGraph.getNode("A1").setAttribute("type", "B");
+		baseGraph.getEdge("A02").setAttribute("weight", 1);
+
+		assertEquals(3, g.getNodeCount());
+		assertNotNull(g.getEdge("A12"));
+		assertEquals(null, copy.getNode("A1"));
+
+		baseGraph.getEdge("A12").removeAttribute("type");
+		baseGraph.stepBegins(1);
+
+		assertEquals(3, g.getEdgeCount());
+		assertEquals(null, g.getEdge("A12"));
+		assertEquals(null, copy.getEdge("A12"));
+		assertEquals(1, g.getNode("A2").getDegree());
+		checkIndex(g);
+
+		//
+		// Without a next event, reads do not change the graph, the node is
+		// evaluated again when the graph is flushed.
+		//
+		baseGraph.getNode("A2").removeAttribute("type");
+
+		assertEquals(3, g.getNodeCount());
+		assertNotNull(copy.getNode("A2"));
+
+		g.flush();
+
+		assertEquals(2, g.getNodeCount());
+		assertEquals(null, g.getNode("A2"));
+		assertEquals(null, copy.getNode("A2"));
+		checkIndex(g);
+	}
+
+	@Test
+	public void checkSetFilter() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		Graph copy = new AdjacencyListGraph("copy");
+		final LinkedList<String> events = new LinkedList<String>();
+
+		copy.setStrict(false);
+		copy.setAutoCreate(true);
+		g.replay(copy);
+		g.addSink(copy);
+		g.addElementSink(new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				events.add("+" + nodeId);
+			}
+
+			public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+				events.add("-" + nodeId);
+			}
+		});
+
+		Node a0 = g.getNode("A0");
+
+		g.setNodeFilter(new Filter<Node>() {
+			public boolean isAvailable(Node n) {
+				return n.getId().endsWith("0") || n.getId().equals("A1");
+			}
+		});
+
+		assertEquals(4, g.getNodeCount());
+		assertTrue(a0 == g.getNode("A0"));
+		assertEquals(new HashSet<String>(Arrays.asList("-A2", "+B0", "+C0")),
+				new HashSet<String>(events));
+		assertEquals(4, copy.getNodeCount());
+		assertEquals(0, g.getNode("B0").getDegree());
+
+		events.clear();
+		g.setEdgeFilter(Filters.<Edge> trueFilter());
+
+		assertEquals(12, g.getEdgeCount());
+		assertEquals(0, events.size());
+		assertEquals(4, g.getNode("A0").getDegree());
+		assertNotNull(copy.getEdge("BC"));
+
+		g.setEdgeFilter(new TypeFilter<Edge>("B"));
+
+		assertEquals(3, g.getEdgeCount());
+		assertEquals(null, g.getEdge("A01"));
+		assertEquals(0, g.getNode("A0").getDegree());
+		assertEquals(2, g.getNode("B0").getDegree());
+		checkIndex(g);
+
+		baseGraph.getEdge("A01").setAttribute("type", "B");
+		assertNotNull(g.getEdge("A01"));
+	}
+
+	@Test
+	public void checkLazy() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), Filters.<Edge> trueFilter(), true);
+
+		assertTrue(g.isLazy());
+		assertEquals(3, g.getNodeCount());
+		assertEquals(12, g.getEdgeCount());
+		checkIndex(g);
+
+		Node a0 = g.getNode("A0");
+		Node last = g.getNode(2);
+
+		assertEquals(4, a0.getDegree());
+		assertTrue(a0 == g.getNode("A0"));
+		assertTrue(a0 == g.getEdge("AB").getNode0());
+		assertEquals(null, g.getEdge("AB").getNode1());
+
+		baseGraph.removeNode(g.getNode(0).getId());
+
+		assertEquals(0, last.getIndex());
+		assertTrue(last == g.getNode(0));
+		assertEquals(1, last.getDegree());
+		checkIndex(g);
+
+		g.setLazy(false);
+		assertTrue(last == g.getNode(0));
+		checkOnlyFilteredInstance(g);
+		checkEndpoints(g);
+
+		baseGraph.getNode("B0").setAttribute("type", "A");
+		checkEndpoints(g);
+	}
+
+	@Test
+	public void checkRecycling() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+
+		g.setRecycling(true);
+		assertTrue(g.isRecycling());
+
+		FilteredNode a1 = g.getNode("A1");
+		int generation = a1.getGeneration();
+
+		baseGraph.getNode("A1").setAttribute("type", "B");
+
+		assertEquals(-1, a1.getIndex());
+		assertEquals(generation, a1.getGeneration());
+
+		//
+		// The wrapper waits to be reused, references to it are rejected.
+		//
+		assertTrue(!g.contains(a1));
+
+		try {
+			a1.getAttribute("type");
+			fail();
+		} catch (ElementNotFoundException e) {
+		}
+
+		try {
+			g.removeNode(a1);
+			fail();
+		} catch (ElementNotFoundException e) {
+		}
+
+		baseGraph.getNode("B1").setAttribute("type", "A");
+
+		assertTrue(a1 == g.getNode("B1"));
+		assertEquals("B1", a1.getId());
+		assertEquals(generation + 1, a1.getGeneration());
+		a1.checkGeneration(generation + 1);
+
+		try {
+			a1.checkGeneration(generation);
+			fail();
+		} catch (ElementNotFoundException e) {
+		}
+
+		assertEquals(0, a1.getDegree());
+		assertEquals(null, g.getNode("A1"));
+		checkIndex(g);
+
+		baseGraph.getEdge("B01").setAttribute("type", "A");
+		assertEquals(1, a1.getDegree());
+		checkEndpoints(g);
+	}
+
+	@Test
+	public void checkRemovedWrapper() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+
+		Node a1 = g.getNode("A1");
+		Node a2 = g.getNode("A2");
+
+		baseGraph.removeNode("A1");
+		checkRemoved(a1);
+
+		g.notInclude(baseGraph.<Node> getNode("A2"));
+		checkRemoved(a2);
+
+		//
+		// The node gets a new wrapper when it is included again.
+		//
+		g.include(baseGraph.<Node> getNode("A2"));
+
+		assertTrue(a2 != g.getNode("A2"));
+		assertEquals(1, g.getNode("A2").getDegree());
+		checkRemoved(a2);
+	}
+
+	/**
+	 * Check that the degrees, edges and traversals of a wrapper whose node
+	 * has left its graph are rejected.
+	 */
+	protected void checkRemoved(Node n) {
+		for (int i = 0; i < 6; i++) {
+			try {
+				switch (i) {
+				case 0:
+					n.getDegree();
+					break;
+				case 1:
+					n.getInDegree();
+					break;
+				case 2:
+					n.getOutDegree();
+					break;
+				case 3:
+					n.getEdge(0);
+					break;
+				case 4:
+					n.getEdgeIterator();
+					break;
+				case 5:
+					n.getBreadthFirstIterator();
+					break;
+				}
+
+				fail();
+			} catch (ElementNotFoundException e) {
+			}
+		}
+	}
+
+	@Test
+	public void checkBatching() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		Graph copy = new AdjacencyListGraph("copy");
+		final LinkedList<Integer> batches = new LinkedList<Integer>();
+		final Graph batchCopy = new AdjacencyListGraph("batchCopy");
+
+		copy.setStrict(false);
+		copy.setAutoCreate(true);
+		batchCopy.setStrict(false);
+		batchCopy.setAutoCreate(true);
+		g.replay(copy);
+		g.replay(batchCopy);
+		g.addSink(copy);
+		g.addSink(new BatchSinkAdapter() {
+			public void batchReceived(String sourceId, EventBatch batch) {
+				batches.add(batch.size());
+				batch.replay(batchCopy);
+			}
+		});
+
+		g.setBatchSize(100);
+
+		baseGraph.getNode("B0").setAttribute("type", "A");
+		baseGraph.getEdge("AB").addAttribute("type", "A");
+		baseGraph.getNode("A1").setAttribute("type", "B");
+		g.setAttribute("step", 1);
+
+		assertEquals(3, g.getNodeCount());
+		assertNotNull(copy.getNode("A1"));
+		assertEquals(null, copy.getNode("B0"));
+		assertEquals(0, batches.size());
+
+		baseGraph.stepBegins(1);
+
+		assertEquals(1, batches.size());
+		assertEquals(null, copy.getNode("A1"));
+		assertNotNull(copy.getEdge("AB"));
+		assertEquals(1, copy.getAttribute("step"));
+
+		for (Graph c : Arrays.asList(copy, batchCopy)) {
+			assertEquals(g.getNodeCount(), c.getNodeCount());
+
+			for (Node n : g.getEachNode())
+				assertNotNull(c.getNode(n.getId()));
+		}
+
+		//
+		// Each node entering the graph sends two events, its addition and
+		// the change of its attribute.
+		//
+		g.setBatchSize(3);
+		baseGraph.getNode("B1").setAttribute("type", "A");
+		baseGraph.getNode("B2").setAttribute("type", "A");
+
+		assertEquals(2, batches.size());
+		assertEquals(3, batches.getLast().intValue());
+
+		g.flush();
+
+		assertEquals(3, batches.size());
+		assertEquals(1, batches.getLast().intValue());
+		assertEquals(g.getNodeCount(), batchCopy.getNodeCount());
+
+		g.setBatchSize(0);
+		baseGraph.getNode("B1").setAttribute("type", "B");
+
+		assertEquals(3, batches.size());
+		assertEquals(null, copy.getNode("B1"));
+	}
+
+	@Test
+	public void checkFastRejection() {
+		final int[] lookups = new int[1];
+		Graph base = new AdjacencyListGraph("base") {
+			@Override
+			public <T extends Node> T getNode(String id) {
+				lookups[0]++;
+				return super.getNode(id);
+			}
+		};
+
+		FilteredGraph g = new FilteredGraph("g", base,
+				new TypeFilter<Node>("A"), Filters.<Edge> trueFilter());
+		final LinkedList<String> events = new LinkedList<String>();
+
+		g.addAttributeSink(new SinkAdapter() {
+			public void nodeAttributeChanged(String sourceId, long timeId,
+					String nodeId, String attribute, Object oldValue,
+					Object newValue) {
+				events.add(nodeId);
+			}
+		});
+
+		Node a = base.addNode("a");
+		Node b = base.addNode("b");
+		a.addAttribute("type", "A");
+		b.addAttribute("type", "B");
+		base.addNode("c").addAttribute("type", "A");
+		base.addNode("d").addAttribute("type", "B");
+
+		lookups[0] = 0;
+
+		for (int i = 0; i < 10; i++) {
+			a.setAttribute("x", i);
+			b.setAttribute("x", i);
+		}
+
+		base.removeNode(b);
+
+		assertEquals(0, lookups[0]);
+		assertEquals(9, events.size());
+		assertEquals(2, g.getNodeCount());
+		assertNotNull(g.getNode("c"));
+		checkIndex(g);
+	}
+
+	@Test
+	public void checkProjection() {
+		Graph base = new AdjacencyListGraph("base");
+		FilteredGraph g = new FilteredGraph("g", base,
+				Filters.<Node> trueFilter(), Filters.<Edge> trueFilter());
+		final LinkedList<String> events = new LinkedList<String>();
+
+		SinkAdapter sink = new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				events.add("+" + nodeId);
+			}
+
+			public void nodeAttributeAdded(String sourceId, long timeId,
+					String nodeId, String attribute, Object value) {
+				events.add(nodeId + "." + attribute);
+			}
+
+			public void graphAttributeAdded(String sourceId, long timeId,
+					String attribute, Object value) {
+				events.add(attribute);
+			}
+		};
+
+		g.addSink(sink, "x", new String("y"));
+
+		Node a = base.addNode("a");
+		a.addAttribute("x", 1);
+		a.addAttribute("z", 1);
+		a.addAttribute(new String("y"), 1);
+		g.addAttribute("z", 1);
+
+		assertEquals(Arrays.asList("+a", "a.x", "a.y", "z"), events);
+
+		g.removeSink(sink);
+		events.clear();
+		base.addNode("b").addAttribute("x", 1);
+
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void checkNesting() {
+		Filter<Node> notC = new AttributeFilter<Node>() {
+			public boolean isAvailable(Node n) {
+				return !"C".equals(n.getLabel("type"));
+			}
+
+			public String[] getAttributeKeys() {
+				return new String[] { "type" };
+			}
+		};
+
+		FilteredGraph r = new FilteredGraph("r", baseGraph, notC, Filters
+				.<Edge> trueFilter());
+		FilteredGraph a = new FilteredGraph("a", r, new TypeFilter<Node>("A"),
+				Filters.<Edge> trueFilter());
+		Node a0 = baseGraph.getNode("A0");
+		Node a1 = baseGraph.getNode("A1");
+
+		assertEquals(3, a.getNodeCount());
+		assertEquals(a0, a.<FilteredNode> getNode("A0").getFilteredElement());
+		assertNotNull(a.getFilteredNode(r.getNode("A2")));
+		assertTrue(a.contains(r.<Node> getNode("A2")));
+		assertTrue(!r.elementSinks().iterator().hasNext());
+
+		r.notInclude(a1);
+		assertTrue(!a.contains(a1));
+		r.include(a1);
+		assertTrue(a.contains(a1));
+
+		a0.setAttribute("type", "C");
+		assertTrue(!r.contains(a0));
+		assertTrue(!a.contains(a0));
+		a0.setAttribute("type", "A");
+		assertTrue(a.contains(a0));
+
+		a.include(baseGraph.<Node> getNode("C0"));
+		assertEquals(null, a.getNode("C0"));
+
+		checkIndex(a);
+
+		r.setNodeFilter(Filters.<Node> falseFilter());
+		assertEquals(0, a.getNodeCount());
+	}
+
+	@Test
+	public void checkSubgraphManager() {
+		SubgraphManager manager = new SubgraphManager(baseGraph);
+		FilteredGraph a = manager.newSubgraph("A", new TypeFilter<Node>("A"),
+				new TypeFilter<Edge>("A"));
+		FilteredGraph b = manager.newSubgraph("B", new TypeFilter<Node>("B"),
+				new TypeFilter<Edge>("B"));
+		FilteredGraph c = manager.newSubgraph("C", new TypeFilter<Node>("C"),
+				new TypeFilter<Edge>("C"));
+		final LinkedList<String> events = new LinkedList<String>();
+
+		b.addAttributeSink(new SinkAdapter() {
+			public void nodeAttributeAdded(String sourceId, long timeId,
+					String nodeId, String attribute, Object value) {
+				events.add(nodeId);
+			}
+		});
+
+		int sinks = 0;
+
+		for (Iterator<?> ite = baseGraph.elementSinks().iterator(); ite
+				.hasNext(); ite.next())
+			sinks++;
+
+		assertEquals(1, sinks);
+		assertEquals(3, manager.getSubgraphCount());
+
+		baseGraph.getNode("A0").addAttribute("x", 1);
+		baseGraph.getNode("B0").addAttribute("x", 1);
+		assertEquals(Arrays.asList("B0"), events);
+
+		baseGraph.getNode("A0").setAttribute("type", "B");
+		assertTrue(!a.contains(baseGraph.<Node> getNode("A0")));
+		assertTrue(b.contains(baseGraph.<Node> getNode("A0")));
+
+		baseGraph.removeNode("A1");
+		baseGraph.removeNode("B1");
+		baseGraph.removeEdge("C12");
+		baseGraph.addNode("C3").addAttribute("type", "C");
+
+		checkIndex(a);
+		checkIndex(b);
+		checkIndex(c);
+		assertEquals(1, a.getNodeCount());
+		assertEquals(3, b.getNodeCount());
+		assertEquals(4, c.getNodeCount());
+		assertEquals(2, c.getEdgeCount());
+
+		a.destroy();
+		FilteredGraph d = manager.newSubgraph("D", new TypeFilter<Node>("C"),
+				Filters.<Edge> falseFilter());
+		assertEquals(3, manager.getSubgraphCount());
+
+		baseGraph.removeNode("C0");
+		assertEquals(3, c.getNodeCount());
+		assertEquals(3, d.getNodeCount());
+		checkIndex(d);
+
+		manager.destroy();
+		assertEquals(0, manager.getSubgraphCount());
+		assertTrue(!baseGraph.elementSinks().iterator().hasNext());
+	}
+
+	@Test
+	public void checkPartition() {
+		GraphPartition partition = new GraphPartition(baseGraph, "type");
+		final LinkedList<String> events = new LinkedList<String>();
+
+		assertEquals(3, partition.getPartitionCount());
+		assertEquals(3, partition.getCutEdges().getEdgeCount());
+		assertEquals(0, partition.getCutEdges().getNodeCount());
+
+		for (FilteredGraph p : partition.getPartitions()) {
+			assertEquals(3, p.getNodeCount());
+			assertEquals(3, p.getEdgeCount());
+
+			p.addElementSink(new SinkAdapter() {
+				public void nodeAdded(String sourceId, long timeId,
+						String nodeId) {
+					events.add(nodeId);
+				}
+			});
+		}
+
+		baseGraph.getNode("A0").setAttribute("type", "B");
+		baseGraph.addNode("D0").addAttribute("type", "D");
+		baseGraph.addEdge("AD", "A1", "D0");
+
+		assertEquals(Arrays.asList("A0"), events);
+		assertEquals(4, partition.getPartitionCount());
+		assertEquals(2, partition.getPartition("A").getNodeCount());
+		assertEquals(4, partition.getPartition("B").getNodeCount());
+		assertEquals(1, partition.getPartition("D").getNodeCount());
+
+		int edges = partition.getCutEdges().getEdgeCount();
+
+		for (FilteredGraph p : partition.getPartitions()) {
+			checkIndex(p);
+			edges += p.getEdgeCount();
+
+			for (Edge e : p.getEachEdge())
+				assertEquals(e.getNode0().getLabel("type"), e.getNode1()
+						.getLabel("type"));
+		}
+
+		assertEquals(baseGraph.getEdgeCount(), edges);
+
+		baseGraph.getNode("A0").removeAttribute("type");
+		baseGraph.stepBegins(1);
+		assertEquals(3, partition.getPartition("B").getNodeCount());
+
+		baseGraph.getNode("B0").removeAttribute("type");
+		assertEquals(3, partition.getPartition("B").getNodeCount());
+
+		partition.flush();
+		assertEquals(2, partition.getPartition("B").getNodeCount());
+
+		partition.destroy();
+		assertTrue(!baseGraph.elementSinks().iterator().hasNext());
+	}
+
+	@Test
+	public void checkTraversal() {
+		Filter<Node> notC = new Filter<Node>() {
+			public boolean isAvailable(Node n) {
+				return !"C".equals(n.getLabel("type"));
+			}
+		};
+
+		FilteredGraph g = new FilteredGraph("g", baseGraph, notC, Filters
+				.<Edge> trueFilter());
+		Node start = g.getNode("A0");
+
+		for (boolean directed : new boolean[] { true, false }) {
+			LinkedList<Node> queue = new LinkedList<Node>();
+			HashMap<Node, Integer> depths = new HashMap<Node, Integer>();
+			FilteredTraversal<Node> bfs = (FilteredTraversal<Node>) start
+					.<Node> getBreadthFirstIterator(directed);
+
+			queue.add(start);
+			depths.put(start, 0);
+
+			while (!queue.isEmpty()) {
+				Node n = queue.removeFirst();
+				Iterator<Edge> edges = directed ? n.<Edge> getLeavingEdgeIterator()
+						: n.<Edge> getEdgeIterator();
+
+				assertEquals(n, bfs.next());
+				assertEquals((int) depths.get(n), bfs.getDepth());
+
+				while (edges.hasNext()) {
+					Node o = edges.next().getOpposite(n);
+
+					if (o != null && !depths.containsKey(o)) {
+						depths.put(o, depths.get(n) + 1);
+						queue.add(o);
+					}
+				}
+			}
+
+			assertTrue(!bfs.hasNext());
+
+			HashSet<Node> visited = new HashSet<Node>();
+			Iterator<Node> dfs = start.getDepthFirstIterator(directed);
+
+			while (dfs.hasNext())
+				assertTrue(visited.add(dfs.next()));
+
+			assertEquals(depths.keySet(), visited);
+		}
+
+		Iterator<Node> ite = start.getBreadthFirstIterator();
+		ite.next();
+		baseGraph.removeNode("B0");
+
+		try {
+			ite.next();
+			fail();
+		} catch (ConcurrentModificationException e) {
+		}
+	}
+
+	@Test
+	public void checkInduced() {
+		FilteredGraph g = new FilteredGraph("g", baseGraph,
+				new TypeFilter<Node>("A"), Filters.<Edge> trueFilter());
+		final LinkedList<String> events = new LinkedList<String>();
+
+		assertEquals(12, g.getEdgeCount());
+
+		g.setInduced(true);
+		assertEquals(3, g.getEdgeCount());
+		checkIndex(g);
+
+		g.addElementSink(new SinkAdapter() {
+			public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+				events.add(nodeId);
+			}
+
+			public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+				events.add(edgeId);
+			}
+		});
+
+		baseGraph.getNode("B0").setAttribute("type", "A");
+		baseGraph.getNode("B1").setAttribute("type", "A");
+		assertEquals(5, g.getEdgeCount());
+		assertNotNull(g.getEdge("AB"));
+		assertNotNull(g.getEdge("B01"));
+
+		g.include(baseGraph.<Edge> getEdge("BC"));
+		assertEquals(null, g.getEdge("BC"));
+
+		g.notInclude(baseGraph.<Node> getNode("A0"));
+		assertEquals(2, g.getEdgeCount());
+		assertEquals("A0", events.getLast());
+		assertEquals(4, events.size());
+
+		baseGraph.getNode("B0").setAttribute("type", "B");
+		assertEquals(1, g.getEdgeCount());
+		assertNotNull(g.getEdge("A12"));
+		checkIndex(g);
+	}
+
+	@Test
+	public void checkEgoNetworks() {
+		EgoNetworks networks = new EgoNetworks(baseGraph);
+		EgoGraph near = networks.newEgoGraph("near", 1, baseGraph
+				.getNode("A1"));
+		EgoGraph far = networks.newEgoGraph("far", 2, baseGraph.getNode("A1"));
+
+		assertEquals(2, networks.getEgoGraphCount());
+		assertEquals(3, near.getNodeCount());
+		assertEquals(3, near.getEdgeCount());
+		assertEquals(5, far.getNodeCount());
+		assertEquals(6, far.getEdgeCount());
+		assertEquals(2, far.getDistance(baseGraph.getNode("C0")));
+
+		baseGraph.removeEdge("A01");
+		assertEquals(2, near.getNodeCount());
+		assertEquals(3, far.getNodeCount());
+		assertEquals(2, far.getDistance(far.getNode("A0")));
+		checkIndex(far);
+
+		baseGraph.addEdge("A1B1", "A1", "B1");
+		assertEquals(3, near.getNodeCount());
+		assertEquals(6, far.getNodeCount());
+		assertEquals(2, far.getDistance(baseGraph.getNode("B0")));
+		assertNotNull(far.getEdge("B01"));
+		checkIndex(far);
+
+		try {
+			far.include(baseGraph.<Node> getNode("C1"));
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+
+		networks.destroy();
+		assertTrue(!baseGraph.elementSinks().iterator().hasNext());
+	}
+
+	@Test
+	public void checkDegreeStatistics() {
+		FilteredGraph g = new FilteredGraph("g", baseGraph, Filters
+				.<Node> trueFilter(), Filters.<Edge> trueFilter());
+
+		assertArrayEquals(new int[] { 0, 0, 6, 0, 3 }, g
+				.getDegreeDistribution());
+		assertEquals(2, g.getMinDegree());
+		assertEquals(4, g.getMaxDegree());
+		assertEquals(24.0 / 9, g.getAverageDegree(), 1e-9);
+		assertEquals(12.0 / 36, g.getDensity(), 1e-9);
+
+		g.notInclude(baseGraph.<Edge> getEdge("AB"));
+		assertArrayEquals(new int[] { 0, 0, 6, 2, 1 }, g
+				.getDegreeDistribution());
+		assertEquals(2, g.getMinDegree());
+		assertEquals(4, g.getMaxDegree());
+
+		baseGraph.removeNode("C0");
+		assertArrayEquals(new int[] { 0, 2, 6 }, g.getDegreeDistribution());
+		assertEquals(1, g.getMinDegree());
+		assertEquals(2, g.getMaxDegree());
+		assertEquals(14.0 / 8, g.getAverageDegree(), 1e-9);
+		assertEquals(7.0 / 28, g.getDensity(), 1e-9);
+
+		g.empty();
+		assertEquals(0, g.getDegreeDistribution().length);
+		assertEquals(0, g.getMaxDegree());
+		assertEquals(0.0, g.getAverageDegree(), 0);
+	}
+
+	@Test
+	public void checkDensity() {
+		FilteredGraph g = new FilteredGraph("g", baseGraph,
+				new TypeFilter<Node>("A"), Filters.<Edge> trueFilter());
+
+		//
+		// Edges toward the nodes of the other parts are included but have a
+		// single included endpoint.
+		//
+		assertEquals(12, g.getEdgeCount());
+		assertEquals(1.0, g.getDensity(), 1e-9);
+
+		g.notInclude(baseGraph.<Edge> getEdge("A12"));
+		assertEquals(2.0 / 3, g.getDensity(), 1e-9);
+
+		g.notInclude(baseGraph.<Node> getNode("A0"));
+		assertEquals(0.0, g.getDensity(), 0);
+
+		g.include(baseGraph.<Node> getNode("A0"));
+		assertEquals(2.0 / 3, g.getDensity(), 1e-9);
+
+		g.include(baseGraph.<Edge> getEdge("A12"));
+		baseGraph.removeNode("B0");
+		assertEquals(1.0, g.getDensity(), 1e-9);
+
+		g.setInduced(true);
+		assertEquals(3, g.getEdgeCount());
+		assertEquals(1.0, g.getDensity(), 1e-9);
+
+		g.empty();
+		assertEquals(0.0, g.getDensity(), 0);
+	}
+
+	@Test
+	public void checkComponents() {
+		FilteredGraph g = new FilteredGraph("g", baseGraph, Filters
+				.<Node> trueFilter(), Filters.<Edge> trueFilter());
+
+		g.setComponentTracking(true);
+		ComponentTracker components = g.getComponentTracker();
+
+		assertEquals(1, components.getComponentCount());
+		assertEquals(9, components.getComponentSize(baseGraph.getNode("A0")));
+
+		g.notInclude(baseGraph.<Edge> getEdge("AB"));
+		assertEquals(1, components.getComponentCount());
+
+		g.notInclude(baseGraph.<Edge> getEdge("AC"));
+		assertEquals(2, components.getComponentCount());
+		assertEquals(3, components.getComponentSize(g.getNode("A1")));
+		assertEquals(6, components.getComponentSize(g.getNode("C2")));
+		assertTrue(!components.isConnected(g.getNode("A0"), g.getNode("B0")));
+
+		g.include(baseGraph.<Edge> getEdge("AB"));
+		assertEquals(1, components.getComponentCount());
+		assertTrue(components.isConnected(g.getNode("A2"), g.getNode("C1")));
+
+		baseGraph.removeNode("A0");
+		assertEquals(2, components.getComponentCount());
+		assertEquals(2, components.getComponentSize(g.getNode("A1")));
+
+		baseGraph.removeEdge("BC");
+		g.notInclude(baseGraph.<Node> getNode("B0"));
+		assertEquals(3, components.getComponentCount());
+		assertEquals(2, components.getComponentSize(g.getNode("B1")));
+		assertEquals(-1, components.getComponentId(baseGraph.getNode("B0")));
+		assertEquals(components.getComponentId(g.getNode("C0")), components
+				.getComponentId(baseGraph.getNode("C2")));
+	}
+
+	@Test
+	public void checkAttributeCoalescing() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		final LinkedList<String> events = new LinkedList<String>();
+
+		g.setAttributeCoalescing(true);
+		g.addSink(new SinkAdapter() {
+			public void nodeAdded(String sourceId, long timeId, String nodeId) {
+				events.add("+" + nodeId);
+			}
+
+			public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+				events.add("-" + nodeId);
+			}
+
+			public void nodeAttributeAdded(String sourceId, long timeId,
+					String nodeId, String attribute, Object value) {
+				events.add("+" + nodeId + "." + attribute + "=" + value);
+			}
+
+			public void nodeAttributeChanged(String sourceId, long timeId,
+					String nodeId, String attribute, Object oldValue,
+					Object newValue) {
+				events.add("~" + nodeId + "." + attribute + "=" + newValue);
+			}
+
+			public void nodeAttributeRemoved(String sourceId, long timeId,
+					String nodeId, String attribute) {
+				events.add("-" + nodeId + "." + attribute);
+			}
+		});
+
+		for (int i = 1; i <= 5; i++)
+			baseGraph.getNode("A0").setAttribute("x", i);
+
+		baseGraph.getNode("A1").addAttribute("y", 1);
+		baseGraph.getNode("A1").removeAttribute("y");
+
+		//
+		// A2 leaves and enters the graph, changes of v are not merged across.
+		//
+		baseGraph.getNode("A2").addAttribute("v", 1);
+		baseGraph.getNode("A2").setAttribute("type", "B");
+		baseGraph.getNode("A2").setAttribute("type", "A");
+		baseGraph.getNode("A2").setAttribute("v", 2);
+		baseGraph.getNode("A2").setAttribute("v", 3);
+
+		assertEquals(0, events.size());
+
+		baseGraph.stepBegins(1);
+
+		assertEquals(Arrays.asList("+A0.x=5", "+A2.v=1", "-A2", "+A2",
+				"~A2.type=A", "~A2.v=3"), events);
+		assertTrue(g.isAttributeCoalescing());
+
+		g.setAttributeCoalescing(false);
+		events.clear();
+		baseGraph.getNode("A0").setAttribute("x", 6);
+
+		assertEquals(Arrays.asList("~A0.x=6"), events);
+	}
+
+	@Test
+	public void checkAsyncDelivery() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+		Graph copy = new AdjacencyListGraph("copy");
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		copy.setStrict(false);
+		copy.setAutoCreate(true);
+		g.replay(copy);
+		g.setAsyncDelivery(4, AsyncDelivery.Backpressure.COALESCE);
+		g.addSink(copy);
+		g.addElementSink(new SinkAdapter() {
+			public void stepBegins(String sourceId, long timeId, double step) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					fail();
+				}
+			}
+		});
+
+		AsyncDelivery d = g.getAsyncDelivery();
+		assertEquals(4, d.getCapacity());
+
+		baseGraph.getNode("A0").addAttribute("w", 0);
+		g.flush();
+		baseGraph.stepBegins(1);
+
+		//
+		// The step blocks the delivery, three changes fill the buffer and the
+		// next ones are merged.
+		//
+		for (int i = 1; i <= 10; i++)
+			baseGraph.getNode("A0").setAttribute("w", i);
+
+		assertEquals(5, d.getQueueDepth());
+		assertEquals(6, d.getCoalescedCount());
+		assertEquals(0, copy.getNode("A0").getAttribute("w"));
+
+		latch.countDown();
+		baseGraph.getNode("A1").setAttribute("type", "B");
+		g.flush();
+
+		assertEquals(0, d.getQueueDepth());
+		assertEquals(0, d.getLag());
+		assertEquals(10, copy.getNode("A0").getAttribute("w"));
+		assertEquals(null, copy.getNode("A1"));
+
+		g.setAsyncDelivery(0, null);
+		assertEquals(null, g.getAsyncDelivery());
+
+		baseGraph.getNode("A1").setAttribute("type", "A");
+		assertNotNull(copy.getNode("A1"));
+
+		//
+		// Once the buffer is full, changes are dropped but the addition of an
+		// attribute waits for the step to be delivered.
+		//
+		final CountDownLatch gate = new CountDownLatch(1);
+
+		g.setAsyncDelivery(2, AsyncDelivery.Backpressure.DROP);
+		g.addElementSink(new SinkAdapter() {
+			public void stepBegins(String sourceId, long timeId, double step) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					fail();
+				}
+			}
+		});
+
+		d = g.getAsyncDelivery();
+		g.flush();
+		baseGraph.stepBegins(2);
+
+		for (int i = 11; i <= 13; i++)
+			baseGraph.getNode("A0").setAttribute("w", i);
+
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+
+				gate.countDown();
+			}
+		}.start();
+
+		baseGraph.getNode("A0").addAttribute("z", 0);
+		g.flush();
+
+		assertEquals(2, d.getDroppedCount());
+		assertEquals(11, copy.getNode("A0").getAttribute("w"));
+		assertEquals(0, copy.getNode("A0").getAttribute("z"));
+		g.setAsyncDelivery(0, null);
+	}
+
+	static abstract class BatchSinkAdapter extends SinkAdapter implements
+			BatchSink {
+	}
+
+	@Test
+	public void checkSnapshot() {
+		FilteredGraph g = new FilteredGraph("A", baseGraph, new TypeFilter<Node>(
+				"A"), new TypeFilter<Edge>("A"));
+
+		Graph s1 = g.snapshot();
+
+		assertEquals(3, s1.getNodeCount());
+		assertEquals(3, s1.getEdgeCount());
+		assertEquals(2, s1.getNode("A0").getDegree());
+
+		baseGraph.getNode("A1").setAttribute("type", "B");
+		Graph s2 = g.snapshot();
+
+		assertEquals(3, s1.getNodeCount());
+		assertEquals(2, s1.getNode("A1").getDegree());
+		assertTrue(s1.getEdge("A01").getOpposite(s1.getNode("A0")) == s1
+				.getNode("A1"));
+
+		assertEquals(2, s2.getNodeCount());
+		assertEquals(3, s2.getEdgeCount());
+		assertEquals(null, s2.getNode("A1"));
+		assertEquals(null, s2.getEdge("A01").getOpposite(s2.getNode("A0")));
+
+		baseGraph.removeEdge("A02");
+		Graph s3 = g.snapshot();
+
+		assertEquals(2, s3.getEdgeCount());
+		assertEquals(3, s2.getEdgeCount());
+		assertNotNull(s1.getNode("A0").getEdgeBetween("A2"));
+		assertNotNull(s2.getNode("A0").getEdgeBetween("A2"));
+		assertEquals(null, s3.getNode("A0").getEdgeBetween("A2"));
+		assertEquals(1, s3.getNode("A0").getDegree());
+
+		for (int i = 0; i < s3.getNodeCount(); i++)
+			assertEquals(g.getNode(i).getId(), s3.getNode(i).getId());
+
+		try {
+			s3.addNode("X");
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void checkSnapshotReaders() throws InterruptedException {
+		Graph base = new AdjacencyListGraph("base");
+		FilteredGraph g = new FilteredGraph("g", base, Filters
+				.<Node> trueFilter(), Filters.<Edge> trueFilter());
+
+		for (int i = 0; i < 5000; i++) {
+			base.addNode("n" + i);
+
+			if (i > 0)
+				base.addEdge("e" + i, "n" + (i - 1), "n" + i);
+		}
+
+		final Graph s = g.snapshot();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Node[][] seen = new Node[4][];
+		final Throwable[] errors = new Throwable[seen.length];
+		Thread[] readers = new Thread[seen.length];
+
+		//
+		// Readers create the nodes of the snapshot at the same time, they
+		// must all get the same fully built nodes.
+		//
+		for (int i = 0; i < readers.length; i++) {
+			final int r = i;
+
+			readers[i] = new Thread() {
+				public void run() {
+					try {
+						Node[] nodes = new Node[s.getNodeCount()];
+
+						start.await();
+
+						for (int j = 0; j < nodes.length; j++) {
+							if (j > 0)
+								assertNotNull(s.getEdge(j - 1).getNode0()
+										.getId());
+
+							nodes[j] = s.getNode(j);
+							assertEquals("n" + j, nodes[j].getId());
+						}
+
+						seen[r] = nodes;
+					} catch (Throwable t) {
+						errors[r] = t;
+					}
+				}
+			};
+
+			readers[i].start();
+		}
+
+		start.countDown();
+
+		for (int i = 0; i < readers.length; i++) {
+			readers[i].join();
+
+			if (errors[i] != null)
+				throw new AssertionError(errors[i]);
+		}
+
+		for (int i = 1; i < seen.length; i++)
+			for (int j = 0; j < seen[0].length; j++)
+				assertTrue(seen[i][j] == seen[0][j]);
+	}
+
 	protected void checkPart(final String type) {
 		Filter<Node> nodeFilter = new Filter<Node>() {
 			public boolean isAvailable(Node n) {
@@ -147,6 +1480,19 @@ public class TestFilteredGraph {
 		}
 	}
 	
+	protected void checkEndpoints(FilteredGraph part) {
+		for (Edge e : part.getEachEdge()) {
+			Edge b = ((FilteredEdge) e).getFilteredElement();
+			Node n0 = part.getFilteredNode(b.getNode0());
+			Node n1 = part.getFilteredNode(b.getNode1());
+
+			assertTrue(n0 == e.getNode0());
+			assertTrue(n1 == e.getNode1());
+			assertTrue(n0 == null || n1 == e.getOpposite(n0));
+			assertTrue(n1 == null || n0 == e.getOpposite(n1));
+		}
+	}
+
 	protected void checkOnlyFilteredInstance(Graph part) {
 		for (Node n : part.getEachNode()) {
 			checkIsFiltered(n);
@@ -200,6 +1546,23 @@ public class TestFilteredGraph {
 		assertEquals(reached, new HashSet<String>(Arrays.asList(nodes)));
 	}
 
+	protected static class TypeFilter<T extends Element> implements
+			AttributeFilter<T> {
+		String type;
+
+		TypeFilter(String type) {
+			this.type = type;
+		}
+
+		public boolean isAvailable(T e) {
+			return e.hasAttribute("type") && e.getLabel("type").equals(type);
+		}
+
+		public String[] getAttributeKeys() {
+			return new String[] { "type" };
+		}
+	}
+
 	protected void checkIsFiltered(Node n) {
 		assertTrue(FilteredNode.class.isAssignableFrom(n.getClass()));
 	}
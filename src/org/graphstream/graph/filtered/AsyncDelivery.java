@@ -0,0 +1,584 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.graphstream.graph.implementations.AbstractElement.AttributeChangeEvent;
+import org.graphstream.stream.SourceBase.ElementType;
+
+/**
+ * Asynchronous delivery of the events of a {@link FilteredGraph} to its sinks.
+ *
+ * Events are written by the thread updating the graph in a preallocated ring
+ * buffer, and read by a dedicated thread which sends them to the sinks. A
+ * slow sink therefore does not slow down the base graph, until the buffer is
+ * full. What happens then depends on the backpressure policy :
+ * <ul>
+ * <li>{@link Backpressure#BLOCK} : the thread updating the graph waits for
+ * free space ;</li>
+ * <li>{@link Backpressure#DROP} : attribute changes are dropped. Additions
+ * and removals of attributes, element and step events still wait, so a sink
+ * never sees a change of an attribute it has not seen added ;</li>
+ * <li>{@link Backpressure#COALESCE} : attribute changes are kept aside until
+ * there is free space, and successive changes of the same attribute of the
+ * same element are merged into one. Other events wait.</li>
+ * </ul>
+ *
+ * Sinks receive the events in the order they have been sent, but later than
+ * the changes of the graph. A sink reading the filtered graph may see it in a
+ * more recent state than the one described by the events.
+ *
+ * The buffer has a single writer : the graph must be updated by one thread at
+ * a time, which is the case of a {@link ConcurrentFilteredGraph}.
+ */
+public final class AsyncDelivery {
+
+	/**
+	 * What to do when an event is sent while the buffer is full.
+	 */
+	public static enum Backpressure {
+		BLOCK, DROP, COALESCE
+	}
+
+	/*
+	 * Types of the entries which are not events.
+	 */
+	static final byte FLUSH = 16;
+	static final byte TASK = 17;
+
+	/*
+	 * Count of arguments of an entry : source id, element id, then attribute
+	 * and values, or the endpoints of an edge.
+	 */
+	private static final int ARGS = 5;
+
+	private final FilteredGraph.FilteredSink sink;
+	private final Backpressure backpressure;
+	private final int capacity;
+	private final int mask;
+
+	private final byte[] types;
+	private final long[] times;
+	private final double[] steps;
+	private final long[] stamps;
+	private final Object[] arguments;
+
+	/*
+	 * Count of entries written and read. The writer only writes tail, the
+	 * delivery thread only writes head.
+	 */
+	private volatile long head;
+	private volatile long tail;
+
+	private volatile boolean running;
+	private volatile boolean producerWaiting;
+	private volatile boolean consumerWaiting;
+	private final Object monitor;
+	private final Thread thread;
+
+	/*
+	 * Attribute changes waiting for free space in coalescing mode, in the
+	 * order they have been sent. Their count is kept apart for the threads
+	 * reading the counters.
+	 */
+	private final LinkedHashMap<Pending, Pending> overflow;
+	private volatile int overflowSize;
+
+	private volatile long maxDepth;
+	private volatile long dropped;
+	private volatile long coalesced;
+
+	AsyncDelivery(FilteredGraph.FilteredSink sink, String name,
+			int capacity, Backpressure backpressure) {
+		int c = 1;
+
+		while (c < capacity)
+			c <<= 1;
+
+		this.sink = sink;
+		this.backpressure = backpressure;
+		this.capacity = c;
+		mask = c - 1;
+
+		types = new byte[c];
+		times = new long[c];
+		steps = new double[c];
+		stamps = new long[c];
+		arguments = new Object[c * ARGS];
+
+		head = 0;
+		tail = 0;
+		running = true;
+		monitor = new Object();
+		overflow = new LinkedHashMap<Pending, Pending>();
+
+		thread = new Thread(name) {
+			public void run() {
+				consume();
+			}
+		};
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Size of the buffer. It is the capacity requested when the asynchronous
+	 * mode has been enabled, rounded up to a power of two.
+	 *
+	 * @return the count of events the buffer can hold
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Policy used when the buffer is full.
+	 *
+	 * @return the backpressure policy
+	 */
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+
+	/**
+	 * Count of events waiting to be delivered, including the attribute
+	 * changes kept aside in coalescing mode.
+	 *
+	 * @return the current depth of the queue
+	 */
+	public int getQueueDepth() {
+		long h = head;
+		return (int) (tail - h) + overflowSize;
+	}
+
+	/**
+	 * Largest count of events which have been waiting in the buffer at the
+	 * same time.
+	 *
+	 * @return the maximal depth of the buffer
+	 */
+	public long getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Time elapsed since the oldest event of the buffer has been sent.
+	 *
+	 * @return the lag of the sinks in milliseconds, 0 if the buffer is empty
+	 */
+	public long getLag() {
+		long h = head;
+
+		if (h == tail)
+			return 0;
+
+		return (System.nanoTime() - stamps[(int) (h & mask)]) / 1000000;
+	}
+
+	/**
+	 * Count of events delivered to the sinks since the asynchronous mode has
+	 * been enabled.
+	 *
+	 * @return the count of delivered events
+	 */
+	public long getDeliveredCount() {
+		return head;
+	}
+
+	/**
+	 * Count of attribute changes dropped because the buffer was full.
+	 *
+	 * @return the count of dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Count of attribute changes merged with a previous change of the same
+	 * attribute because the buffer was full.
+	 *
+	 * @return the count of coalesced events
+	 */
+	public long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * Queue an event. Arguments follow the layout of the entries, see
+	 * {@link #ARGS}.
+	 *
+	 * @return false if called by the delivery thread, in which case the event
+	 *         has to be delivered directly
+	 */
+	boolean put(byte type, String sourceId, long timeId, Object a1,
+			Object a2, Object a3, Object a4, double step) {
+		if (Thread.currentThread() == thread)
+			return false;
+
+		if (!overflow.isEmpty())
+			drainOverflow(false);
+
+		if (tail - head >= capacity || !overflow.isEmpty()) {
+			boolean change = type >= EventBatch.GRAPH_ATTRIBUTE_ADDED
+					&& type <= EventBatch.EDGE_ATTRIBUTE_REMOVED
+					&& (type - EventBatch.GRAPH_ATTRIBUTE_ADDED) % 3 == 1;
+
+			if (change && backpressure == Backpressure.DROP) {
+				dropped++;
+				return true;
+			}
+
+			if (change && backpressure == Backpressure.COALESCE) {
+				coalesce(new Pending(type, sourceId, timeId, (String) a1,
+						(String) a2, a3, a4));
+				return true;
+			}
+
+			drainOverflow(true);
+			awaitSpace();
+		}
+
+		write(type, sourceId, timeId, a1, a2, a3, a4, step);
+		return true;
+	}
+
+	/**
+	 * Queue a task run by the delivery thread once the events sent before
+	 * are delivered.
+	 *
+	 * @return false if called by the delivery thread
+	 */
+	boolean execute(Runnable task) {
+		if (Thread.currentThread() == thread)
+			return false;
+
+		drainOverflow(true);
+		awaitSpace();
+		write(TASK, null, 0, task, null, null, null, 0);
+
+		return true;
+	}
+
+	/**
+	 * Wait until all the events sent before are delivered, including the
+	 * ones buffered by the batching mode.
+	 *
+	 * @return false if called by the delivery thread
+	 */
+	boolean flush() {
+		if (Thread.currentThread() == thread)
+			return false;
+
+		drainOverflow(true);
+		awaitSpace();
+
+		long entry = write(FLUSH, null, 0, null, null, null, null, 0);
+		awaitDelivery(entry);
+
+		return true;
+	}
+
+	/**
+	 * Deliver the pending events and stop the delivery thread.
+	 */
+	void shutdown() {
+		if (Thread.currentThread() == thread)
+			throw new IllegalStateException(
+					"delivery thread can not stop itself");
+
+		flush();
+		running = false;
+
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+
+		boolean interrupted = false;
+
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private long write(byte type, String sourceId, long timeId, Object a1,
+			Object a2, Object a3, Object a4, double step) {
+		long t = tail;
+		int i = (int) (t & mask);
+		int a = i * ARGS;
+
+		types[i] = type;
+		times[i] = timeId;
+		steps[i] = step;
+		stamps[i] = System.nanoTime();
+		arguments[a] = sourceId;
+		arguments[a + 1] = a1;
+		arguments[a + 2] = a2;
+		arguments[a + 3] = a3;
+		arguments[a + 4] = a4;
+
+		tail = t + 1;
+
+		long depth = t + 1 - head;
+
+		if (depth > maxDepth)
+			maxDepth = depth;
+
+		if (consumerWaiting) {
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+		}
+
+		return t;
+	}
+
+	/**
+	 * Keep aside an attribute change, merging it with a previous change of the
+	 * same attribute. The merged change keeps the place, time id and old value
+	 * of the first one, so events stay ordered.
+	 */
+	private void coalesce(Pending p) {
+		Pending q = overflow.get(p);
+
+		if (q == null) {
+			overflow.put(p, p);
+			overflowSize = overflow.size();
+		} else {
+			q.newValue = p.newValue;
+			coalesced++;
+		}
+	}
+
+	/**
+	 * Move the attribute changes kept aside to the buffer, waiting for free
+	 * space if required.
+	 */
+	private void drainOverflow(boolean wait) {
+		while (!overflow.isEmpty()) {
+			if (tail - head >= capacity) {
+				if (!wait)
+					return;
+
+				awaitSpace();
+			}
+
+			Pending p = overflow.keySet().iterator().next();
+			overflow.remove(p);
+			overflowSize = overflow.size();
+			write(p.type, p.sourceId, p.timeId, p.elementId, p.attribute,
+					p.oldValue, p.newValue, 0);
+		}
+	}
+
+	private void awaitSpace() {
+		if (tail - head < capacity)
+			return;
+
+		boolean interrupted = false;
+
+		synchronized (monitor) {
+			producerWaiting = true;
+
+			while (tail - head >= capacity) {
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			producerWaiting = false;
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void awaitDelivery(long entry) {
+		if (head > entry)
+			return;
+
+		boolean interrupted = false;
+
+		synchronized (monitor) {
+			producerWaiting = true;
+
+			while (head <= entry) {
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			producerWaiting = false;
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Loop of the delivery thread.
+	 */
+	private void consume() {
+		long h = head;
+
+		while (true) {
+			boolean r = running;
+			long t = tail;
+
+			if (h == t) {
+				if (!r)
+					return;
+
+				synchronized (monitor) {
+					consumerWaiting = true;
+
+					try {
+						while (tail == h && running)
+							monitor.wait();
+					} catch (InterruptedException e) {
+						// Check again.
+					} finally {
+						consumerWaiting = false;
+					}
+				}
+
+				continue;
+			}
+
+			while (h < t) {
+				deliver((int) (h & mask));
+				head = ++h;
+
+				if (producerWaiting) {
+					synchronized (monitor) {
+						monitor.notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	private void deliver(int i) {
+		int a = i * ARGS;
+		byte type = types[i];
+		long timeId = times[i];
+		String sourceId = (String) arguments[a];
+		Object a1 = arguments[a + 1];
+		Object a2 = arguments[a + 2];
+		Object a3 = arguments[a + 3];
+		Object a4 = arguments[a + 4];
+
+		Arrays.fill(arguments, a, a + ARGS, null);
+
+		try {
+			switch (type) {
+			case EventBatch.NODE_ADDED:
+				sink.sendNodeAdded(sourceId, timeId, (String) a1);
+				break;
+			case EventBatch.NODE_REMOVED:
+				sink.sendNodeRemoved(sourceId, timeId, (String) a1);
+				break;
+			case EventBatch.EDGE_ADDED:
+			case EventBatch.DIRECTED_EDGE_ADDED:
+				sink.sendEdgeAdded(sourceId, timeId, (String) a1, (String) a2,
+						(String) a3, type == EventBatch.DIRECTED_EDGE_ADDED);
+				break;
+			case EventBatch.EDGE_REMOVED:
+				sink.sendEdgeRemoved(sourceId, timeId, (String) a1);
+				break;
+			case EventBatch.GRAPH_CLEARED:
+				sink.sendGraphCleared(sourceId, timeId);
+				break;
+			case EventBatch.STEP_BEGINS:
+				sink.sendStepBegins(sourceId, timeId, steps[i]);
+				break;
+			case FLUSH:
+				sink.flush();
+				break;
+			case TASK:
+				sink.flush();
+				((Runnable) a1).run();
+				break;
+			default:
+				int kind = type - EventBatch.GRAPH_ATTRIBUTE_ADDED;
+				ElementType eltType = kind < 3 ? ElementType.GRAPH
+						: (kind < 6 ? ElementType.NODE : ElementType.EDGE);
+				AttributeChangeEvent event = kind % 3 == 0 ? AttributeChangeEvent.ADD
+						: (kind % 3 == 1 ? AttributeChangeEvent.CHANGE
+								: AttributeChangeEvent.REMOVE);
+
+				sink.sendAttributeChangedEvent(sourceId, timeId, (String) a1,
+						eltType, (String) a2, event, a3, a4);
+				break;
+			}
+		} catch (Throwable e) {
+			//
+			// A failing sink must not stop the delivery to the others.
+			//
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	/**
+	 * An attribute change kept aside, identified by its kind, element and
+	 * attribute.
+	 */
+	private static class Pending {
+		final byte type;
+		final String sourceId;
+		final long timeId;
+		final String elementId;
+		final String attribute;
+		final Object oldValue;
+		Object newValue;
+
+		Pending(byte type, String sourceId, long timeId, String elementId,
+				String attribute, Object oldValue, Object newValue) {
+			this.type = type;
+			this.sourceId = sourceId;
+			this.timeId = timeId;
+			this.elementId = elementId;
+			this.attribute = attribute;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Pending))
+				return false;
+
+			Pending p = (Pending) o;
+			return p.type == type && p.elementId.equals(elementId)
+					&& p.attribute.equals(attribute);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (type * 31 + elementId.hashCode()) * 31
+					+ attribute.hashCode();
+		}
+	}
+}
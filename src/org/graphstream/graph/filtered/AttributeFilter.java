@@ -0,0 +1,29 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.graph.Element;
+import org.graphstream.util.Filter;
+
+/**
+ * A filter whose answer depends on some attributes of the elements.
+ *
+ * When the node or edge filter of a {@link FilteredGraph} implements this
+ * interface, a change of one of these attributes in the base graph makes the
+ * filtered graph evaluate the filter again on the changed element, and include
+ * or remove it accordingly. Changes of other attributes never trigger an
+ * evaluation.
+ *
+ * Base graphs notify the removal of an attribute before removing it, so an
+ * element losing one of these attributes is evaluated when the next event of
+ * the base graph is received.
+ *
+ * @param <T>
+ *            type of the filtered elements
+ */
+public interface AttributeFilter<T extends Element> extends Filter<T> {
+	/**
+	 * Keys of the attributes this filter depends on.
+	 *
+	 * @return the attribute keys
+	 */
+	String[] getAttributeKeys();
+}
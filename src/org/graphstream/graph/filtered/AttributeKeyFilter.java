@@ -0,0 +1,22 @@
+package org.graphstream.graph.filtered;
+
+/**
+ * A filter on attribute keys, used to project the attribute events a sink
+ * receives from a {@link FilteredGraph}.
+ *
+ * The answer for a key must not change over time : it is computed once for
+ * each key and kept by the graph.
+ *
+ * @see FilteredGraph#addAttributeSink(org.graphstream.stream.AttributeSink,
+ *      AttributeKeyFilter)
+ */
+public interface AttributeKeyFilter {
+	/**
+	 * Tell if the events of an attribute are sent to the sink.
+	 *
+	 * @param key
+	 *            the key of the attribute
+	 * @return true if the events of this attribute are accepted
+	 */
+	boolean isAvailable(String key);
+}
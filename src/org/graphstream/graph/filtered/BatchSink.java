@@ -0,0 +1,26 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.stream.Sink;
+
+/**
+ * A sink able to receive the events of a {@link FilteredGraph} in batching
+ * mode as a whole, in a single call.
+ *
+ * The batch is delivered this way only if the sink is registered both as an
+ * element sink and as an attribute sink, for example with
+ * {@link FilteredGraph#addSink(Sink)}. Otherwise, and for sinks that do not
+ * implement this interface, the events of the batch are sent one by one.
+ */
+public interface BatchSink extends Sink {
+	/**
+	 * Receive a batch of events. The batch is only valid during this call,
+	 * {@link EventBatch#replay(Sink)} can be used to process it event by
+	 * event.
+	 *
+	 * @param sourceId
+	 *            id of the graph sending the batch
+	 * @param batch
+	 *            the events, in the order they have been sent
+	 */
+	void batchReceived(String sourceId, EventBatch batch);
+}
@@ -0,0 +1,85 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+
+/**
+ * Array of objects split in chunks of fixed length, which can be frozen
+ * cheaply. Freezing returns the current chunks and marks them as shared : the
+ * next change of a shared chunk copies it first, so frozen chunks are never
+ * modified. Freezing costs a copy of the array of chunks, and a change costs
+ * at most a copy of one chunk.
+ *
+ * The array itself is not thread-safe. Frozen chunks can be read by any thread
+ * once they have been safely published.
+ */
+final class ChunkedArray {
+
+	static final int SHIFT = 10;
+	static final int CHUNK = 1 << SHIFT;
+	static final int MASK = CHUNK - 1;
+
+	private static final Object[][] EMPTY = new Object[0][];
+
+	private Object[][] chunks;
+	private boolean[] owned;
+
+	ChunkedArray() {
+		chunks = EMPTY;
+		owned = new boolean[0];
+	}
+
+	/**
+	 * Get the object at an index of frozen chunks.
+	 *
+	 * @param chunks
+	 *            chunks returned by {@link #freeze()}
+	 * @param index
+	 *            index of the object
+	 * @return the object, or null if nothing has been set at this index
+	 */
+	static Object get(Object[][] chunks, int index) {
+		Object[] chunk = chunks[index >>> SHIFT];
+		return chunk == null ? null : chunk[index & MASK];
+	}
+
+	Object get(int index) {
+		return index >>> SHIFT < chunks.length ? get(chunks, index) : null;
+	}
+
+	void set(int index, Object value) {
+		int c = index >>> SHIFT;
+
+		if (c >= chunks.length) {
+			if (value == null)
+				return;
+
+			chunks = Arrays.copyOf(chunks, Math.max(c + 1,
+					chunks.length * 2));
+			owned = Arrays.copyOf(owned, chunks.length);
+		}
+
+		if (chunks[c] == null)
+			chunks[c] = new Object[CHUNK];
+		else if (!owned[c])
+			chunks[c] = chunks[c].clone();
+
+		owned[c] = true;
+		chunks[c][index & MASK] = value;
+	}
+
+	/**
+	 * Get the current content as frozen chunks. Further changes of this array
+	 * do not modify them.
+	 *
+	 * @return the frozen chunks
+	 */
+	Object[][] freeze() {
+		Arrays.fill(owned, false);
+		return chunks.clone();
+	}
+
+	void clear() {
+		chunks = EMPTY;
+		owned = new boolean[0];
+	}
+}
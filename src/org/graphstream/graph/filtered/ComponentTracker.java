@@ -0,0 +1,455 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Connected components of a {@link FilteredGraph}, kept up to date as nodes
+ * and edges are included in the graph or removed from it. Edges are followed
+ * in both directions, and only connect their endpoints when both are in the
+ * graph.
+ *
+ * Each node holds a label, and labels are merged in a union-find forest, so
+ * that an edge joining two components costs a near-constant time. When an
+ * edge or a node is removed, searches are run in turn from the nodes it
+ * connected, one node at a time each. They stop as soon as they all meet,
+ * or once all of them but one are exhausted : the nodes of the exhausted
+ * searches are the new components and receive new labels, so the work is
+ * bounded by the size of the smaller parts.
+ *
+ * Component ids are the roots of the labels. An id identifies a component
+ * until the graph changes.
+ */
+public class ComponentTracker {
+
+	private final FilteredGraph graph;
+
+	/*
+	 * Label of the node at each position.
+	 */
+	private int[] labels;
+
+	/*
+	 * Union-find forest over labels, and count of nodes of each root.
+	 */
+	private int[] parents;
+	private int[] sizes;
+	private int labelCount;
+
+	private int componentCount;
+
+	/*
+	 * Search state : epoch of the last search having reached each position,
+	 * and the search having reached it. Searches have their queue, from head
+	 * to tail, the nodes before head being explored, and the union-find of
+	 * the searches which have met.
+	 */
+	private int[] seen;
+	private int[] owners;
+	private int epoch;
+
+	private int[][] queues;
+	private int[] heads;
+	private int[] tails;
+	private int[] groups;
+	private int[] active;
+
+	ComponentTracker(FilteredGraph graph) {
+		this.graph = graph;
+
+		int capacity = Math.max(graph.nodes.size(), FilteredGraph.MIN_CAPACITY);
+
+		labels = new int[capacity];
+		parents = new int[capacity];
+		sizes = new int[capacity];
+		seen = new int[capacity];
+		owners = new int[capacity];
+
+		queues = new int[4][];
+		heads = new int[4];
+		tails = new int[4];
+		groups = new int[4];
+		active = new int[4];
+
+		build();
+	}
+
+	/**
+	 * Get the count of connected components.
+	 *
+	 * @return count of components, 0 if the graph has no node
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Get the id of the component of a node.
+	 *
+	 * @param n
+	 *            a node of the graph or of the base graph
+	 * @return id of the component, or -1 if n is not in the graph
+	 */
+	public int getComponentId(Node n) {
+		int p = position(n);
+		return p < 0 ? -1 : find(labels[p]);
+	}
+
+	/**
+	 * Get the count of nodes of the component of a node.
+	 *
+	 * @param n
+	 *            a node of the graph or of the base graph
+	 * @return size of the component, 0 if n is not in the graph
+	 */
+	public int getComponentSize(Node n) {
+		int p = position(n);
+		return p < 0 ? 0 : sizes[find(labels[p])];
+	}
+
+	/**
+	 * Tell if two nodes are in the same component.
+	 *
+	 * @param a
+	 *            a node
+	 * @param b
+	 *            another node
+	 * @return true if both nodes are in the graph and connected
+	 */
+	public boolean isConnected(Node a, Node b) {
+		int p = position(a);
+		int q = position(b);
+
+		return p >= 0 && q >= 0 && find(labels[p]) == find(labels[q]);
+	}
+
+	private int position(Node n) {
+		return n == null ? -1 : graph.nodes.indexOf(graph.getUnfilteredNode(n));
+	}
+
+	/**
+	 * Compute the components of the current nodes and edges.
+	 */
+	private void build() {
+		NodeIndex nodes = graph.nodes;
+		EdgeIndex edges = graph.edges;
+
+		labelCount = 0;
+		componentCount = 0;
+
+		for (int p = 0; p < nodes.size(); p++)
+			labels[p] = newLabel();
+
+		for (int e = 0; e < edges.size(); e++)
+			connect(nodes.indexOf(edges.element(e).getNode0()), nodes
+					.indexOf(edges.element(e).getNode1()));
+	}
+
+	/**
+	 * A node has been included at a position, with its included edges
+	 * registered.
+	 */
+	void nodeIncluded(int p) {
+		ensureCapacity(p + 1);
+		reclaim(p);
+		labels[p] = newLabel();
+
+		NodeIndex nodes = graph.nodes;
+
+		for (int s = 0; s < nodes.degrees[p]; s++)
+			connect(p, nodes.opposite(p, s));
+	}
+
+	/**
+	 * A node is about to be removed. The last node then takes its position.
+	 */
+	void nodeRemoving(int p) {
+		reclaim(graph.nodes.size());
+
+		int root = find(labels[p]);
+
+		if (--sizes[root] == 0)
+			componentCount--;
+
+		NodeIndex nodes = graph.nodes;
+		int[] sources = new int[nodes.degrees[p]];
+		int count = 0;
+
+		for (int s = 0; s < nodes.degrees[p]; s++) {
+			int o = nodes.opposite(p, s);
+
+			if (o >= 0 && o != p)
+				sources[count++] = o;
+		}
+
+		if (count > 1)
+			split(root, sources, count, p);
+
+		labels[p] = labels[nodes.size() - 1];
+	}
+
+	/**
+	 * An edge between nodes at two positions has been included. Positions are
+	 * -1 for endpoints not in the graph.
+	 */
+	void connect(int n0, int n1) {
+		if (n0 < 0 || n1 < 0 || n0 == n1)
+			return;
+
+		int r0 = find(labels[n0]);
+		int r1 = find(labels[n1]);
+
+		if (r0 == r1)
+			return;
+
+		if (sizes[r0] < sizes[r1]) {
+			int r = r0;
+			r0 = r1;
+			r1 = r;
+		}
+
+		parents[r1] = r0;
+		sizes[r0] += sizes[r1];
+		componentCount--;
+	}
+
+	/**
+	 * An edge between nodes at two positions has been removed.
+	 */
+	void disconnect(int n0, int n1) {
+		if (n0 < 0 || n1 < 0 || n0 == n1)
+			return;
+
+		reclaim(graph.nodes.size());
+
+		int root = find(labels[n0]);
+
+		if (root == find(labels[n1]))
+			split(root, new int[] { n0, n1 }, 2, -1);
+	}
+
+	/**
+	 * All the nodes have been removed.
+	 */
+	void cleared() {
+		labelCount = 0;
+		componentCount = 0;
+	}
+
+	private int find(int label) {
+		int root = label;
+
+		while (parents[root] != root)
+			root = parents[root];
+
+		while (parents[label] != root) {
+			int next = parents[label];
+			parents[label] = root;
+			label = next;
+		}
+
+		return root;
+	}
+
+	/**
+	 * Create a label for a new component of one node.
+	 */
+	private int newLabel() {
+		if (labelCount == parents.length) {
+			parents = Arrays.copyOf(parents, labelCount * 2);
+			sizes = Arrays.copyOf(sizes, labelCount * 2);
+		}
+
+		int l = labelCount++;
+		parents[l] = l;
+		sizes[l] = 1;
+		componentCount++;
+
+		return l;
+	}
+
+	/**
+	 * Drop the labels no node uses anymore, numbering the roots again, when
+	 * the labels are full and most of them are unused. Labels change, so it
+	 * is only done between two updates.
+	 *
+	 * @param count
+	 *            count of positions holding a label
+	 */
+	private void reclaim(int count) {
+		if (labelCount < parents.length || labelCount <= 2 * count)
+			return;
+
+		int[] roots = new int[labelCount];
+		int[] newSizes = new int[parents.length];
+		int next = 0;
+
+		Arrays.fill(roots, -1);
+
+		for (int p = 0; p < count; p++) {
+			int r = find(labels[p]);
+
+			if (roots[r] < 0) {
+				roots[r] = next;
+				newSizes[next] = sizes[r];
+				next++;
+			}
+
+			labels[p] = roots[r];
+		}
+
+		for (int l = 0; l < next; l++)
+			parents[l] = l;
+
+		sizes = newSizes;
+		labelCount = next;
+	}
+
+	/**
+	 * Look for the parts a component is split in once a node or an edge has
+	 * been removed. One search is started from each source, and searches
+	 * which meet are grouped. Groups exhausted while another one is still
+	 * running are new components. The last group keeps the label of the
+	 * component.
+	 *
+	 * @param root
+	 *            root label of the component
+	 * @param sources
+	 *            positions the removed element was connected to
+	 * @param count
+	 *            count of sources
+	 * @param blocked
+	 *            position of the removed node, -1 for an edge
+	 */
+	private void split(int root, int[] sources, int count, int blocked) {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			epoch = 1;
+		}
+
+		if (count > queues.length) {
+			int length = Math.max(count, queues.length * 2);
+
+			queues = Arrays.copyOf(queues, length);
+			heads = new int[length];
+			tails = new int[length];
+			groups = new int[length];
+			active = new int[length];
+		}
+
+		int searches = 0;
+
+		for (int i = 0; i < count; i++) {
+			int src = sources[i];
+
+			if (seen[src] == epoch)
+				continue;
+
+			int s = searches++;
+
+			if (queues[s] == null)
+				queues[s] = new int[16];
+
+			seen[src] = epoch;
+			owners[src] = s;
+			queues[s][0] = src;
+			heads[s] = 0;
+			tails[s] = 1;
+			groups[s] = s;
+			active[s] = 1;
+		}
+
+		int running = searches;
+
+		while (running > 1) {
+			for (int s = 0; s < searches && running > 1; s++) {
+				int g = group(s);
+
+				if (heads[s] == tails[s] || active[g] == 0)
+					continue;
+
+				int x = queues[s][heads[s]++];
+				NodeIndex nodes = graph.nodes;
+
+				for (int slot = 0; slot < nodes.degrees[x] && running > 1; slot++) {
+					int o = nodes.opposite(x, slot);
+
+					if (o < 0 || o == blocked)
+						continue;
+
+					if (seen[o] != epoch) {
+						seen[o] = epoch;
+						owners[o] = s;
+						enqueue(s, o);
+					} else {
+						int h = group(owners[o]);
+
+						if (h != g) {
+							groups[h] = g;
+							active[g] += active[h];
+							active[h] = 0;
+							running--;
+						}
+					}
+				}
+
+				if (heads[s] == tails[s]) {
+					g = group(s);
+
+					if (--active[g] == 0) {
+						separate(root, g, searches);
+						running--;
+					}
+				}
+			}
+		}
+	}
+
+	private int group(int s) {
+		while (groups[s] != s)
+			s = groups[s] = groups[groups[s]];
+
+		return s;
+	}
+
+	private void enqueue(int s, int node) {
+		if (tails[s] == queues[s].length)
+			queues[s] = Arrays.copyOf(queues[s], tails[s] * 2);
+
+		queues[s][tails[s]++] = node;
+	}
+
+	/**
+	 * Give a new label to the nodes reached by an exhausted group of
+	 * searches.
+	 */
+	private void separate(int root, int g, int searches) {
+		int l = newLabel();
+		int size = 0;
+
+		for (int s = 0; s < searches; s++) {
+			if (group(s) != g)
+				continue;
+
+			for (int i = 0; i < tails[s]; i++)
+				labels[queues[s][i]] = l;
+
+			size += tails[s];
+		}
+
+		sizes[l] = size;
+		sizes[find(root)] -= size;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= labels.length)
+			return;
+
+		int length = Math.max(capacity, labels.length * 2);
+
+		labels = Arrays.copyOf(labels, length);
+		seen = Arrays.copyOf(seen, length);
+		owners = Arrays.copyOf(owners, length);
+	}
+}
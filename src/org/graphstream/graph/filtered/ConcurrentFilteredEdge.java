@@ -0,0 +1,72 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+
+/**
+ * Edge of a {@link ConcurrentFilteredGraph}. Endpoints are looked up in the
+ * concurrent maps of the graph instead of its index, so they can be read
+ * without locking.
+ */
+class ConcurrentFilteredEdge extends FilteredEdge {
+
+	ConcurrentFilteredEdge(Edge e, ConcurrentFilteredGraph g) {
+		super(e, g);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredEdge#getNode0()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode0() {
+		return (T) graph.getFilteredNode(element.getNode0());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredEdge#getNode1()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode1() {
+		return (T) graph.getFilteredNode(element.getNode1());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredEdge#getOpposite(org.graphstream
+	 * .graph.Node)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getOpposite(Node node) {
+		if (node == null)
+			return null;
+
+		return (T) graph.getFilteredNode(element.getOpposite(graph
+				.getUnfilteredNode(node)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredEdge#getSourceNode()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getSourceNode() {
+		return (T) graph.getFilteredNode(element.getSourceNode());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredEdge#getTargetNode()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getTargetNode() {
+		return (T) graph.getFilteredNode(element.getTargetNode());
+	}
+}
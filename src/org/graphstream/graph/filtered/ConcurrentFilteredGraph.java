@@ -0,0 +1,1261 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.stream.Sink;
+import org.graphstream.util.Filter;
+import org.graphstream.util.Filters;
+
+/**
+ * A filtered graph which can be read by several threads while it follows the
+ * changes of its base graph.
+ *
+ * Changes, coming from the base graph or from the methods of this graph, are
+ * serialized by a lock. Readers never take this lock : they read a view of
+ * the graph published once each change is complete. Nodes and edges of the
+ * view are stored in chunked arrays which are copied on write, so publishing
+ * a view only copies the chunks modified since the previous one. Each node
+ * publishes its own edges and degrees the same way.
+ *
+ * Readers see the graph as it was when the last view was published, lookups
+ * by id included. Iterators never throw
+ * {@link java.util.ConcurrentModificationException} and iterate over the view
+ * existing at their creation. The base graph is not thread-safe, so it must
+ * still be modified by a single thread, and the attributes of the elements
+ * are read from the base graph without synchronization.
+ *
+ * The lazy mode and the recycling of wrappers are not supported, since
+ * readers may keep wrappers for an unbounded time.
+ */
+public class ConcurrentFilteredGraph extends FilteredGraph {
+
+	private final ReentrantLock lock;
+
+	/*
+	 * Wrappers by id, looked up in the published view.
+	 */
+	private final VersionedIdMap<FilteredNode> nodeIds;
+	private final VersionedIdMap<FilteredEdge> edgeIds;
+
+	/*
+	 * Wrappers of nodes and edges, at the same positions than in the indices.
+	 */
+	private final ChunkedArray nodeMirror;
+	private final ChunkedArray edgeMirror;
+
+	/*
+	 * Nodes whose adjacency has changed since the last view.
+	 */
+	private final ArrayList<ConcurrentFilteredNode> touched;
+	private boolean dirty;
+
+	/*
+	 * Version of the last published view. Changes in progress are part of the
+	 * next one.
+	 */
+	private long version;
+	private volatile View view;
+
+	private final LockingSink lockingSink;
+
+	public ConcurrentFilteredGraph(String id, Graph g) {
+		this(id, g, Filters.<Node> falseFilter(), Filters.<Edge> falseFilter());
+	}
+
+	public ConcurrentFilteredGraph(String id, Graph g, Filter<Node> nf,
+			Filter<Edge> ef) {
+		super(id, g, nf, ef);
+
+		lock = new ReentrantLock();
+		nodeIds = new VersionedIdMap<FilteredNode>();
+		edgeIds = new VersionedIdMap<FilteredEdge>();
+		nodeMirror = new ChunkedArray();
+		edgeMirror = new ChunkedArray();
+		touched = new ArrayList<ConcurrentFilteredNode>();
+		lockingSink = new LockingSink();
+
+		lock.lock();
+
+		try {
+			for (int p = 0; p < nodes.size(); p++) {
+				FilteredNode fn = nodes.wrapper(p);
+				nodeMirror.set(p, fn);
+				nodeIds.put(fn.getId(), fn, version + 1);
+				touch(fn);
+			}
+
+			for (int p = 0; p < edges.size(); p++) {
+				FilteredEdge fe = edges.wrapper(p);
+				edgeMirror.set(p, fe);
+				edgeIds.put(fe.getId(), fe, version + 1);
+			}
+
+			dirty = true;
+		} finally {
+			release();
+		}
+
+		element.removeSink(filteredSink);
+		element.addSink(lockingSink);
+	}
+
+	/**
+	 * Release the lock, publishing a new view if this ends the outermost
+	 * change.
+	 */
+	private void release() {
+		try {
+			if (dirty && lock.getHoldCount() == 1)
+				publish();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void publish() {
+		for (int i = 0; i < touched.size(); i++) {
+			ConcurrentFilteredNode cn = touched.get(i);
+			cn.touched = false;
+			cn.adjacency = adjacencyOf(cn);
+		}
+
+		touched.clear();
+
+		View v = view;
+		int[] degreeCounts;
+
+		if (v != null && v.degreeModCount == nodes.degreeModCount)
+			degreeCounts = v.degreeCounts;
+		else
+			degreeCounts = Arrays.copyOf(nodes.degreeCounts,
+					nodes.size() == 0 ? 0 : nodes.maxDegree + 1);
+
+		version++;
+		view = new View(version, nodeMirror.freeze(), nodes.size(),
+				edgeMirror.freeze(), edges.size(), degreeCounts,
+				nodes.degreeSum, nodes.minDegree, nodes.degreeModCount,
+				nodes.linkedEdges);
+		dirty = false;
+
+		nodeIds.published(version);
+		edgeIds.published(version);
+	}
+
+	/**
+	 * Build the published adjacency of a node from the node index.
+	 */
+	private Adjacency adjacencyOf(ConcurrentFilteredNode cn) {
+		int p = nodes.indexOf(cn.getFilteredElement());
+
+		if (p < 0 || nodes.wrapper(p) != cn)
+			return Adjacency.EMPTY;
+
+		int[] adj = nodes.adjacencyOf(p);
+		FilteredEdge[] edges = new FilteredEdge[nodes.degrees[p]];
+
+		for (int i = 0; i < edges.length; i++)
+			edges[i] = this.edges.wrapper(adj[i]);
+
+		return new Adjacency(edges, nodes.inDegrees[p], nodes.outDegrees[p]);
+	}
+
+	private void touch(FilteredNode fn) {
+		ConcurrentFilteredNode cn = (ConcurrentFilteredNode) fn;
+
+		if (!cn.touched) {
+			cn.touched = true;
+			touched.add(cn);
+		}
+	}
+
+	/**
+	 * Mark the included endpoints of an edge as changed.
+	 */
+	private void touchEndpoints(Edge e) {
+		FilteredNode n0 = nodes.get(e.getNode0());
+		FilteredNode n1 = nodes.get(e.getNode1());
+
+		if (n0 != null)
+			touch(n0);
+
+		if (n1 != null)
+			touch(n1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#newFilteredNode(org.graphstream
+	 * .graph.Node)
+	 */
+	protected FilteredNode newFilteredNode(Node n) {
+		return new ConcurrentFilteredNode(n, this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#newFilteredEdge(org.graphstream
+	 * .graph.Edge)
+	 */
+	protected FilteredEdge newFilteredEdge(Edge e) {
+		return new ConcurrentFilteredEdge(e, this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#include(org.graphstream.
+	 * graph.Node)
+	 */
+	public void include(Node n) {
+		lock.lock();
+
+		try {
+			if (nodes.contains(n) || !inParent(n))
+				return;
+
+			super.include(n);
+
+			int p = nodes.indexOf(n);
+			FilteredNode fn = nodes.wrapper(p);
+
+			nodeMirror.set(p, fn);
+			nodeIds.put(n.getId(), fn, version + 1);
+			touch(fn);
+			dirty = true;
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#include(org.graphstream.
+	 * graph.Edge)
+	 */
+	public void include(Edge e) {
+		lock.lock();
+
+		try {
+			if (edges.contains(e) || !admits(e))
+				return;
+
+			super.include(e);
+
+			int p = edges.indexOf(e);
+			FilteredEdge fe = edges.wrapper(p);
+
+			edgeMirror.set(p, fe);
+			edgeIds.put(e.getId(), fe, version + 1);
+			touchEndpoints(e);
+			dirty = true;
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#notInclude(org.graphstream
+	 * .graph.Node)
+	 */
+	public void notInclude(Node n) {
+		lock.lock();
+
+		try {
+			int p = nodes.indexOf(n);
+
+			if (p < 0)
+				return;
+
+			FilteredNode fn = nodes.wrapper(p);
+
+			super.notInclude(n);
+
+			nodeIds.remove(n.getId(), version + 1);
+			nodeMirror.set(p, p < nodes.size() ? nodes.wrapper(p) : null);
+			nodeMirror.set(nodes.size(), null);
+			touch(fn);
+			dirty = true;
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#notInclude(org.graphstream
+	 * .graph.Edge)
+	 */
+	public void notInclude(Edge e) {
+		lock.lock();
+
+		try {
+			int p = edges.indexOf(e);
+
+			if (p < 0)
+				return;
+
+			touchEndpoints(e);
+			super.notInclude(e);
+
+			edgeIds.remove(e.getId(), version + 1);
+			edgeMirror.set(p, p < edges.size() ? edges.wrapper(p) : null);
+			edgeMirror.set(edges.size(), null);
+			dirty = true;
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#setNodeFilter(org.graphstream
+	 * .util.Filter)
+	 */
+	public void setNodeFilter(Filter<Node> nf) {
+		lock.lock();
+
+		try {
+			super.setNodeFilter(nf);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#setEdgeFilter(org.graphstream
+	 * .util.Filter)
+	 */
+	public void setEdgeFilter(Filter<Edge> ef) {
+		lock.lock();
+
+		try {
+			super.setEdgeFilter(ef);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#setInduced(boolean)
+	 */
+	public void setInduced(boolean on) {
+		lock.lock();
+
+		try {
+			super.setInduced(on);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#empty()
+	 */
+	public void empty() {
+		lock.lock();
+
+		try {
+			for (int p = 0; p < nodes.size(); p++) {
+				touch(nodes.wrapper(p));
+				nodeIds.remove(nodes.element(p).getId(), version + 1);
+			}
+
+			for (int p = 0; p < edges.size(); p++)
+				edgeIds.remove(edges.element(p).getId(), version + 1);
+
+			//
+			// Wrappers are not members anymore once the indices are cleared,
+			// so their adjacency is computed empty before.
+			//
+			for (int i = 0; i < touched.size(); i++) {
+				touched.get(i).touched = false;
+				touched.get(i).adjacency = Adjacency.EMPTY;
+			}
+
+			touched.clear();
+			super.empty();
+
+			nodeMirror.clear();
+			edgeMirror.clear();
+			dirty = true;
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#destroy()
+	 */
+	public void destroy() {
+		element.removeSink(lockingSink);
+		super.destroy();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#replay(org.graphstream.stream
+	 * .Sink)
+	 */
+	public void replay(Sink sink) {
+		lock.lock();
+
+		try {
+			super.replay(sink);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#snapshot()
+	 */
+	public FilteredGraphSnapshot snapshot() {
+		lock.lock();
+
+		try {
+			return super.snapshot();
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#setAsyncDelivery(int,
+	 * org.graphstream.graph.filtered.AsyncDelivery.Backpressure)
+	 */
+	public void setAsyncDelivery(int capacity,
+			AsyncDelivery.Backpressure backpressure) {
+		lock.lock();
+
+		try {
+			super.setAsyncDelivery(capacity, backpressure);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#configure(java.lang.Runnable
+	 * )
+	 */
+	void configure(Runnable task) {
+		lock.lock();
+
+		try {
+			super.configure(task);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#flush()
+	 */
+	public void flush() {
+		lock.lock();
+
+		try {
+			super.flush();
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#ensureCapacity(int,
+	 * int)
+	 */
+	public void ensureCapacity(int nodeCount, int edgeCount) {
+		lock.lock();
+
+		try {
+			super.ensureCapacity(nodeCount, edgeCount);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#trimToSize()
+	 */
+	public void trimToSize() {
+		lock.lock();
+
+		try {
+			super.trimToSize();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * The lazy mode is not supported by this graph.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if on is true
+	 */
+	public void setLazy(boolean on) {
+		if (on)
+			throw new UnsupportedOperationException(
+					"concurrent filtered graphs can not be lazy");
+	}
+
+	/**
+	 * The recycling of wrappers is not supported by this graph.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if on is true
+	 */
+	public void setRecycling(boolean on) {
+		if (on)
+			throw new UnsupportedOperationException(
+					"concurrent filtered graphs can not recycle wrappers");
+	}
+
+	/**
+	 * The tracking of components is not supported by this graph.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if on is true
+	 */
+	public void setComponentTracking(boolean on) {
+		if (on)
+			throw new UnsupportedOperationException(
+					"concurrent filtered graphs can not track components");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#removeNode(org.graphstream
+	 * .graph.Node)
+	 */
+	public <T extends Node> T removeNode(Node node) {
+		lock.lock();
+
+		try {
+			return super.<T> removeNode(node);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#removeEdge(org.graphstream
+	 * .graph.Edge)
+	 */
+	public <T extends Edge> T removeEdge(Edge edge) {
+		lock.lock();
+
+		try {
+			return super.<T> removeEdge(edge);
+		} finally {
+			release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#getUnfilteredNode(org.graphstream
+	 * .graph.Node)
+	 */
+	public Node getUnfilteredNode(Node n) {
+		if (n instanceof FilteredNode) {
+			if (((FilteredNode) n).graph == this)
+				return ((FilteredNode) n).getFilteredElement();
+
+			if (parent != null)
+				return parent.getUnfilteredNode(n);
+		}
+
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#getUnfilteredEdge(org.graphstream
+	 * .graph.Edge)
+	 */
+	public Edge getUnfilteredEdge(Edge e) {
+		if (e instanceof FilteredEdge) {
+			if (((FilteredEdge) e).graph == this)
+				return ((FilteredEdge) e).getFilteredElement();
+
+			if (parent != null)
+				return parent.getUnfilteredEdge(e);
+		}
+
+		return e;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#getFilteredNode(org.graphstream
+	 * .graph.Node)
+	 */
+	public FilteredNode getFilteredNode(Node n) {
+		if (n == null)
+			return null;
+
+		if (parent != null)
+			n = parent.getUnfilteredNode(n);
+
+		FilteredNode fn = lookup(nodeIds, n.getId());
+		return fn != null && fn.getFilteredElement() == n ? fn : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#getFilteredEdge(org.graphstream
+	 * .graph.Edge)
+	 */
+	public FilteredEdge getFilteredEdge(Edge e) {
+		if (e == null)
+			return null;
+
+		if (parent != null)
+			e = parent.getUnfilteredEdge(e);
+
+		FilteredEdge fe = lookup(edgeIds, e.getId());
+		return fe != null && fe.getFilteredElement() == e ? fe : null;
+	}
+
+	/**
+	 * Look an id up in the published view. Entries of older views are
+	 * dropped once a new view is published, so the lookup is made again if
+	 * the view has changed meanwhile.
+	 */
+	private <T> T lookup(VersionedIdMap<T> ids, String id) {
+		while (true) {
+			View v = view;
+			T t = ids.get(id, v.version);
+
+			if (t != null || view == v)
+				return t;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#contains(org.graphstream
+	 * .graph.Node)
+	 */
+	public boolean contains(Node n) {
+		return getFilteredNode(getUnfilteredNode(n)) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#contains(org.graphstream
+	 * .graph.Edge)
+	 */
+	public boolean contains(Edge e) {
+		return getFilteredEdge(getUnfilteredEdge(e)) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getNode(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode(String id) {
+		return (T) lookup(nodeIds, id);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getNode(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode(int index)
+			throws IndexOutOfBoundsException {
+		View v = view;
+
+		if (index < 0 || index >= v.nodeCount)
+			throw new IndexOutOfBoundsException("Node #" + index
+					+ " does not exist");
+
+		return (T) ChunkedArray.get(v.nodes, index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getNodeCount()
+	 */
+	public int getNodeCount() {
+		return view.nodeCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getNodeIterator()
+	 */
+	public <T extends Node> Iterator<T> getNodeIterator() {
+		View v = view;
+		return new ViewIterator<T>(v.nodes, v.nodeCount);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#iterator()
+	 */
+	public Iterator<Node> iterator() {
+		return getNodeIterator();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getEdge(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(String id) {
+		return (T) lookup(edgeIds, id);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(int index)
+			throws IndexOutOfBoundsException {
+		View v = view;
+
+		if (index < 0 || index >= v.edgeCount)
+			throw new IndexOutOfBoundsException("Edge #" + index
+					+ " does not exist");
+
+		return (T) ChunkedArray.get(v.edges, index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getEdgeCount()
+	 */
+	public int getEdgeCount() {
+		return view.edgeCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getDegreeDistribution()
+	 */
+	public int[] getDegreeDistribution() {
+		return view.degreeCounts.clone();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getMinDegree()
+	 */
+	public int getMinDegree() {
+		return view.minDegree;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getMaxDegree()
+	 */
+	public int getMaxDegree() {
+		return Math.max(view.degreeCounts.length - 1, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getAverageDegree()
+	 */
+	public double getAverageDegree() {
+		View v = view;
+		return averageDegree(v.degreeSum, v.nodeCount);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getDensity()
+	 */
+	public double getDensity() {
+		View v = view;
+		return density(v.nodeCount, v.linkedEdges);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#getEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEdgeIterator() {
+		View v = view;
+		return new ViewIterator<T>(v.edges, v.edgeCount);
+	}
+
+	/**
+	 * Nodes and edges of the graph at some point in time. Chunks are never
+	 * modified once they are in a view.
+	 */
+	private static class View {
+		final long version;
+		final Object[][] nodes;
+		final int nodeCount;
+		final Object[][] edges;
+		final int edgeCount;
+
+		/*
+		 * Degree statistics, the counts being shared with the previous view
+		 * if they have not changed.
+		 */
+		final int[] degreeCounts;
+		final long degreeSum;
+		final int minDegree;
+		final int degreeModCount;
+		final int linkedEdges;
+
+		View(long version, Object[][] nodes, int nodeCount, Object[][] edges,
+				int edgeCount, int[] degreeCounts, long degreeSum,
+				int minDegree, int degreeModCount, int linkedEdges) {
+			this.version = version;
+			this.nodes = nodes;
+			this.nodeCount = nodeCount;
+			this.edges = edges;
+			this.edgeCount = edgeCount;
+			this.degreeCounts = degreeCounts;
+			this.degreeSum = degreeSum;
+			this.minDegree = minDegree;
+			this.degreeModCount = degreeModCount;
+			this.linkedEdges = linkedEdges;
+		}
+	}
+
+	/**
+	 * Edges and degrees of a node at some point in time, divided in sections
+	 * like in {@link NodeIndex}.
+	 */
+	static class Adjacency {
+		static final Adjacency EMPTY = new Adjacency(new FilteredEdge[0], 0,
+				0);
+
+		final FilteredEdge[] edges;
+		final int inDegree;
+		final int outDegree;
+
+		Adjacency(FilteredEdge[] edges, int inDegree, int outDegree) {
+			this.edges = edges;
+			this.inDegree = inDegree;
+			this.outDegree = outDegree;
+		}
+
+		int leavingStart() {
+			return edges.length - outDegree;
+		}
+	}
+
+	/**
+	 * Iterator over the elements of a view. Removing an element removes it
+	 * from the base graph, which must then be done by the thread modifying
+	 * the base graph.
+	 */
+	private class ViewIterator<T> implements Iterator<T> {
+		final Object[][] chunks;
+		final int count;
+		int next;
+		Object current;
+
+		ViewIterator(Object[][] chunks, int count) {
+			this.chunks = chunks;
+			this.count = count;
+			next = 0;
+			current = null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next >= count)
+				throw new NoSuchElementException();
+
+			current = ChunkedArray.get(chunks, next++);
+			return (T) current;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			if (current == null)
+				throw new IllegalStateException();
+
+			if (current instanceof Node)
+				removeNode((Node) current);
+			else
+				removeEdge((Edge) current);
+
+			current = null;
+		}
+	}
+
+	/**
+	 * Decorates the sink of the graph, so that events of the base graph are
+	 * handled under the lock.
+	 */
+	private class LockingSink implements Sink {
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void edgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			lock.lock();
+
+			try {
+				filteredSink.edgeAttributeAdded(sourceId, timeId, edgeId,
+						attribute, value);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void edgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			lock.lock();
+
+			try {
+				filteredSink.edgeAttributeChanged(sourceId, timeId, edgeId,
+						attribute, oldValue, newValue);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void edgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			lock.lock();
+
+			try {
+				filteredSink.edgeAttributeRemoved(sourceId, timeId, edgeId,
+						attribute);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.Object)
+		 */
+		public void graphAttributeAdded(String sourceId, long timeId,
+				String attribute, Object value) {
+			lock.lock();
+
+			try {
+				filteredSink.graphAttributeAdded(sourceId, timeId, attribute,
+						value);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.Object, java.lang.Object)
+		 */
+		public void graphAttributeChanged(String sourceId, long timeId,
+				String attribute, Object oldValue, Object newValue) {
+			lock.lock();
+
+			try {
+				filteredSink.graphAttributeChanged(sourceId, timeId,
+						attribute, oldValue, newValue);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang
+		 * .String, long, java.lang.String)
+		 */
+		public void graphAttributeRemoved(String sourceId, long timeId,
+				String attribute) {
+			lock.lock();
+
+			try {
+				filteredSink.graphAttributeRemoved(sourceId, timeId, attribute);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void nodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			lock.lock();
+
+			try {
+				filteredSink.nodeAttributeAdded(sourceId, timeId, nodeId,
+						attribute, value);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void nodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			lock.lock();
+
+			try {
+				filteredSink.nodeAttributeChanged(sourceId, timeId, nodeId,
+						attribute, oldValue, newValue);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void nodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			lock.lock();
+
+			try {
+				filteredSink.nodeAttributeRemoved(sourceId, timeId, nodeId,
+						attribute);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String,
+		 * long, java.lang.String, java.lang.String, java.lang.String, boolean)
+		 */
+		public void edgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			lock.lock();
+
+			try {
+				filteredSink.edgeAdded(sourceId, timeId, edgeId, fromNodeId,
+						toNodeId, directed);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			lock.lock();
+
+			try {
+				filteredSink.edgeRemoved(sourceId, timeId, edgeId);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+		 * long)
+		 */
+		public void graphCleared(String sourceId, long timeId) {
+			lock.lock();
+
+			try {
+				filteredSink.graphCleared(sourceId, timeId);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			lock.lock();
+
+			try {
+				filteredSink.nodeAdded(sourceId, timeId, nodeId);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			lock.lock();
+
+			try {
+				filteredSink.nodeRemoved(sourceId, timeId, nodeId);
+			} finally {
+				release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+		 * long, double)
+		 */
+		public void stepBegins(String sourceId, long timeId, double step) {
+			lock.lock();
+
+			try {
+				filteredSink.stepBegins(sourceId, timeId, step);
+			} finally {
+				release();
+			}
+		}
+	}
+}
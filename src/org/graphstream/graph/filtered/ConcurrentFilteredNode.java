@@ -0,0 +1,461 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.graphstream.graph.BreadthFirstIterator;
+import org.graphstream.graph.DepthFirstIterator;
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.filtered.ConcurrentFilteredGraph.Adjacency;
+
+/**
+ * Node of a {@link ConcurrentFilteredGraph}. Edges and degrees are read from
+ * the adjacency published by the graph, which is replaced as a whole each
+ * time it changes, so they can be read without locking.
+ */
+class ConcurrentFilteredNode extends FilteredNode {
+
+	volatile Adjacency adjacency;
+
+	/*
+	 * True if the adjacency has to be published again, only used by the
+	 * writer.
+	 */
+	boolean touched;
+
+	ConcurrentFilteredNode(Node target, ConcurrentFilteredGraph g) {
+		super(target, g);
+
+		adjacency = Adjacency.EMPTY;
+		touched = false;
+	}
+
+	/**
+	 * Look for an edge in a section of an adjacency whose opposite is a given
+	 * node of the base graph.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Edge> T locateEdge(FilteredEdge[] edges, Node target,
+			int from, int to) {
+		if (target == null)
+			return null;
+
+		for (int i = from; i < to; i++) {
+			if (edges[i].getFilteredElement().getOpposite(element) == target)
+				return (T) edges[i];
+		}
+
+		return null;
+	}
+
+	/**
+	 * Look for an edge in a section of an adjacency whose opposite has a given
+	 * id. The base graph is not read, since it may be modified meanwhile.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Edge> T locateEdge(FilteredEdge[] edges, String id,
+			int from, int to) {
+		for (int i = from; i < to; i++) {
+			Node o = edges[i].getFilteredElement().getOpposite(element);
+
+			if (o.getId().equals(id))
+				return (T) edges[i];
+		}
+
+		return null;
+	}
+
+	private Node unfilteredNode(int index) {
+		return ((FilteredNode) graph.getNode(index)).getFilteredElement();
+	}
+
+	/*
+	 * Traversals go through the published adjacency of the nodes, since the
+	 * indices of the graph may be modified meanwhile.
+	 */
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getBreadthFirstIterator()
+	 */
+	public <T extends Node> Iterator<T> getBreadthFirstIterator() {
+		return new BreadthFirstIterator<T>(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getBreadthFirstIterator(boolean)
+	 */
+	public <T extends Node> Iterator<T> getBreadthFirstIterator(boolean directed) {
+		return new BreadthFirstIterator<T>(this, directed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getDepthFirstIterator()
+	 */
+	public <T extends Node> Iterator<T> getDepthFirstIterator() {
+		return new DepthFirstIterator<T>(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getDepthFirstIterator(boolean)
+	 */
+	public <T extends Node> Iterator<T> getDepthFirstIterator(boolean directed) {
+		return new DepthFirstIterator<T>(this, directed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getDegree()
+	 */
+	public int getDegree() {
+		return adjacency.edges.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getInDegree()
+	 */
+	public int getInDegree() {
+		return adjacency.inDegree;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getOutDegree()
+	 */
+	public int getOutDegree() {
+		return adjacency.outDegree;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(int i) {
+		Adjacency adj = adjacency;
+
+		if (i < 0 || i >= adj.edges.length)
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) adj.edges[i];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEnteringEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEnteringEdge(int i) {
+		Adjacency adj = adjacency;
+
+		if (i < 0 || i >= adj.inDegree)
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) adj.edges[i];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getLeavingEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getLeavingEdge(int i) {
+		Adjacency adj = adjacency;
+
+		if (i < 0 || i >= adj.outDegree)
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) adj.edges[adj.leavingStart() + i];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeBetween(java.lang.
+	 * String)
+	 */
+	public <T extends Edge> T getEdgeBetween(String id) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, id, 0, adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeBetween(org.graphstream
+	 * .graph.Node)
+	 */
+	public <T extends Edge> T getEdgeBetween(Node node) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, graph.getUnfilteredNode(node), 0,
+				adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEdgeBetween(int)
+	 */
+	public <T extends Edge> T getEdgeBetween(int index)
+			throws IndexOutOfBoundsException {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, unfilteredNode(index), 0,
+				adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeFrom(java.lang.String)
+	 */
+	public <T extends Edge> T getEdgeFrom(String id) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, id, 0, adj.inDegree);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeFrom(org.graphstream
+	 * .graph.Node)
+	 */
+	public <T extends Edge> T getEdgeFrom(Node node) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, graph.getUnfilteredNode(node), 0,
+				adj.inDegree);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEdgeFrom(int)
+	 */
+	public <T extends Edge> T getEdgeFrom(int index)
+			throws IndexOutOfBoundsException {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, unfilteredNode(index), 0, adj.inDegree);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeToward(java.lang.String
+	 * )
+	 */
+	public <T extends Edge> T getEdgeToward(String id) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, id, adj.leavingStart(),
+				adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEdgeToward(org.graphstream
+	 * .graph.Node)
+	 */
+	public <T extends Edge> T getEdgeToward(Node node) {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, graph.getUnfilteredNode(node), adj
+				.leavingStart(), adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEdgeToward(int)
+	 */
+	public <T extends Edge> T getEdgeToward(int index)
+			throws IndexOutOfBoundsException {
+		Adjacency adj = adjacency;
+		return locateEdge(adj.edges, unfilteredNode(index),
+				adj.leavingStart(), adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#getEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEdgeIterator() {
+		Adjacency adj = adjacency;
+		return new SectionIterator<T>(adj.edges, 0, adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getEnteringEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEnteringEdgeIterator() {
+		Adjacency adj = adjacency;
+		return new SectionIterator<T>(adj.edges, 0, adj.inDegree);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getLeavingEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getLeavingEdgeIterator() {
+		Adjacency adj = adjacency;
+		return new SectionIterator<T>(adj.edges, adj.leavingStart(),
+				adj.edges.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredNode#getNeighborNodeIterator()
+	 */
+	public <T extends Node> Iterator<T> getNeighborNodeIterator() {
+		return new NeighborIterator<T>(adjacency.edges);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredNode#iterator()
+	 */
+	public Iterator<Edge> iterator() {
+		return getEdgeIterator();
+	}
+
+	/**
+	 * Iterator over a section of a published adjacency. It never fails since
+	 * the adjacency is not modified.
+	 */
+	private static class SectionIterator<T extends Edge> implements
+			Iterator<T> {
+		final FilteredEdge[] edges;
+		int next;
+		final int end;
+
+		SectionIterator(FilteredEdge[] edges, int from, int to) {
+			this.edges = edges;
+			next = from;
+			end = to;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next >= end)
+				throw new NoSuchElementException();
+
+			return (T) edges[next++];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+
+	/**
+	 * Iterator over the opposite nodes of the edges of a published adjacency,
+	 * skipping the opposites which are not included in the graph.
+	 */
+	private class NeighborIterator<T extends Node> implements Iterator<T> {
+		final FilteredEdge[] edges;
+		int index;
+		FilteredNode next;
+
+		NeighborIterator(FilteredEdge[] edges) {
+			this.edges = edges;
+			index = 0;
+			lookup();
+		}
+
+		private void lookup() {
+			next = null;
+
+			while (next == null && index < edges.length) {
+				Edge e = edges[index++].getFilteredElement();
+				next = graph.getFilteredNode(e.getOpposite(element));
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next == null)
+				throw new NoSuchElementException();
+
+			FilteredNode n = next;
+			lookup();
+
+			return (T) n;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Edge;
+
+/**
+ * Edges of a filtered graph. Besides the membership, it stores for each edge
+ * its slot in the adjacency of its endpoints.
+ */
+class EdgeIndex extends MembershipIndex<Edge, FilteredEdge> {
+
+	final FilteredGraph graph;
+
+	/*
+	 * Slots of the edges in the adjacency of their source and target nodes. A
+	 * loop only uses its first slot.
+	 */
+	int[] slots0, slots1;
+
+	EdgeIndex(FilteredGraph graph, int capacity, boolean lazy) {
+		super(capacity, lazy);
+
+		this.graph = graph;
+
+		slots0 = new int[capacity()];
+		slots1 = new int[capacity()];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.MembershipIndex#newWrapper(org.graphstream
+	 * .graph.Element)
+	 */
+	FilteredEdge newWrapper(Edge e) {
+		return graph.newFilteredEdge(e);
+	}
+
+	/**
+	 * The wrapper of a new edge can be a recycled one, its endpoints are set
+	 * again by the endpoints registering the edge.
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#entered(int)
+	 */
+	void entered(int position) {
+		if (!isLazy()) {
+			FilteredEdge f = wrapper(position);
+
+			f.node0 = null;
+			f.node1 = null;
+		}
+	}
+
+	/**
+	 * Set the endpoints held by the wrappers of the edges in eager mode, or
+	 * clear them in lazy mode, when the mode changes.
+	 */
+	void linkAll() {
+		for (int p = 0; p < size(); p++) {
+			FilteredEdge f = cached(p);
+
+			if (f == null)
+				continue;
+
+			if (isLazy()) {
+				f.node0 = null;
+				f.node1 = null;
+			} else {
+				Edge e = element(p);
+
+				f.node0 = graph.nodes.get(e.getNode0());
+				f.node1 = graph.nodes.get(e.getNode1());
+			}
+		}
+	}
+
+	/**
+	 * The record of an edge holds the positions of its endpoints, -1 for the
+	 * ones which are not included. A loop has the same position twice.
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#record(int)
+	 */
+	Object record(int position) {
+		Edge e = element(position);
+		int n0 = graph.nodes.indexOf(e.getNode0());
+		int n1 = e.isLoop() ? n0 : graph.nodes.indexOf(e.getNode1());
+
+		return new int[] { n0, n1 };
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#resize(int)
+	 */
+	void resize(int capacity) {
+		super.resize(capacity);
+
+		slots0 = Arrays.copyOf(slots0, capacity);
+		slots1 = Arrays.copyOf(slots1, capacity);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#move(int, int)
+	 */
+	void move(int from, int to) {
+		super.move(from, to);
+
+		slots0[to] = slots0[from];
+		slots1[to] = slots1[from];
+
+		//
+		// The adjacency of the included endpoints refers to the position of
+		// the edge.
+		//
+		Edge e = element(to);
+		NodeIndex nodes = graph.nodes;
+		int n0 = nodes.indexOf(e.getNode0());
+
+		if (n0 >= 0) {
+			nodes.adjacency[n0][slots0[to]] = to;
+			nodes.changed(n0);
+		}
+
+		if (!e.isLoop()) {
+			int n1 = nodes.indexOf(e.getNode1());
+
+			if (n1 >= 0) {
+				nodes.adjacency[n1][slots1[to]] = to;
+				nodes.changed(n1);
+			}
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.util.Filter;
+import org.graphstream.util.Filters;
+
+/**
+ * A filtered graph holding the nodes within a given count of hops of a set of
+ * seed nodes, and the edges between them. Edges are followed in both
+ * directions.
+ *
+ * Each node of this graph keeps its distance to the seeds. When an edge makes
+ * a node closer, distances are lowered from this node, up to the radius and
+ * only where they change, and the nodes coming within the radius are
+ * included. When an edge or a node is removed, only the nodes whose shortest
+ * paths all went through it are evaluated again : they are found level by
+ * level from the removed element, then their distances are computed from the
+ * neighbors which kept theirs. Nodes ending beyond the radius are removed.
+ *
+ * Ego graphs are created by {@link EgoNetworks}. Their nodes are given by the
+ * seeds and the radius, so nodes can not be included explicitly, and the
+ * filters and the induced mode can not be changed.
+ */
+public class EgoGraph extends FilteredGraph {
+
+	/*
+	 * Distance of the nodes out of this graph.
+	 */
+	private static final int FAR = Integer.MAX_VALUE / 2;
+
+	private final int radius;
+	private final ArrayList<Node> seeds;
+
+	/*
+	 * Distance to the seeds of the node at each position.
+	 */
+	private int[] distances;
+
+	/*
+	 * True while this graph changes its own members, so that the inclusions
+	 * and removals it makes are not evaluated again.
+	 */
+	private boolean updating;
+
+	/*
+	 * Epoch of the last repair having queued each position, and having found
+	 * that it lost all its shortest paths.
+	 */
+	private int[] queued;
+	private int[] lost;
+	private int epoch;
+
+	EgoGraph(String id, Graph g, int radius, Node[] seeds,
+			SubgraphManager manager) {
+		super(id, g, Filters.<Node> falseFilter(), Filters.<Edge> trueFilter(),
+				false, manager);
+
+		this.radius = radius;
+		this.seeds = new ArrayList<Node>();
+
+		distances = new int[MIN_CAPACITY];
+		queued = new int[MIN_CAPACITY];
+		lost = new int[MIN_CAPACITY];
+
+		setInduced(true);
+
+		for (Node s : seeds) {
+			Node n = getUnfilteredNode(s);
+
+			if (n != null && inParent(n) && !this.seeds.contains(n)) {
+				this.seeds.add(n);
+				lower(n, 0);
+			}
+		}
+	}
+
+	/**
+	 * Get the maximal count of hops between the seeds and the nodes of this
+	 * graph.
+	 *
+	 * @return the radius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Get the seeds still in the base graph.
+	 *
+	 * @return an unmodifiable view of the seeds, nodes of the base graph
+	 */
+	public Collection<Node> getSeeds() {
+		return Collections.unmodifiableList(seeds);
+	}
+
+	/**
+	 * Get the count of hops between the seeds and a node.
+	 *
+	 * @param n
+	 *            a node of this graph or of the base graph
+	 * @return the distance of n, or -1 if n is not in this graph
+	 */
+	public int getDistance(Node n) {
+		int p = nodes.indexOf(getUnfilteredNode(n));
+		return p < 0 ? -1 : distances[p];
+	}
+
+	/**
+	 * Nodes are only included by the seeds.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	public void include(Node n) {
+		throw new UnsupportedOperationException(
+				"nodes of ego graphs are given by their seeds");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#include(org.graphstream.
+	 * graph.Edge)
+	 */
+	public void include(Edge e) {
+		if (!updating && !edges.contains(e) && inParent(e)) {
+			Node n0 = e.getNode0();
+			Node n1 = e.getNode1();
+			int d0 = distance(n0);
+			int d1 = distance(n1);
+
+			if (d0 + 1 < d1)
+				lower(n1, d0 + 1);
+			else if (d1 + 1 < d0)
+				lower(n0, d1 + 1);
+		}
+
+		super.include(e);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#notInclude(org.graphstream
+	 * .graph.Node)
+	 */
+	public void notInclude(Node n) {
+		int p = nodes.indexOf(n);
+
+		if (p < 0)
+			return;
+
+		if (distances[p] == 0)
+			seeds.remove(n);
+
+		boolean u = updating;
+
+		if (!updating) {
+			int d = distances[p];
+			int[] children = new int[nodes.degrees[p]];
+			int count = 0;
+
+			for (int s = 0; s < nodes.degrees[p]; s++) {
+				int q = nodes.opposite(p, s);
+
+				if (q >= 0 && distances[q] == d + 1)
+					children[count++] = q;
+			}
+
+			if (count > 0) {
+				repair(children, count, p);
+				p = nodes.indexOf(n);
+			}
+		}
+
+		updating = true;
+		super.notInclude(n);
+		updating = u;
+
+		distances[p] = distances[nodes.size()];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.FilteredGraph#notInclude(org.graphstream
+	 * .graph.Edge)
+	 */
+	public void notInclude(Edge e) {
+		if (updating || !edges.contains(e)) {
+			super.notInclude(e);
+			return;
+		}
+
+		int p0 = nodes.indexOf(e.getNode0());
+		int p1 = nodes.indexOf(e.getNode1());
+
+		super.notInclude(e);
+
+		if (p0 >= 0 && p1 >= 0 && distances[p0] != distances[p1])
+			repair(new int[] { distances[p0] < distances[p1] ? p1 : p0 }, 1,
+					-1);
+	}
+
+	/**
+	 * The node filter of an ego graph can not be changed.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	public void setNodeFilter(Filter<Node> nf) {
+		throw new UnsupportedOperationException(
+				"nodes of ego graphs are given by their seeds");
+	}
+
+	/**
+	 * The edge filter of an ego graph can not be changed.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	public void setEdgeFilter(Filter<Edge> ef) {
+		throw new UnsupportedOperationException(
+				"ego graphs hold all the edges between their nodes");
+	}
+
+	/**
+	 * Ego graphs are always in induced mode.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if on is false
+	 */
+	public void setInduced(boolean on) {
+		if (!on)
+			throw new UnsupportedOperationException(
+					"ego graphs hold all the edges between their nodes");
+
+		super.setInduced(on);
+	}
+
+	/**
+	 * Remove all the nodes and edges. The seeds are forgotten, so this graph
+	 * stays empty.
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredGraph#empty()
+	 */
+	public void empty() {
+		super.empty();
+		seeds.clear();
+	}
+
+	private int distance(Node n) {
+		int p = nodes.indexOf(n);
+		return p < 0 ? FAR : distances[p];
+	}
+
+	/**
+	 * Set the distance of a node, including it if needed.
+	 *
+	 * @return position of the node
+	 */
+	private int place(Node n, int d) {
+		int p = nodes.indexOf(n);
+
+		if (p < 0) {
+			super.include(n);
+			p = nodes.indexOf(n);
+
+			if (p >= distances.length)
+				grow(p + 1);
+		}
+
+		distances[p] = d;
+		return p;
+	}
+
+	/**
+	 * Lower the distance of a node, and the distances of the nodes it makes
+	 * closer, in breadth-first order.
+	 */
+	private void lower(Node start, int d) {
+		if (d > radius || !inParent(start))
+			return;
+
+		boolean u = updating;
+		int[] queue = new int[16];
+		int head = 0;
+		int tail = 0;
+
+		updating = true;
+		queue[tail++] = place(start, d);
+
+		while (head < tail) {
+			int y = queue[head++];
+			int dy = distances[y];
+
+			if (dy >= radius)
+				continue;
+
+			Node n = nodes.element(y);
+			Iterator<Edge> ite = n.getEdgeIterator();
+
+			while (ite.hasNext()) {
+				Edge e = ite.next();
+				Node o = e.getOpposite(n);
+
+				if (o == n || !inParent(e) || !inParent(o))
+					continue;
+
+				int q = nodes.indexOf(o);
+
+				if (q < 0 || distances[q] > dy + 1)
+					queue = push(queue, tail++, place(o, dy + 1));
+			}
+		}
+
+		updating = u;
+	}
+
+	/**
+	 * Evaluate again the distances of the nodes which may have lost all their
+	 * shortest paths, and remove the nodes ending beyond the radius.
+	 *
+	 * @param candidates
+	 *            positions of the nodes whose shortest paths may all go
+	 *            through the removed element, all at the same distance
+	 * @param count
+	 *            count of candidates
+	 * @param ignored
+	 *            position of the node being removed, -1 for an edge
+	 */
+	private void repair(int[] candidates, int count, int ignored) {
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(queued, 0);
+			Arrays.fill(lost, 0);
+			epoch = 1;
+		}
+
+		int[] queue = new int[Math.max(16, count)];
+		int head = 0;
+		int tail = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (queued[candidates[i]] != epoch) {
+				queued[candidates[i]] = epoch;
+				queue[tail++] = candidates[i];
+			}
+		}
+
+		//
+		// Nodes without a neighbor one hop closer which is not lost, found
+		// level by level.
+		//
+		int[] affected = new int[16];
+		int size = 0;
+
+		while (head < tail) {
+			int y = queue[head++];
+			int dy = distances[y];
+
+			if (dy == 0 || supported(y, ignored))
+				continue;
+
+			lost[y] = epoch;
+			affected = push(affected, size++, y);
+
+			for (int s = 0; s < nodes.degrees[y]; s++) {
+				int z = nodes.opposite(y, s);
+
+				if (z >= 0 && z != ignored && queued[z] != epoch
+						&& distances[z] == dy + 1) {
+					queued[z] = epoch;
+					queue = push(queue, tail++, z);
+				}
+			}
+		}
+
+		if (size == 0)
+			return;
+
+		//
+		// Distances through the neighbors which are not lost, then lowered
+		// among the lost nodes in increasing order : the sorted distances
+		// and the queue of lowered nodes are merged.
+		//
+		long[] order = new long[size];
+
+		for (int i = 0; i < size; i++) {
+			int y = affected[i];
+			int d = FAR;
+
+			for (int s = 0; s < nodes.degrees[y]; s++) {
+				int z = nodes.opposite(y, s);
+
+				if (z >= 0 && z != ignored && lost[z] != epoch)
+					d = Math.min(d, distances[z] + 1);
+			}
+
+			distances[y] = d;
+			order[i] = ((long) d << 32) | y;
+		}
+
+		Arrays.sort(order);
+
+		int next = 0;
+		head = 0;
+		tail = 0;
+
+		while (head < tail || next < size) {
+			int y;
+
+			if (head < tail
+					&& (next == size || distances[queue[head]] <= (int) (order[next] >>> 32)))
+				y = queue[head++];
+			else {
+				y = (int) order[next];
+
+				if ((int) (order[next++] >>> 32) != distances[y])
+					continue;
+			}
+
+			int dy = distances[y];
+
+			if (dy >= radius)
+				break;
+
+			for (int s = 0; s < nodes.degrees[y]; s++) {
+				int z = nodes.opposite(y, s);
+
+				if (z >= 0 && lost[z] == epoch && distances[z] > dy + 1) {
+					distances[z] = dy + 1;
+					queue = push(queue, tail++, z);
+				}
+			}
+		}
+
+		Node[] leaving = new Node[size];
+		int leavingCount = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (distances[affected[i]] > radius)
+				leaving[leavingCount++] = nodes.element(affected[i]);
+		}
+
+		boolean u = updating;
+		updating = true;
+
+		for (int i = 0; i < leavingCount; i++)
+			notInclude(leaving[i]);
+
+		updating = u;
+	}
+
+	/**
+	 * Tell if a node has a neighbor one hop closer to the seeds, which is
+	 * not lost in the current repair.
+	 */
+	private boolean supported(int y, int ignored) {
+		int d = distances[y] - 1;
+
+		for (int s = 0; s < nodes.degrees[y]; s++) {
+			int z = nodes.opposite(y, s);
+
+			if (z >= 0 && z != ignored && lost[z] != epoch
+					&& distances[z] == d)
+				return true;
+		}
+
+		return false;
+	}
+
+	private static int[] push(int[] array, int i, int value) {
+		if (i == array.length)
+			array = Arrays.copyOf(array, i * 2);
+
+		array[i] = value;
+		return array;
+	}
+
+	private void grow(int capacity) {
+		int length = Math.max(capacity, distances.length * 2);
+
+		distances = Arrays.copyOf(distances, length);
+		queued = Arrays.copyOf(queued, length);
+		lost = Arrays.copyOf(lost, length);
+	}
+}
@@ -0,0 +1,132 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * A set of {@link EgoGraph}s over the same base graph, sharing a single sink
+ * of the base graph.
+ *
+ * A new node can not be within the radius of any seed, so its addition is not
+ * sent to the ego graphs. The addition of an edge is only sent to the ego
+ * graphs containing one of its endpoints, and other events on an element to
+ * the ego graphs containing it. The cost of an event thus depends on the ego
+ * graphs it concerns, not on the count of ego graphs.
+ */
+public class EgoNetworks {
+
+	private final Router router;
+
+	/**
+	 * Create a set of ego graphs over a graph. If this graph is a filtered
+	 * graph, ego graphs only hold its nodes and edges.
+	 *
+	 * @param base
+	 *            the graph ego graphs are built on
+	 */
+	public EgoNetworks(Graph base) {
+		router = new Router(base);
+	}
+
+	/**
+	 * Create an ego graph, holding the nodes within a count of hops of some
+	 * seeds, and the edges between them.
+	 *
+	 * @param id
+	 *            id of the ego graph
+	 * @param radius
+	 *            maximal count of hops between the seeds and the nodes
+	 * @param seeds
+	 *            nodes of the base graph
+	 * @return the new ego graph
+	 */
+	public EgoGraph newEgoGraph(String id, int radius, Node... seeds) {
+		return new EgoGraph(id, router.getBaseGraph(), radius, seeds, router);
+	}
+
+	/**
+	 * Get the count of ego graphs which have not been destroyed.
+	 *
+	 * @return count of ego graphs
+	 */
+	public int getEgoGraphCount() {
+		return router.getSubgraphCount();
+	}
+
+	/**
+	 * Get the graph ego graphs are built on.
+	 *
+	 * @return the base graph
+	 */
+	public Graph getBaseGraph() {
+		return router.getBaseGraph();
+	}
+
+	/**
+	 * Destroy all the ego graphs and unregister the sink of the base graph.
+	 */
+	public void destroy() {
+		router.destroy();
+	}
+
+	/**
+	 * The manager of the ego graphs, sending the addition of an edge to the
+	 * ego graphs of its endpoints only.
+	 */
+	private static class Router extends SubgraphManager {
+
+		private final ArrayList<FilteredGraph> targets;
+
+		Router(Graph base) {
+			super(base);
+			targets = new ArrayList<FilteredGraph>();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.graph.filtered.SubgraphManager#scansSubgraphs()
+		 */
+		boolean scansSubgraphs() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.graph.filtered.SubgraphManager#routeNodeAdded(java
+		 * .lang.String, long, java.lang.String)
+		 */
+		void routeNodeAdded(String sourceId, long timeId, String nodeId) {
+			refilterPending();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.graph.filtered.SubgraphManager#routeEdgeAdded(java
+		 * .lang.String, long, java.lang.String, java.lang.String,
+		 * java.lang.String, boolean)
+		 */
+		void routeEdgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			refilterPending();
+
+			Edge e = element.getEdge(edgeId);
+
+			if (e == null)
+				return;
+
+			subgraphsOf(e.getNode0(), e.getNode1(), targets);
+
+			for (int i = 0; i < targets.size(); i++)
+				targets.get(i).filteredSink.edgeAdded(sourceId, timeId,
+						edgeId, fromNodeId, toNodeId, directed);
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.graphstream.stream.AttributeSink;
+import org.graphstream.stream.ElementSink;
+import org.graphstream.stream.Sink;
+
+/**
+ * A sequence of events buffered by a {@link FilteredGraph} in batching mode.
+ *
+ * Events are encoded in a few flat arrays : the type and the time id of each
+ * event, its string and object arguments one after the other, and the value
+ * of step events. Adding an event only stores references and primitives, the
+ * arrays are reused from one batch to the next.
+ *
+ * When attribute coalescing is enabled, an attribute event on an element is
+ * merged with the previous event of the batch on the same attribute of the
+ * same element, unless the element has been added or removed in between :
+ * successive changes are merged into one change keeping the first old value
+ * and the last new value, and an attribute added then removed leaves no
+ * event.
+ *
+ * A batch is only valid during the call delivering it, it is cleared and
+ * filled again once the call returns.
+ *
+ * @see BatchSink
+ */
+public final class EventBatch {
+
+	static final byte NODE_ADDED = 0;
+	static final byte NODE_REMOVED = 1;
+	static final byte EDGE_ADDED = 2;
+	static final byte DIRECTED_EDGE_ADDED = 3;
+	static final byte EDGE_REMOVED = 4;
+	static final byte GRAPH_CLEARED = 5;
+	static final byte STEP_BEGINS = 6;
+	static final byte GRAPH_ATTRIBUTE_ADDED = 7;
+	static final byte GRAPH_ATTRIBUTE_CHANGED = 8;
+	static final byte GRAPH_ATTRIBUTE_REMOVED = 9;
+	static final byte NODE_ATTRIBUTE_ADDED = 10;
+	static final byte NODE_ATTRIBUTE_CHANGED = 11;
+	static final byte NODE_ATTRIBUTE_REMOVED = 12;
+	static final byte EDGE_ATTRIBUTE_ADDED = 13;
+	static final byte EDGE_ATTRIBUTE_CHANGED = 14;
+	static final byte EDGE_ATTRIBUTE_REMOVED = 15;
+
+	/*
+	 * Type of the events removed by coalescing.
+	 */
+	static final byte DISCARDED = -1;
+
+	/*
+	 * Type, time id and offset of the first argument of each event, and count
+	 * of events removed by coalescing.
+	 */
+	private byte[] types;
+	private long[] times;
+	private int[] offsets;
+	private int size;
+	private int discarded;
+
+	/*
+	 * Arguments of the events, in the order of the events and of the
+	 * parameters of the corresponding sink method.
+	 */
+	private Object[] arguments;
+	private int argumentCount;
+
+	/*
+	 * Values of the step events.
+	 */
+	private double[] steps;
+	private int stepCount;
+
+	/*
+	 * Position of the last attribute event of each attribute of each
+	 * element, and of the last element event of each node and edge, null if
+	 * coalescing is disabled.
+	 */
+	private HashMap<Key, Integer> attributes;
+	private HashMap<String, Integer> nodeEvents;
+	private HashMap<String, Integer> edgeEvents;
+	private final Key probe;
+
+	EventBatch(int capacity, boolean coalescing) {
+		capacity = Math.max(capacity, 1);
+
+		types = new byte[capacity];
+		times = new long[capacity];
+		offsets = new int[capacity];
+		arguments = new Object[capacity * 4];
+		steps = new double[1];
+		size = 0;
+		discarded = 0;
+		argumentCount = 0;
+		stepCount = 0;
+		probe = new Key();
+
+		if (coalescing) {
+			attributes = new HashMap<Key, Integer>();
+			nodeEvents = new HashMap<String, Integer>();
+			edgeEvents = new HashMap<String, Integer>();
+		}
+	}
+
+	/**
+	 * Count of events in this batch.
+	 *
+	 * @return the count of events
+	 */
+	public int size() {
+		return size - discarded;
+	}
+
+	/**
+	 * Tell if this batch contains no event.
+	 *
+	 * @return true if this batch is empty
+	 */
+	public boolean isEmpty() {
+		return size == discarded;
+	}
+
+	/**
+	 * Count of events added to this batch, including the ones removed by
+	 * coalescing. This is what the batch holds in memory.
+	 */
+	int length() {
+		return size;
+	}
+
+	/**
+	 * Send the events of this batch to a sink, one call per event, in the
+	 * order they have been buffered.
+	 *
+	 * @param sink
+	 *            the sink receiving the events
+	 */
+	public void replay(Sink sink) {
+		replay(sink, sink);
+	}
+
+	/**
+	 * Send the events of this batch to an element sink and an attribute sink,
+	 * one call per event, in the order they have been buffered. Each sink only
+	 * receives its kind of events, and can be null.
+	 *
+	 * @param elementSink
+	 *            the sink receiving element events, or null
+	 * @param attributeSink
+	 *            the sink receiving attribute events, or null
+	 */
+	public void replay(ElementSink elementSink, AttributeSink attributeSink) {
+		ElementSink es = elementSink;
+		AttributeSink as = attributeSink;
+		Object[] a = arguments;
+		int s = 0;
+
+		for (int i = 0; i < size; i++) {
+			long t = times[i];
+			int p = offsets[i];
+
+			switch (types[i]) {
+			case NODE_ADDED:
+				if (es != null)
+					es.nodeAdded((String) a[p], t, (String) a[p + 1]);
+				break;
+			case NODE_REMOVED:
+				if (es != null)
+					es.nodeRemoved((String) a[p], t, (String) a[p + 1]);
+				break;
+			case EDGE_ADDED:
+			case DIRECTED_EDGE_ADDED:
+				if (es != null)
+					es.edgeAdded((String) a[p], t, (String) a[p + 1],
+							(String) a[p + 2], (String) a[p + 3],
+							types[i] == DIRECTED_EDGE_ADDED);
+				break;
+			case EDGE_REMOVED:
+				if (es != null)
+					es.edgeRemoved((String) a[p], t, (String) a[p + 1]);
+				break;
+			case GRAPH_CLEARED:
+				if (es != null)
+					es.graphCleared((String) a[p], t);
+				break;
+			case STEP_BEGINS:
+				if (es != null)
+					es.stepBegins((String) a[p], t, steps[s]);
+				s++;
+				break;
+			case GRAPH_ATTRIBUTE_ADDED:
+				if (as != null)
+					as.graphAttributeAdded((String) a[p], t, (String) a[p + 1],
+							a[p + 2]);
+				break;
+			case GRAPH_ATTRIBUTE_CHANGED:
+				if (as != null)
+					as.graphAttributeChanged((String) a[p], t,
+							(String) a[p + 1], a[p + 2], a[p + 3]);
+				break;
+			case GRAPH_ATTRIBUTE_REMOVED:
+				if (as != null)
+					as.graphAttributeRemoved((String) a[p], t,
+							(String) a[p + 1]);
+				break;
+			case NODE_ATTRIBUTE_ADDED:
+				if (as != null)
+					as.nodeAttributeAdded((String) a[p], t, (String) a[p + 1],
+							(String) a[p + 2], a[p + 3]);
+				break;
+			case NODE_ATTRIBUTE_CHANGED:
+				if (as != null)
+					as.nodeAttributeChanged((String) a[p], t,
+							(String) a[p + 1], (String) a[p + 2], a[p + 3],
+							a[p + 4]);
+				break;
+			case NODE_ATTRIBUTE_REMOVED:
+				if (as != null)
+					as.nodeAttributeRemoved((String) a[p], t,
+							(String) a[p + 1], (String) a[p + 2]);
+				break;
+			case EDGE_ATTRIBUTE_ADDED:
+				if (as != null)
+					as.edgeAttributeAdded((String) a[p], t, (String) a[p + 1],
+							(String) a[p + 2], a[p + 3]);
+				break;
+			case EDGE_ATTRIBUTE_CHANGED:
+				if (as != null)
+					as.edgeAttributeChanged((String) a[p], t,
+							(String) a[p + 1], (String) a[p + 2], a[p + 3],
+							a[p + 4]);
+				break;
+			case EDGE_ATTRIBUTE_REMOVED:
+				if (as != null)
+					as.edgeAttributeRemoved((String) a[p], t,
+							(String) a[p + 1], (String) a[p + 2]);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Remove all the events of this batch, keeping its arrays.
+	 */
+	void clear() {
+		Arrays.fill(arguments, 0, argumentCount, null);
+
+		size = 0;
+		discarded = 0;
+		argumentCount = 0;
+		stepCount = 0;
+
+		if (attributes != null)
+			forget();
+	}
+
+	/**
+	 * Prevent the coalescing of the next events with the current ones.
+	 */
+	private void forget() {
+		attributes.clear();
+		nodeEvents.clear();
+		edgeEvents.clear();
+	}
+
+	/**
+	 * Append the header of an event and make room for its arguments.
+	 */
+	private void event(byte type, long timeId, int argc) {
+		if (size == types.length) {
+			int capacity = size * 2;
+			types = Arrays.copyOf(types, capacity);
+			times = Arrays.copyOf(times, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+		}
+
+		if (argumentCount + argc > arguments.length)
+			arguments = Arrays.copyOf(arguments, Math.max(
+					arguments.length * 2, argumentCount + argc));
+
+		types[size] = type;
+		times[size] = timeId;
+		offsets[size] = argumentCount;
+		size++;
+	}
+
+	private void argument(Object a) {
+		arguments[argumentCount++] = a;
+	}
+
+	void element(byte type, String sourceId, long timeId, String elementId) {
+		event(type, timeId, 2);
+		argument(sourceId);
+		argument(elementId);
+
+		if (attributes != null)
+			(type == EDGE_REMOVED ? edgeEvents : nodeEvents).put(elementId,
+					size - 1);
+	}
+
+	void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		event(directed ? DIRECTED_EDGE_ADDED : EDGE_ADDED, timeId, 4);
+		argument(sourceId);
+		argument(edgeId);
+		argument(fromNodeId);
+		argument(toNodeId);
+
+		if (attributes != null)
+			edgeEvents.put(edgeId, size - 1);
+	}
+
+	void graphCleared(String sourceId, long timeId) {
+		event(GRAPH_CLEARED, timeId, 1);
+		argument(sourceId);
+
+		if (attributes != null)
+			forget();
+	}
+
+	void stepBegins(String sourceId, long timeId, double step) {
+		event(STEP_BEGINS, timeId, 1);
+		argument(sourceId);
+
+		if (stepCount == steps.length)
+			steps = Arrays.copyOf(steps, stepCount * 2);
+
+		steps[stepCount++] = step;
+	}
+
+	/**
+	 * Append an attribute event. The element id is null for graph attribute
+	 * events, and the values which are not part of the event are ignored.
+	 */
+	void attribute(byte type, String sourceId, long timeId, String elementId,
+			String attribute, Object oldValue, Object newValue) {
+		if (attributes != null
+				&& coalesce(type, elementId, attribute, newValue))
+			return;
+
+		switch (type) {
+		case GRAPH_ATTRIBUTE_ADDED:
+			event(type, timeId, 3);
+			argument(sourceId);
+			argument(attribute);
+			argument(newValue);
+			break;
+		case GRAPH_ATTRIBUTE_CHANGED:
+			event(type, timeId, 4);
+			argument(sourceId);
+			argument(attribute);
+			argument(oldValue);
+			argument(newValue);
+			break;
+		case GRAPH_ATTRIBUTE_REMOVED:
+			event(type, timeId, 2);
+			argument(sourceId);
+			argument(attribute);
+			break;
+		case NODE_ATTRIBUTE_ADDED:
+		case EDGE_ATTRIBUTE_ADDED:
+			event(type, timeId, 4);
+			argument(sourceId);
+			argument(elementId);
+			argument(attribute);
+			argument(newValue);
+			break;
+		case NODE_ATTRIBUTE_CHANGED:
+		case EDGE_ATTRIBUTE_CHANGED:
+			event(type, timeId, 5);
+			argument(sourceId);
+			argument(elementId);
+			argument(attribute);
+			argument(oldValue);
+			argument(newValue);
+			break;
+		case NODE_ATTRIBUTE_REMOVED:
+		case EDGE_ATTRIBUTE_REMOVED:
+			event(type, timeId, 3);
+			argument(sourceId);
+			argument(elementId);
+			argument(attribute);
+			break;
+		}
+	}
+	/**
+	 * Try to merge an attribute event with the previous event on the same
+	 * attribute of the same element. Otherwise, the event will be the one
+	 * next events are merged with.
+	 *
+	 * @return true if the event has been merged
+	 */
+	private boolean coalesce(byte type, String elementId, String attribute,
+			Object newValue) {
+		int kind = (type - GRAPH_ATTRIBUTE_ADDED) / 3;
+		probe.set(kind, elementId, attribute);
+
+		Integer previous = attributes.get(probe);
+
+		if (previous == null) {
+			attributes.put(new Key(kind, elementId, attribute), size);
+			return false;
+		}
+
+		int p = previous;
+		HashMap<String, Integer> elementEvents = kind == 1 ? nodeEvents
+				: (kind == 2 ? edgeEvents : null);
+		Integer sealed = elementEvents == null ? null : elementEvents
+				.get(elementId);
+
+		if (sealed == null || sealed < p) {
+			//
+			// Graph attribute events have no element id argument.
+			//
+			int value = offsets[p] + (kind == 0 ? 2 : 3);
+			int change = type - types[p];
+
+			switch (types[p] - (GRAPH_ATTRIBUTE_ADDED + kind * 3)) {
+			case 0:
+				if (change == 1) {
+					// Added, then changed : added with the last value.
+					arguments[value] = newValue;
+					return true;
+				} else if (change == 2) {
+					// Added, then removed : nothing.
+					types[p] = DISCARDED;
+					discarded++;
+					attributes.remove(probe);
+					return true;
+				}
+				break;
+			case 1:
+				if (change == 0) {
+					// Changed twice : one change, from the first old value.
+					arguments[value + 1] = newValue;
+					return true;
+				} else if (change == 1) {
+					// Changed, then removed : removed.
+					types[p] = type;
+					return true;
+				}
+				break;
+			}
+		}
+
+		attributes.put(probe, size);
+		return false;
+	}
+
+	/**
+	 * Attribute of an element, used to find the event to merge an attribute
+	 * event with.
+	 */
+	private static class Key {
+		int kind;
+		String elementId;
+		String attribute;
+
+		Key() {
+		}
+
+		Key(int kind, String elementId, String attribute) {
+			set(kind, elementId, attribute);
+		}
+
+		void set(int kind, String elementId, String attribute) {
+			this.kind = kind;
+			this.elementId = elementId;
+			this.attribute = attribute;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+			return k.kind == kind && k.attribute.equals(attribute)
+					&& (k.elementId == null ? elementId == null : k.elementId
+							.equals(elementId));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (kind * 31 + (elementId == null ? 0 : elementId
+					.hashCode())) * 31 + attribute.hashCode();
+		}
+	}
+}
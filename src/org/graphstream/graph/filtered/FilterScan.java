@@ -0,0 +1,126 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Element;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.util.Filter;
+
+/**
+ * Evaluation of a filter over all the nodes or all the edges of a graph. The
+ * result is the set of the indices of the accepted elements.
+ *
+ * When the graph is large enough, the elements are split in chunks evaluated
+ * by a pool of threads. In this case, the filter has to support concurrent
+ * calls and the graph must not be modified during the scan.
+ *
+ * @param <T>
+ *            type of the scanned elements
+ */
+abstract class FilterScan<T extends Element> {
+
+	/**
+	 * Below this count of elements, a scan is always sequential.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	static BitSet scanNodes(final Graph g, Filter<Node> filter, int parallelism) {
+		return new FilterScan<Node>(filter) {
+			Node get(int index) {
+				return g.getNode(index);
+			}
+		}.scan(g.getNodeCount(), parallelism);
+	}
+
+	static BitSet scanEdges(final Graph g, Filter<Edge> filter, int parallelism) {
+		return new FilterScan<Edge>(filter) {
+			Edge get(int index) {
+				return g.getEdge(index);
+			}
+		}.scan(g.getEdgeCount(), parallelism);
+	}
+
+	final Filter<T> filter;
+
+	FilterScan(Filter<T> filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Get the element at a given index.
+	 */
+	abstract T get(int index);
+
+	BitSet scan(int count, int parallelism) {
+		if (parallelism < 2 || count < PARALLEL_THRESHOLD)
+			return scanRange(0, count);
+
+		int chunks = parallelism * 4;
+		int chunkSize = (count + chunks - 1) / chunks;
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		ArrayList<Future<BitSet>> futures = new ArrayList<Future<BitSet>>(
+				chunks);
+		BitSet accepted = new BitSet(count);
+
+		try {
+			for (int start = 0; start < count; start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(count, start + chunkSize);
+
+				futures.add(executor.submit(new Callable<BitSet>() {
+					public BitSet call() {
+						return scanRange(from, to);
+					}
+				}));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				BitSet chunk = futures.get(i).get();
+				int offset = i * chunkSize;
+
+				for (int j = chunk.nextSetBit(0); j >= 0; j = chunk
+						.nextSetBit(j + 1))
+					accepted.set(offset + j);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * Sequential scan of the elements in [from, to). Bits of the result are
+	 * relative to from.
+	 */
+	BitSet scanRange(int from, int to) {
+		BitSet accepted = new BitSet(to - from);
+
+		for (int i = from; i < to; i++) {
+			if (filter.isAvailable(get(i)))
+				accepted.set(i - from);
+		}
+
+		return accepted;
+	}
+}
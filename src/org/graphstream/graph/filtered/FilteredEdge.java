@@ -7,6 +7,15 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 
 	FilteredGraph graph;
 
+	/*
+	 * Endpoints of this edge in the filtered graph, null while an endpoint is
+	 * not included. They are only held in eager mode, where each node keeps
+	 * its wrapper : they are set when the edge is registered by the endpoint
+	 * and cleared when it is unregistered or when the endpoint leaves the
+	 * graph. In lazy mode, endpoints are looked up in the index of the nodes.
+	 */
+	FilteredNode node0, node1;
+
 	public FilteredEdge(Edge e, FilteredGraph g) {
 		super(e);
 		graph = g;
@@ -18,7 +27,7 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * @see org.graphstream.graph.filtered.FilteredElement#getFilteredElement()
 	 */
 	public Edge getFilteredElement() {
-		return element;
+		return target();
 	}
 
 	/*
@@ -26,8 +35,12 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * 
 	 * @see org.graphstream.graph.Edge#getNode0()
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Node> T getNode0() {
-		return graph.getNode(element.getNode0().getId());
+		if (graph.nodes.isLazy())
+			return (T) graph.nodes.get(target().getNode0());
+
+		return (T) node0;
 	}
 
 	/*
@@ -35,8 +48,12 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * 
 	 * @see org.graphstream.graph.Edge#getNode1()
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Node> T getNode1() {
-		return graph.getNode(element.getNode1().getId());
+		if (graph.nodes.isLazy())
+			return (T) graph.nodes.get(target().getNode1());
+
+		return (T) node1;
 	}
 
 	/*
@@ -44,11 +61,21 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * 
 	 * @see org.graphstream.graph.Edge#getOpposite(org.graphstream.graph.Node)
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Node> T getOpposite(Node node) {
-		if (node instanceof FilteredElement<?>)
-			node = (Node) ((FilteredElement<?>) node).getFilteredElement();
+		if (node == null)
+			return null;
 
-		return graph.getNode(element.getOpposite(node).getId());
+		if (!graph.nodes.isLazy()) {
+			if (node == node0)
+				return (T) node1;
+
+			if (node == node1)
+				return (T) node0;
+		}
+
+		return (T) graph.nodes.get(target().getOpposite(graph
+				.getUnfilteredNode(node)));
 	}
 
 	/*
@@ -56,8 +83,12 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * 
 	 * @see org.graphstream.graph.Edge#getSourceNode()
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Node> T getSourceNode() {
-		return graph.getNode(element.getSourceNode().getId());
+		if (graph.nodes.isLazy())
+			return (T) graph.nodes.get(target().getSourceNode());
+
+		return (T) node0;
 	}
 
 	/*
@@ -65,8 +96,12 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * 
 	 * @see org.graphstream.graph.Edge#getTargetNode()
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Node> T getTargetNode() {
-		return graph.getNode(element.getTargetNode().getId());
+		if (graph.nodes.isLazy())
+			return (T) graph.nodes.get(target().getTargetNode());
+
+		return (T) node1;
 	}
 
 	/*
@@ -75,7 +110,7 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * @see org.graphstream.graph.Edge#isDirected()
 	 */
 	public boolean isDirected() {
-		return element.isDirected();
+		return target().isDirected();
 	}
 
 	/*
@@ -84,7 +119,7 @@ public class FilteredEdge extends FilteredElement<Edge> implements Edge {
 	 * @see org.graphstream.graph.Edge#isLoop()
 	 */
 	public boolean isLoop() {
-		return element.isLoop();
+		return target().isLoop();
 	}
 
 	/*
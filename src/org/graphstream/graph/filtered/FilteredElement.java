@@ -6,15 +6,37 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.graphstream.graph.Element;
+import org.graphstream.graph.ElementNotFoundException;
 
 public class FilteredElement<E extends Element> implements Element {
 
-	protected final E element;
+	protected E element;
 	private int index;
+	private int generation;
+
+	/*
+	 * True while this object waits in a pool to filter another element.
+	 */
+	private boolean detached;
 
 	public FilteredElement(E target) {
 		element = target;
 		index = target.getIndex();
+		generation = 0;
+		detached = false;
+	}
+
+	/**
+	 * Get the filtered element, checking that this object has not been
+	 * detached from it. Subclasses which are never recycled can override it
+	 * to read the element from a final field.
+	 */
+	E target() {
+		if (detached)
+			throw new ElementNotFoundException("Element \"%s\" (recycled)",
+					element.getId());
+
+		return element;
 	}
 
 	/**
@@ -23,7 +45,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @return filtered element
 	 */
 	public E getFilteredElement() {
-		return element;
+		return target();
 	}
 
 	/*
@@ -39,6 +61,65 @@ public class FilteredElement<E extends Element> implements Element {
 		this.index = index;
 	}
 
+	/**
+	 * Get the count of times this object has been reused to filter another
+	 * element. A filtered graph recycling its wrappers can give this object to
+	 * a new element once the previous one has left the graph. Code keeping a
+	 * reference to this object can store its generation and compare it later
+	 * to know if this object still filters the same element, see
+	 * {@link #checkGeneration(int)}.
+	 * 
+	 * @return the generation of this object
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Check that this object still filters the element it filtered when its
+	 * generation was read.
+	 * 
+	 * @param generation
+	 *            a value returned by {@link #getGeneration()}
+	 * @throws ElementNotFoundException
+	 *             if this object has been given to another element since, or
+	 *             waits to be
+	 */
+	public void checkGeneration(int generation)
+			throws ElementNotFoundException {
+		target();
+
+		if (generation != this.generation)
+			throw new ElementNotFoundException(
+					"Element \"%s\" (generation %d)", element.getId(),
+					generation);
+	}
+
+	/**
+	 * Tell if this object waits to filter another element. All its methods
+	 * reading or changing the filtered element then throw an
+	 * {@link ElementNotFoundException}.
+	 */
+	final boolean isDetached() {
+		return detached;
+	}
+
+	/**
+	 * Keep this object in a pool until it filters another element.
+	 */
+	void detach() {
+		detached = true;
+	}
+
+	/**
+	 * Make this object filter another element.
+	 */
+	void recycle(E target) {
+		element = target;
+		generation++;
+		detached = false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -46,7 +127,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.Object[])
 	 */
 	public void addAttribute(String attribute, Object... values) {
-		element.addAttribute(attribute, values);
+		target().addAttribute(attribute, values);
 	}
 
 	/*
@@ -55,7 +136,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#addAttributes(java.util.Map)
 	 */
 	public void addAttributes(Map<String, Object> attributes) {
-		element.addAttributes(attributes);
+		target().addAttributes(attributes);
 	}
 
 	/*
@@ -65,7 +146,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.Object[])
 	 */
 	public void changeAttribute(String attribute, Object... values) {
-		element.changeAttribute(attribute, values);
+		target().changeAttribute(attribute, values);
 	}
 
 	/*
@@ -74,7 +155,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#clearAttributes()
 	 */
 	public void clearAttributes() {
-		element.clearAttributes();
+		target().clearAttributes();
 	}
 
 	/*
@@ -83,7 +164,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getArray(java.lang.String)
 	 */
 	public Object[] getArray(String key) {
-		return element.getArray(key);
+		return target().getArray(key);
 	}
 
 	/*
@@ -92,7 +173,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getAttribute(java.lang.String)
 	 */
 	public <T> T getAttribute(String key) {
-		return element.getAttribute(key);
+		return target().getAttribute(key);
 	}
 
 	/*
@@ -102,7 +183,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.Class)
 	 */
 	public <T> T getAttribute(String key, Class<T> clazz) {
-		return element.getAttribute(key, clazz);
+		return target().getAttribute(key, clazz);
 	}
 
 	/*
@@ -111,7 +192,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getAttributeCount()
 	 */
 	public int getAttributeCount() {
-		return element.getAttributeCount();
+		return target().getAttributeCount();
 	}
 
 	/*
@@ -120,7 +201,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getAttributeKeyIterator()
 	 */
 	public Iterator<String> getAttributeKeyIterator() {
-		return element.getAttributeKeyIterator();
+		return target().getAttributeKeyIterator();
 	}
 
 	/*
@@ -129,7 +210,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getAttributeKeySet()
 	 */
 	public Iterable<String> getAttributeKeySet() {
-		return element.getAttributeKeySet();
+		return target().getAttributeKeySet();
 	}
 
 	/*
@@ -139,7 +220,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * org.graphstream.graph.Element#getFirstAttributeOf(java.lang.String[])
 	 */
 	public <T> T getFirstAttributeOf(String... keys) {
-		return element.getFirstAttributeOf(keys);
+		return target().getFirstAttributeOf(keys);
 	}
 
 	/*
@@ -149,7 +230,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.String[])
 	 */
 	public <T> T getFirstAttributeOf(Class<T> clazz, String... keys) {
-		return element.getFirstAttributeOf(clazz, keys);
+		return target().getFirstAttributeOf(clazz, keys);
 	}
 
 	/*
@@ -158,7 +239,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getHash(java.lang.String)
 	 */
 	public HashMap<?, ?> getHash(String key) {
-		return element.getHash(key);
+		return target().getHash(key);
 	}
 
 	/*
@@ -167,7 +248,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getId()
 	 */
 	public String getId() {
-		return element.getId();
+		return target().getId();
 	}
 
 	/*
@@ -176,7 +257,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getLabel(java.lang.String)
 	 */
 	public CharSequence getLabel(String key) {
-		return element.getLabel(key);
+		return target().getLabel(key);
 	}
 
 	/*
@@ -185,7 +266,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getNumber(java.lang.String)
 	 */
 	public double getNumber(String key) {
-		return element.getNumber(key);
+		return target().getNumber(key);
 	}
 
 	/*
@@ -194,7 +275,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#getVector(java.lang.String)
 	 */
 	public ArrayList<? extends Number> getVector(String key) {
-		return element.getVector(key);
+		return target().getVector(key);
 	}
 
 	/*
@@ -203,7 +284,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasArray(java.lang.String)
 	 */
 	public boolean hasArray(String key) {
-		return element.hasArray(key);
+		return target().hasArray(key);
 	}
 
 	/*
@@ -212,7 +293,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasAttribute(java.lang.String)
 	 */
 	public boolean hasAttribute(String key) {
-		return element.hasAttribute(key);
+		return target().hasAttribute(key);
 	}
 
 	/*
@@ -222,7 +303,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.Class)
 	 */
 	public boolean hasAttribute(String key, Class<?> clazz) {
-		return element.hasAttribute(key, clazz);
+		return target().hasAttribute(key, clazz);
 	}
 
 	/*
@@ -231,7 +312,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasHash(java.lang.String)
 	 */
 	public boolean hasHash(String key) {
-		return element.hasHash(key);
+		return target().hasHash(key);
 	}
 
 	/*
@@ -240,7 +321,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasLabel(java.lang.String)
 	 */
 	public boolean hasLabel(String key) {
-		return element.hasLabel(key);
+		return target().hasLabel(key);
 	}
 
 	/*
@@ -249,7 +330,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasNumber(java.lang.String)
 	 */
 	public boolean hasNumber(String key) {
-		return element.hasNumber(key);
+		return target().hasNumber(key);
 	}
 
 	/*
@@ -258,7 +339,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#hasVector(java.lang.String)
 	 */
 	public boolean hasVector(String key) {
-		return element.hasVector(key);
+		return target().hasVector(key);
 	}
 
 	/*
@@ -267,7 +348,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * @see org.graphstream.graph.Element#removeAttribute(java.lang.String)
 	 */
 	public void removeAttribute(String attribute) {
-		element.removeAttribute(attribute);
+		target().removeAttribute(attribute);
 	}
 
 	/*
@@ -277,7 +358,7 @@ public class FilteredElement<E extends Element> implements Element {
 	 * java.lang.Object[])
 	 */
 	public void setAttribute(String attribute, Object... values) {
-		element.setAttribute(attribute, values);
+		target().setAttribute(attribute, values);
 	}
 
 }
@@ -2,14 +2,19 @@ package org.graphstream.graph.filtered;
 
 import java.io.IOException;
 import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.EdgeFactory;
 import org.graphstream.graph.EdgeRejectedException;
+import org.graphstream.graph.Element;
 import org.graphstream.graph.ElementNotFoundException;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.IdAlreadyInUseException;
@@ -28,205 +33,1317 @@ import org.graphstream.ui.layout.Layouts;
 import org.graphstream.ui.swingViewer.GraphRenderer;
 import org.graphstream.ui.swingViewer.Viewer;
 import org.graphstream.util.Filter;
-import org.graphstream.util.FilteredEdgeIterator;
-import org.graphstream.util.FilteredNodeIterator;
 import org.graphstream.util.Filters;
 
 public class FilteredGraph extends AbstractElement implements Graph {
 
+	/**
+	 * Minimal capacity of the arrays of nodes and edges, once they are not
+	 * empty.
+	 */
+	public static final int MIN_CAPACITY = 16;
+
 	protected final Graph element;
 
+	/*
+	 * Filtered graph this graph has been built on, null if it has been built
+	 * on another kind of graph. A graph built on a filtered graph is built on
+	 * the base graph of this one instead, with filters also requiring the
+	 * elements to be in this one. So nested graphs all listen to the same base
+	 * graph, and wrap its elements directly. Changes of membership of the
+	 * parent not caused by an event of the base graph are forwarded to its
+	 * subgraphs.
+	 */
+	final FilteredGraph parent;
+	private final ArrayList<FilteredGraph> subgraphs;
+
+	/*
+	 * Manager routing the events of the base graph to this graph, null if
+	 * this graph listens to the base graph itself, and the slot of this graph
+	 * in the manager, -1 if it has none.
+	 */
+	final SubgraphManager manager;
+	int slot;
+
 	Filter<Node> nodeFilter;
 	Filter<Edge> edgeFilter;
 
-	private final HashMap<String, FilteredNode> filteredNodes;
-	private final HashMap<String, FilteredEdge> filteredEdges;
+	final NodeIndex nodes;
+	final EdgeIndex edges;
 
 	final FilteredSink filteredSink;
 
-	private FilteredNode[] nodesArray;
-	private FilteredEdge[] edgesArray;
+	/*
+	 * Count of structural changes, used to make iterators fail-fast.
+	 */
+	int nodesModCount;
+	int edgesModCount;
+
+	/*
+	 * Visited set of the last traversal over, reused by the next one.
+	 */
+	private BitSet spareVisited;
+
+	/*
+	 * Connected components, null if they are not tracked.
+	 */
+	private ComponentTracker components;
+
+	/*
+	 * If true, arrays are shrunk when they become mostly empty.
+	 */
+	private boolean autoCompaction;
+
+	/*
+	 * If true, edges are only in this graph when both their endpoints are,
+	 * and follow the inclusion and removal of their endpoints.
+	 */
+	private boolean induced;
+
+	/*
+	 * Count of threads used to evaluate filters over the whole base graph.
+	 */
+	private int parallelism;
+
+	/*
+	 * Filters given by the user that depend on attributes, null otherwise, and
+	 * the keys of these attributes.
+	 */
+	private AttributeFilter<Node> nodeAttributeFilter;
+	private AttributeFilter<Edge> edgeAttributeFilter;
+	HashSet<String> nodeFilterKeys;
+	HashSet<String> edgeFilterKeys;
 
-	private int nodesArrayPosition;
-	private int edgesArrayPosition;
+	/*
+	 * Elements whose attribute is being removed, and these attributes. Base
+	 * graphs notify the removal before doing it, so these elements are
+	 * evaluated again when the next event is received, or by flush() once the
+	 * attribute is gone.
+	 */
+	private Node pendingNode;
+	private String pendingNodeAttribute;
+	private Edge pendingEdge;
+	private String pendingEdgeAttribute;
 
 	public FilteredGraph(String id, Graph g) {
 		this(id, g, Filters.<Node> falseFilter(), Filters.<Edge> falseFilter());
 	}
 
 	public FilteredGraph(String id, Graph g, Filter<Node> nf, Filter<Edge> ef) {
+		this(id, g, nf, ef, 0, 0, 1, false, null);
+	}
+
+	/**
+	 * Create a new filtered graph, in lazy mode or not. In lazy mode, the
+	 * wrappers of nodes and edges are created only when they are requested and
+	 * can be reclaimed by the garbage collector once they are not used
+	 * anymore. Degrees and membership are kept without wrappers, so counting
+	 * or testing elements does not create any.
+	 * 
+	 * @param id
+	 *            id of the graph
+	 * @param g
+	 *            the base graph
+	 * @param nf
+	 *            the node filter
+	 * @param ef
+	 *            the edge filter
+	 * @param lazy
+	 *            true to create wrappers on demand
+	 * @see #setLazy(boolean)
+	 */
+	public FilteredGraph(String id, Graph g, Filter<Node> nf, Filter<Edge> ef,
+			boolean lazy) {
+		this(id, g, nf, ef, 0, 0, 1, lazy, null);
+	}
+
+	/**
+	 * Create a new filtered graph whose initial content is computed by
+	 * evaluating the filters with several threads. Filters must then support
+	 * concurrent calls, and the base graph must not be modified during the
+	 * construction.
+	 * 
+	 * @param id
+	 *            id of the graph
+	 * @param g
+	 *            the base graph
+	 * @param nf
+	 *            the node filter
+	 * @param ef
+	 *            the edge filter
+	 * @param parallelism
+	 *            count of threads evaluating the filters
+	 */
+	public FilteredGraph(String id, Graph g, Filter<Node> nf, Filter<Edge> ef,
+			int parallelism) {
+		this(id, g, nf, ef, 0, 0, parallelism, false, null);
+	}
+
+	/**
+	 * Create a new filtered graph, giving the expected count of nodes and
+	 * edges. These are only hints used to size the arrays of this graph once
+	 * instead of growing them as elements are included.
+	 * 
+	 * @param id
+	 *            id of the graph
+	 * @param g
+	 *            the base graph
+	 * @param nf
+	 *            the node filter
+	 * @param ef
+	 *            the edge filter
+	 * @param expectedNodeCount
+	 *            expected count of nodes
+	 * @param expectedEdgeCount
+	 *            expected count of edges
+	 */
+	public FilteredGraph(String id, Graph g, Filter<Node> nf, Filter<Edge> ef,
+			int expectedNodeCount, int expectedEdgeCount) {
+		this(id, g, nf, ef, expectedNodeCount, expectedEdgeCount, 1, false, null);
+	}
+
+	private FilteredGraph(String id, Graph g, Filter<Node> nf,
+			Filter<Edge> ef, int expectedNodeCount, int expectedEdgeCount,
+			int parallelism, boolean lazy, SubgraphManager manager) {
 		super(id);
 
-		element = g;
+		this.manager = manager;
+		slot = -1;
+
+		if (g instanceof FilteredGraph) {
+			parent = (FilteredGraph) g;
+			element = parent.element;
+		} else {
+			parent = null;
+			element = g;
+		}
+
+		subgraphs = new ArrayList<FilteredGraph>();
 
-		filteredNodes = new HashMap<String, FilteredNode>();
-		filteredEdges = new HashMap<String, FilteredEdge>();
+		nodes = new NodeIndex(this, expectedNodeCount, lazy);
+		edges = new EdgeIndex(this, expectedEdgeCount, lazy);
 		filteredSink = new FilteredSink();
 
-		nodesArray = new FilteredNode[0];
-		edgesArray = new FilteredEdge[0];
-		nodesArrayPosition = 0;
-		edgesArrayPosition = 0;
+		nodesModCount = 0;
+		edgesModCount = 0;
+		autoCompaction = false;
+		this.parallelism = Math.max(parallelism, 1);
 
-		nodeFilter = Filters.or(nf, Filters.<Node> isIdContained(filteredNodes
-				.keySet()));
-		edgeFilter = Filters.or(ef, Filters.<Edge> isIdContained(filteredEdges
-				.keySet()));
+		nf = nestedNodeFilter(nf);
+		ef = nestedEdgeFilter(ef);
 
-		g.addSink(filteredSink);
+		nodeFilter = Filters.or(new MembershipFilter<Node>(nodes), nf);
+		edgeFilter = Filters.or(new MembershipFilter<Edge>(edges), ef);
 
-		for (Node n : g.getEachNode()) {
-			if (nodeFilter.isAvailable(n))
-				include(n);
+		watchNodeFilter(nf);
+		watchEdgeFilter(ef);
+
+		if (manager == null)
+			element.addSink(filteredSink);
+
+		if (manager == null || manager.scansSubgraphs())
+			build(nf, ef);
+
+		if (manager != null)
+			manager.attach(this);
+
+		if (parent != null)
+			parent.subgraphs.add(this);
+	}
+
+	/**
+	 * Create a graph whose events are routed by a manager.
+	 * 
+	 * @see SubgraphManager#newSubgraph(String, Filter, Filter, boolean)
+	 */
+	FilteredGraph(String id, Graph g, Filter<Node> nf, Filter<Edge> ef,
+			boolean lazy, SubgraphManager manager) {
+		this(id, g, nf, ef, 0, 0, 1, lazy, manager);
+	}
+
+	/**
+	 * Filter of the nodes of the base graph, given the filter of the nodes of
+	 * the graph this one has been built on.
+	 */
+	private Filter<Node> nestedNodeFilter(Filter<Node> nf) {
+		if (parent == null)
+			return nf;
+
+		if (nf instanceof AttributeFilter<?>)
+			return new NestedNodeAttributeFilter(parent, nf);
+
+		return new NestedNodeFilter(parent, nf);
+	}
+
+	/**
+	 * Filter of the edges of the base graph, given the filter of the edges of
+	 * the graph this one has been built on.
+	 */
+	private Filter<Edge> nestedEdgeFilter(Filter<Edge> ef) {
+		if (parent == null)
+			return ef;
+
+		if (ef instanceof AttributeFilter<?>)
+			return new NestedEdgeAttributeFilter(parent, ef);
+
+		return new NestedEdgeFilter(parent, ef);
+	}
+
+	/**
+	 * Count of threads evaluating filters over the whole base graph. Nested
+	 * filters may create the wrappers of a lazy parent, which only one thread
+	 * can do.
+	 */
+	private int scanParallelism() {
+		return parent != null && parent.isLazy() ? 1 : parallelism;
+	}
+
+	/**
+	 * Tell if a node of the base graph can be in this graph, that is if it is
+	 * in the graph this one has been built on.
+	 */
+	final boolean inParent(Node n) {
+		return parent == null || parent.nodes.contains(n);
+	}
+
+	/**
+	 * Tell if an edge of the base graph can be in this graph.
+	 */
+	final boolean inParent(Edge e) {
+		return parent == null || parent.edges.contains(e);
+	}
+
+	/**
+	 * Tell if an edge of the base graph can be included now : it can be in
+	 * this graph and, in induced mode, its endpoints are included.
+	 */
+	final boolean admits(Edge e) {
+		return inParent(e)
+				&& (!induced || nodes.contains(e.getNode0())
+						&& nodes.contains(e.getNode1()));
+	}
+
+	/**
+	 * Fill this graph with the elements of the base graph accepted by the
+	 * filters. Filters are evaluated first, then the arrays are sized once and
+	 * filled in a single pass. No event is sent since no sink can be
+	 * registered yet, {@link #replay(Sink)} allows to send the content of
+	 * this graph to a sink.
+	 */
+	private void build(Filter<Node> nf, Filter<Edge> ef) {
+		BitSet acceptedNodes = FilterScan.scanNodes(element, nf,
+				scanParallelism());
+		BitSet acceptedEdges = FilterScan.scanEdges(element, ef,
+				scanParallelism());
+
+		nodes.ensureCapacity(nodes.size() + acceptedNodes.cardinality());
+		edges.ensureCapacity(edges.size() + acceptedEdges.cardinality());
+
+		for (int i = acceptedNodes.nextSetBit(0); i >= 0; i = acceptedNodes
+				.nextSetBit(i + 1))
+			nodes.add(element.getNode(i));
+
+		for (int i = acceptedEdges.nextSetBit(0); i >= 0; i = acceptedEdges
+				.nextSetBit(i + 1))
+			append(element.getEdge(i));
+
+		nodesModCount++;
+		edgesModCount++;
+	}
+
+	/**
+	 * Send the current content of this graph, nodes and edges with their
+	 * attributes, to a sink. Edges are sent with the ids of their endpoints in
+	 * the base graph, even if these endpoints are not included. Events are
+	 * numbered like the ones of this graph, so the sink can then be registered
+	 * to follow the changes of this graph.
+	 * 
+	 * @param sink
+	 *            the sink receiving the events
+	 */
+	public void replay(Sink sink) {
+		filteredSink.flush();
+
+		SourceBase replay = new SourceBase(id) {
+		};
+
+		replay.addSink(sink);
+
+		for (String key : getAttributeKeySet())
+			replay.sendGraphAttributeAdded(id, filteredSink.newEvent(),
+					key, getAttribute(key));
+
+		for (int i = 0; i < nodes.size(); i++) {
+			Node n = nodes.element(i);
+			replay.sendNodeAdded(id, filteredSink.newEvent(), n.getId());
+
+			for (String key : n.getAttributeKeySet())
+				replay.sendNodeAttributeAdded(id, filteredSink.newEvent(), n
+						.getId(), key, n.getAttribute(key));
 		}
 
-		for (Edge e : g.getEachEdge()) {
-			if (edgeFilter.isAvailable(e))
-				include(e);
+		for (int i = 0; i < edges.size(); i++) {
+			Edge e = edges.element(i);
+			replay.sendEdgeAdded(id, filteredSink.newEvent(), e.getId(), e
+					.getSourceNode().getId(), e.getTargetNode().getId(), e
+					.isDirected());
+
+			for (String key : e.getAttributeKeySet())
+				replay.sendEdgeAttributeAdded(id, filteredSink.newEvent(), e
+						.getId(), key, e.getAttribute(key));
 		}
+
+		replay.removeSink(sink);
+	}
+
+	/**
+	 * Set the count of threads used when filters are evaluated over the whole
+	 * base graph.
+	 * 
+	 * @param parallelism
+	 *            count of threads, 1 to evaluate filters in the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * Get the count of threads used when filters are evaluated over the whole
+	 * base graph.
+	 * 
+	 * @return count of threads
+	 */
+	public int getParallelism() {
+		return parallelism;
 	}
 
 	public Node getUnfilteredNode(Node n) {
-		if (n instanceof FilteredNode && filteredNodes.containsKey(n.getId()))
-			return ((FilteredNode) n).getFilteredElement();
+		if (n instanceof FilteredNode) {
+			FilteredNode fn = (FilteredNode) n;
+
+			if (fn.graph == this) {
+				if (fn.isDetached())
+					throw new ElementNotFoundException("Node \"%s\" (recycled)",
+							fn.element.getId());
+
+				if (nodes.owns(fn))
+					return fn.getFilteredElement();
+			}
+
+			if (parent != null)
+				return parent.getUnfilteredNode(n);
+		}
 
 		return n;
 	}
 
 	public Edge getUnfilteredEdge(Edge e) {
-		if (e instanceof FilteredEdge && filteredEdges.containsKey(e.getId()))
-			return ((FilteredEdge) e).getFilteredElement();
+		if (e instanceof FilteredEdge) {
+			FilteredEdge fe = (FilteredEdge) e;
+
+			if (fe.graph == this) {
+				if (fe.isDetached())
+					throw new ElementNotFoundException("Edge \"%s\" (recycled)",
+							fe.element.getId());
+
+				if (edges.owns(fe))
+					return fe.getFilteredElement();
+			}
+
+			if (parent != null)
+				return parent.getUnfilteredEdge(e);
+		}
 
 		return e;
 	}
 
+	/**
+	 * Get the node of this graph filtering a node of the base graph, or of
+	 * the filtered graph this one has been built on.
+	 * 
+	 * @param n
+	 *            a node of the base graph
+	 * @return the filtered node, or null if n is not in this graph
+	 */
+	public FilteredNode getFilteredNode(Node n) {
+		if (parent != null)
+			n = parent.getUnfilteredNode(n);
+
+		return nodes.get(n);
+	}
+
+	/**
+	 * Get the edge of this graph filtering an edge of the base graph, or of
+	 * the filtered graph this one has been built on.
+	 * 
+	 * @param e
+	 *            an edge of the base graph
+	 * @return the filtered edge, or null if e is not in this graph
+	 */
+	public FilteredEdge getFilteredEdge(Edge e) {
+		if (parent != null)
+			e = parent.getUnfilteredEdge(e);
+
+		return edges.get(e);
+	}
+
+	/**
+	 * Create the wrapper of a node of the base graph. Subclasses can override
+	 * this to use their own kind of nodes. It can be called while this graph
+	 * is being built, before the constructor of the subclass has run.
+	 * 
+	 * @param n
+	 *            a node of the base graph
+	 * @return a new wrapper of n
+	 */
+	protected FilteredNode newFilteredNode(Node n) {
+		return new FilteredNode(n, this);
+	}
+
+	/**
+	 * Create the wrapper of an edge of the base graph. This works like
+	 * {@link #newFilteredNode(Node)}.
+	 * 
+	 * @param e
+	 *            an edge of the base graph
+	 * @return a new wrapper of e
+	 */
+	protected FilteredEdge newFilteredEdge(Edge e) {
+		return new FilteredEdge(e, this);
+	}
+
+	@SuppressWarnings("unchecked")
+	<T extends Node> T filteredNode(Node n) {
+		return (T) nodes.get(n);
+	}
+
+	@SuppressWarnings("unchecked")
+	<T extends Edge> T filteredEdge(Edge e) {
+		return (T) edges.get(e);
+	}
+
 	public void destroy() {
+		if (parent != null)
+			parent.subgraphs.remove(this);
+
 		element.removeSink(filteredSink);
-		filteredNodes.clear();
-		filteredEdges.clear();
+		empty();
+
+		if (manager != null)
+			manager.detach(this);
+
+		setAsyncDelivery(0, null);
+		filteredSink.flush();
 		filteredSink.clearSinks();
 	}
 
 	public void include(Node n) {
-		if (filteredNodes.containsKey(n.getId()))
+		if (nodes.contains(n) || !inParent(n))
 			return;
 
-		FilteredNode fn = new FilteredNode(n, this);
-		filteredNodes.put(n.getId(), fn);
+		int p = nodes.add(n);
 
-		checkArraysSize();
-		nodesArray[nodesArrayPosition] = fn;
-		fn.setIndex(nodesArrayPosition++);
+		if (slot >= 0)
+			manager.included(slot, n);
+		Iterator<Edge> ite = n.getEdgeIterator();
 
+		while (ite.hasNext()) {
+			int e = edges.indexOf(ite.next());
+
+			if (e >= 0)
+				nodes.register(p, e);
+		}
+
+		if (components != null)
+			components.nodeIncluded(p);
+
+		nodesModCount++;
 		filteredSink.sendNodeAdded(id, n.getId());
-	}
 
-	public void include(Edge e) {
-		if (filteredEdges.containsKey(e.getId()))
-			return;
+		for (int i = 0; i < subgraphs.size(); i++) {
+			FilteredGraph sub = subgraphs.get(i);
 
-		FilteredEdge fe = new FilteredEdge(e, this);
-		filteredEdges.put(e.getId(), fe);
+			if (sub.nodeFilter.isAvailable(n))
+				sub.include(n);
+		}
 
-		checkArraysSize();
-		edgesArray[edgesArrayPosition] = fe;
-		fe.setIndex(edgesArrayPosition++);
+		if (induced)
+			includeEdgesOf(n);
+	}
 
-		if (filteredNodes.containsKey(e.getNode0().getId()))
-			filteredNodes.get(e.getNode0().getId()).register(e);
+	public void include(Edge e) {
+		if (edges.contains(e) || !admits(e))
+			return;
 
-		if (filteredNodes.containsKey(e.getNode1().getId()))
-			filteredNodes.get(e.getNode1().getId()).register(e);
+		append(e);
+		edgesModCount++;
 
 		filteredSink.sendEdgeAdded(id, e.getId(), e.getSourceNode().getId(), e
 				.getTargetNode().getId(), e.isDirected());
+
+		for (int i = 0; i < subgraphs.size(); i++) {
+			FilteredGraph sub = subgraphs.get(i);
+
+			if (sub.edgeFilter.isAvailable(e))
+				sub.include(e);
+		}
 	}
 
 	public void notInclude(Node n) {
-		if (!filteredNodes.containsKey(n.getId()))
+		int p = nodes.indexOf(n);
+
+		if (p < 0)
 			return;
 
+		if (induced)
+			notIncludeEdgesOf(p);
+
+		for (int i = 0; i < subgraphs.size(); i++)
+			subgraphs.get(i).notInclude(n);
+
 		filteredSink.sendNodeRemoved(id, n.getId());
 
-		FilteredNode fn = filteredNodes.remove(n.getId());
+		if (slot >= 0)
+			manager.excluded(slot, n);
+
+		if (components != null)
+			components.nodeRemoving(p);
+
+		nodes.remove(n);
+		nodesModCount++;
+
+		if (autoCompaction)
+			nodes.compact();
+	}
+
+	public void notInclude(Edge e) {
+		int p = edges.indexOf(e);
+
+		if (p < 0)
+			return;
+
+		for (int i = 0; i < subgraphs.size(); i++)
+			subgraphs.get(i).notInclude(e);
+
+		filteredSink.sendEdgeRemoved(id, e.getId());
+
+		int n0 = nodes.indexOf(e.getNode0());
+		int n1 = e.isLoop() ? -1 : nodes.indexOf(e.getNode1());
+
+		if (n0 >= 0)
+			nodes.unregister(n0, p);
+
+		if (n1 >= 0)
+			nodes.unregister(n1, p);
+
+		if (slot >= 0)
+			manager.excluded(slot, e);
+
+		edges.remove(e);
+		edgesModCount++;
+
+		if (components != null)
+			components.disconnect(n0, n1);
+
+		if (autoCompaction)
+			edges.compact();
+	}
+
+	/**
+	 * Add a new edge to the index and register it in its included endpoints.
+	 */
+	private void append(Edge e) {
+		int p = edges.add(e);
+
+		if (slot >= 0)
+			manager.included(slot, e);
+
+		int n0 = nodes.indexOf(e.getNode0());
+		int n1 = e.isLoop() ? -1 : nodes.indexOf(e.getNode1());
+
+		if (n0 >= 0)
+			nodes.register(n0, p);
+
+		if (n1 >= 0)
+			nodes.register(n1, p);
+
+		if (components != null)
+			components.connect(n0, n1);
+	}
+
+	/**
+	 * Include the edges of a node whose opposite is included and which are
+	 * accepted by the edge filter.
+	 */
+	private void includeEdgesOf(Node n) {
+		Iterator<Edge> ite = n.getEdgeIterator();
+
+		while (ite.hasNext()) {
+			Edge e = ite.next();
+
+			if (!edges.contains(e) && nodes.contains(e.getOpposite(n))
+					&& edgeFilter.isAvailable(e))
+				include(e);
+		}
+	}
+
+	/**
+	 * Remove the included edges of the node at a position.
+	 */
+	private void notIncludeEdgesOf(int p) {
+		int degree = nodes.degrees[p];
+
+		if (degree == 0)
+			return;
+
+		int[] adj = nodes.adjacency[p];
+		Edge[] removed = new Edge[degree];
+
+		for (int i = 0; i < degree; i++)
+			removed[i] = edges.element(adj[i]);
+
+		for (int i = 0; i < degree; i++)
+			notInclude(removed[i]);
+	}
+
+	/**
+	 * Register the attributes the node filter depends on.
+	 */
+	@SuppressWarnings("unchecked")
+	private void watchNodeFilter(Filter<Node> nf) {
+		nodeAttributeFilter = null;
+		nodeFilterKeys = null;
+
+		if (nf instanceof AttributeFilter<?>) {
+			nodeAttributeFilter = (AttributeFilter<Node>) nf;
+			nodeFilterKeys = new HashSet<String>(Arrays
+					.asList(nodeAttributeFilter.getAttributeKeys()));
+		}
+
+		if (manager != null)
+			manager.filtersChanged();
+	}
+
+	/**
+	 * Register the attributes the edge filter depends on.
+	 */
+	@SuppressWarnings("unchecked")
+	private void watchEdgeFilter(Filter<Edge> ef) {
+		edgeAttributeFilter = null;
+		edgeFilterKeys = null;
+
+		if (ef instanceof AttributeFilter<?>) {
+			edgeAttributeFilter = (AttributeFilter<Edge>) ef;
+			edgeFilterKeys = new HashSet<String>(Arrays
+					.asList(edgeAttributeFilter.getAttributeKeys()));
+		}
+
+		if (manager != null)
+			manager.filtersChanged();
+	}
+
+	/**
+	 * Evaluate again the node filter on a node after a change of one of its
+	 * attributes, and include or remove the node according to the new answer.
+	 */
+	private void refilter(Node n) {
+		if (n == null)
+			return;
+
+		boolean member = nodes.contains(n);
+
+		if (nodeAttributeFilter.isAvailable(n)) {
+			if (!member)
+				include(n);
+		} else if (member)
+			notInclude(n);
+	}
+
+	/**
+	 * Evaluate again the edge filter on an edge after a change of one of its
+	 * attributes, and include or remove the edge according to the new answer.
+	 */
+	private void refilter(Edge e) {
+		if (e == null)
+			return;
+
+		boolean member = edges.contains(e);
+
+		if (edgeAttributeFilter.isAvailable(e)) {
+			if (!member)
+				include(e);
+		} else if (member)
+			notInclude(e);
+	}
+
+	/**
+	 * Evaluate the elements whose attribute has been removed since the last
+	 * event.
+	 */
+	void refilterPending() {
+		if (pendingNode != null) {
+			Node n = pendingNode;
+			pendingNode = null;
+			refilter(n);
+		}
+
+		if (pendingEdge != null) {
+			Edge e = pendingEdge;
+			pendingEdge = null;
+			refilter(e);
+		}
+	}
+
+	/**
+	 * Evaluate the elements whose attribute has been removed, if the removal
+	 * is done. Called by {@link #flush()}, since the removal may be the last
+	 * event of the base graph.
+	 */
+	void refresh() {
+		if (manager != null)
+			manager.refresh();
+
+		if (pendingNode != null
+				&& !pendingNode.hasAttribute(pendingNodeAttribute)) {
+			Node n = pendingNode;
+			pendingNode = null;
+			refilter(n);
+		}
+
+		if (pendingEdge != null
+				&& !pendingEdge.hasAttribute(pendingEdgeAttribute)) {
+			Edge e = pendingEdge;
+			pendingEdge = null;
+			refilter(e);
+		}
+	}
+
+	/**
+	 * Change the node filter. The new filter is evaluated over all the nodes
+	 * of the base graph, with several threads if the parallelism of this graph
+	 * allows it. Only the nodes whose membership changes are removed or
+	 * included, and only their events are sent. Nodes staying in this graph
+	 * keep their instance. Nodes previously included explicitly are removed
+	 * if the new filter rejects them.
+	 * 
+	 * @param nf
+	 *            the new node filter
+	 */
+	public void setNodeFilter(Filter<Node> nf) {
+		refilterPending();
+
+		nf = nestedNodeFilter(nf);
+		BitSet accepted = FilterScan.scanNodes(element, nf, scanParallelism());
+		Node[] removed = new Node[nodes.size()];
+		int count = 0;
+
+		for (int i = 0; i < nodes.size(); i++) {
+			if (!accepted.get(nodes.element(i).getIndex()))
+				removed[count++] = nodes.element(i);
+		}
+
+		for (int i = 0; i < count; i++)
+			notInclude(removed[i]);
+
+		for (int i = accepted.nextSetBit(0); i >= 0; i = accepted
+				.nextSetBit(i + 1))
+			include(element.<Node> getNode(i));
+
+		nodeFilter = Filters.or(new MembershipFilter<Node>(nodes), nf);
+		watchNodeFilter(nf);
+	}
+
+	/**
+	 * Change the edge filter. This works like {@link #setNodeFilter(Filter)}.
+	 * 
+	 * @param ef
+	 *            the new edge filter
+	 */
+	public void setEdgeFilter(Filter<Edge> ef) {
+		refilterPending();
+
+		ef = nestedEdgeFilter(ef);
+		BitSet accepted = FilterScan.scanEdges(element, ef, scanParallelism());
+		Edge[] removed = new Edge[edges.size()];
+		int count = 0;
+
+		for (int i = 0; i < edges.size(); i++) {
+			if (!accepted.get(edges.element(i).getIndex()))
+				removed[count++] = edges.element(i);
+		}
+
+		for (int i = 0; i < count; i++)
+			notInclude(removed[i]);
+
+		for (int i = accepted.nextSetBit(0); i >= 0; i = accepted
+				.nextSetBit(i + 1))
+			include(element.<Edge> getEdge(i));
+
+		edgeFilter = Filters.or(new MembershipFilter<Edge>(edges), ef);
+		watchEdgeFilter(ef);
+	}
+
+	public Filter<Node> getNodeFilter() {
+		return nodeFilter;
+	}
+
+	public Filter<Edge> getEdgeFilter() {
+		return edgeFilter;
+	}
+
+	public boolean contains(Node n) {
+		if (n instanceof FilteredElement<?>
+				&& ((FilteredElement<?>) n).isDetached())
+			return false;
+
+		return nodes.contains(getUnfilteredNode(n));
+	}
+
+	public boolean contains(Edge e) {
+		if (e instanceof FilteredElement<?>
+				&& ((FilteredElement<?>) e).isDetached())
+			return false;
+
+		return edges.contains(getUnfilteredEdge(e));
+	}
+
+	public void empty() {
+		if (slot >= 0)
+			manager.emptied(this);
+
+		nodes.clear();
+		edges.clear();
+
+		if (components != null)
+			components.cleared();
+
+		nodesModCount++;
+		edgesModCount++;
+
+		pendingNode = null;
+		pendingEdge = null;
+	}
+
+	public <T extends Node> Iterator<T> newFilteredNodeIterator(
+			Iterator<Node> ite) {
+		return new ToFilteredNodeIterator<T>(ite);
+	}
+
+	public <T extends Edge> Iterator<T> newFilteredEdgeIterator(
+			Iterator<Edge> ite) {
+		return new ToFilteredEdgeIterator<T>(ite);
+	}
+
+	/**
+	 * Get a read-only view of the current nodes, edges, degrees and adjacency
+	 * of this graph, which does not change when this graph does. Snapshots
+	 * can be read by any thread without locking.
+	 * 
+	 * The first snapshot copies the content of this graph. This graph then
+	 * keeps track of its changes, so that the next snapshots only copy the
+	 * chunks of storage modified since the previous one.
+	 * 
+	 * @return a snapshot of this graph
+	 */
+	public FilteredGraphSnapshot snapshot() {
+		MembershipIndex.Frozen n = nodes.freeze();
+		MembershipIndex.Frozen e = edges.freeze();
+
+		return new FilteredGraphSnapshot(this, n, e);
+	}
+
+	/**
+	 * Get an empty set of node positions for a traversal, the one of the last
+	 * traversal over if there is one.
+	 */
+	BitSet borrowVisited() {
+		BitSet v = spareVisited;
+		spareVisited = null;
+
+		return v != null ? v : new BitSet(nodes.size());
+	}
+
+	/**
+	 * Give back the set of a traversal over.
+	 */
+	void releaseVisited(BitSet v) {
+		v.clear();
+		spareVisited = v;
+	}
+
+	/**
+	 * Ensure that this graph can hold a given count of nodes and edges without
+	 * growing its arrays.
+	 * 
+	 * @param nodeCount
+	 *            count of nodes
+	 * @param edgeCount
+	 *            count of edges
+	 */
+	public void ensureCapacity(int nodeCount, int edgeCount) {
+		nodes.ensureCapacity(nodeCount);
+		edges.ensureCapacity(edgeCount);
+	}
+
+	/**
+	 * Shrink the arrays of this graph, and the adjacency of its nodes, to
+	 * their current size. This releases the memory held after a large part of
+	 * the graph has been removed.
+	 */
+	public void trimToSize() {
+		nodes.trimToSize();
+		edges.trimToSize();
+	}
+
+	/**
+	 * Enable or disable the automatic compaction. When enabled, the arrays of
+	 * nodes and edges are shrunk each time less than a quarter of them is
+	 * used.
+	 * 
+	 * @param on
+	 *            true to enable the automatic compaction
+	 */
+	public void setAutoCompaction(boolean on) {
+		autoCompaction = on;
+	}
+
+	/**
+	 * Tell if the automatic compaction is enabled.
+	 * 
+	 * @return true if arrays are shrunk automatically
+	 */
+	public boolean isAutoCompaction() {
+		return autoCompaction;
+	}
+
+	/**
+	 * Enable or disable the induced mode. In induced mode, an edge is in this
+	 * graph if the edge filter accepts it and both its endpoints are in this
+	 * graph. Including a node includes its accepted edges to nodes already
+	 * included, removing it removes its edges, and edges whose endpoints are
+	 * not both included are rejected. With a filter accepting all edges, this
+	 * graph is the subgraph of the base graph induced by its nodes.
+	 * 
+	 * Each change of a node costs its degree in the base graph. Enabling the
+	 * mode removes the edges having an endpoint out of this graph, and
+	 * includes the accepted edges between nodes of this graph.
+	 * 
+	 * @param on
+	 *            true to enable the induced mode
+	 */
+	public void setInduced(boolean on) {
+		if (on && !induced) {
+			refilterPending();
+
+			Edge[] removed = new Edge[edges.size()];
+			int count = 0;
+
+			induced = true;
+
+			for (int i = 0; i < edges.size(); i++) {
+				Edge e = edges.element(i);
+
+				if (!nodes.contains(e.getNode0())
+						|| !nodes.contains(e.getNode1()))
+					removed[count++] = e;
+			}
+
+			for (int i = 0; i < count; i++)
+				notInclude(removed[i]);
+
+			for (int p = 0; p < nodes.size(); p++)
+				includeEdgesOf(nodes.element(p));
+		}
+
+		induced = on;
+	}
+
+	/**
+	 * Tell if the induced mode is enabled.
+	 * 
+	 * @return true if edges follow the inclusion of their endpoints
+	 */
+	public boolean isInduced() {
+		return induced;
+	}
+
+	/**
+	 * Enable or disable the tracking of connected components. When enabled,
+	 * the components are computed once, then updated as nodes and edges enter
+	 * and leave this graph, so that querying them costs no traversal.
+	 * 
+	 * @param on
+	 *            true to track the connected components
+	 * @see #getComponentTracker()
+	 */
+	public void setComponentTracking(boolean on) {
+		if (!on)
+			components = null;
+		else if (components == null) {
+			refilterPending();
+			components = new ComponentTracker(this);
+		}
+	}
+
+	/**
+	 * Get the connected components of this graph.
+	 * 
+	 * @return the components, or null if they are not tracked
+	 * @see #setComponentTracking(boolean)
+	 */
+	public ComponentTracker getComponentTracker() {
+		return components;
+	}
+
+	/**
+	 * Get the count of nodes of each degree. The counts are kept up to date
+	 * as edges are registered in their endpoints, so this only copies them.
+	 * 
+	 * @return counts of nodes indexed by degree, up to the maximal degree, or
+	 *         an empty array if this graph has no node
+	 */
+	public int[] getDegreeDistribution() {
+		if (nodes.size() == 0)
+			return new int[0];
+
+		return Arrays.copyOf(nodes.degreeCounts, nodes.maxDegree + 1);
+	}
+
+	/**
+	 * Get the lowest degree of the nodes of this graph.
+	 * 
+	 * @return the minimal degree, 0 if this graph has no node
+	 */
+	public int getMinDegree() {
+		return nodes.minDegree;
+	}
+
+	/**
+	 * Get the highest degree of the nodes of this graph.
+	 * 
+	 * @return the maximal degree, 0 if this graph has no node
+	 */
+	public int getMaxDegree() {
+		return nodes.maxDegree;
+	}
+
+	/**
+	 * Get the average degree of the nodes of this graph.
+	 * 
+	 * @return the average degree, 0 if this graph has no node
+	 */
+	public double getAverageDegree() {
+		return averageDegree(nodes.degreeSum, nodes.size());
+	}
+
+	/**
+	 * Get the density of this graph, its count of edges divided by the count
+	 * of edges of a complete graph with as many nodes. Only edges whose
+	 * endpoints are both included are counted, so that the dangling edges of
+	 * a graph which is not induced do not make it higher than 1.
+	 * 
+	 * @return the density, 0 if this graph has less than two nodes
+	 */
+	public double getDensity() {
+		return density(getNodeCount(), nodes.linkedEdges);
+	}
+
+	static double averageDegree(long degreeSum, int nodeCount) {
+		return nodeCount == 0 ? 0 : degreeSum / (double) nodeCount;
+	}
 
-		if (fn.getIndex() != nodesArrayPosition - 1 && nodesArrayPosition > 1) {
-			nodesArray[fn.getIndex()] = nodesArray[nodesArrayPosition - 1];
-			nodesArray[fn.getIndex()].setIndex(fn.getIndex());
-			nodesArray[nodesArrayPosition - 1] = null;
-		}
+	static double density(int nodeCount, int edgeCount) {
+		if (nodeCount < 2)
+			return 0;
 
-		nodesArrayPosition--;
+		return edgeCount / (nodeCount * (nodeCount - 1) / 2.0);
 	}
 
-	public void notInclude(Edge e) {
-		if (!filteredEdges.containsKey(e.getId()))
+	/**
+	 * Enable or disable the lazy mode. In lazy mode, wrappers of nodes and
+	 * edges are created when they are requested, and kept in a cache from
+	 * which the garbage collector can reclaim them once they are not used
+	 * anymore. Otherwise, each element of this graph keeps its wrapper, and
+	 * the wrapper of each edge holds the wrappers of its endpoints.
+	 * 
+	 * @param on
+	 *            true to enable the lazy mode
+	 */
+	public void setLazy(boolean on) {
+		if (nodes.isLazy() == on)
 			return;
 
-		filteredSink.sendEdgeRemoved(id, e.getId());
+		nodes.setLazy(on);
+		edges.setLazy(on);
+		edges.linkAll();
+	}
 
-		if (filteredNodes.containsKey(e.getNode0().getId()))
-			filteredNodes.get(e.getNode0().getId()).unregister(e);
+	/**
+	 * Enable or disable the recycling of wrappers. When enabled, the wrappers
+	 * of nodes and edges leaving this graph are kept, up to a limit, and reused
+	 * for the next elements entering it instead of creating new ones. This
+	 * avoids allocations when elements often enter and leave the graph.
+	 * 
+	 * A reference to a wrapper is rejected with an
+	 * {@link ElementNotFoundException} once its element has left the graph,
+	 * by this graph and by the wrapper itself, until the wrapper is given to
+	 * another element. From then on the reference filters the new element,
+	 * so code keeping such references should store
+	 * {@link FilteredElement#getGeneration()} and give it to
+	 * {@link FilteredElement#checkGeneration(int)} before using the wrapper
+	 * again.
+	 * 
+	 * @param on
+	 *            true to enable the recycling
+	 */
+	public void setRecycling(boolean on) {
+		nodes.setRecycling(on);
+		edges.setRecycling(on);
+	}
 
-		if (filteredNodes.containsKey(e.getNode1().getId()))
-			filteredNodes.get(e.getNode1().getId()).unregister(e);
+	/**
+	 * Tell if the recycling of wrappers is enabled.
+	 * 
+	 * @return true if wrappers are reused
+	 */
+	public boolean isRecycling() {
+		return nodes.isRecycling();
+	}
 
-		FilteredEdge fe = filteredEdges.remove(e.getId());
+	/**
+	 * Tell if the lazy mode is enabled.
+	 * 
+	 * @return true if wrappers are created on demand
+	 */
+	public boolean isLazy() {
+		return nodes.isLazy();
+	}
 
-		if (fe.getIndex() != edgesArrayPosition - 1 && edgesArrayPosition > 1) {
-			edgesArray[fe.getIndex()] = edgesArray[edgesArrayPosition - 1];
-			edgesArray[fe.getIndex()].setIndex(fe.getIndex());
-			edgesArray[edgesArrayPosition - 1] = null;
-		}
+	/**
+	 * Enable or disable the batching of events. In batching mode, the events
+	 * sent by this graph to its sinks are buffered, and delivered as a whole
+	 * when the next step begins, when size events are buffered, or when
+	 * {@link #flush()} is called. Sinks implementing {@link BatchSink} receive
+	 * the buffered events in a single call, other sinks receive them one by
+	 * one.
+	 * 
+	 * @param size
+	 *            maximal count of buffered events, 0 to disable batching
+	 */
+	public void setBatchSize(int size) {
+		final int batchSize = Math.max(size, 0);
 
-		edgesArrayPosition--;
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.setBatching(batchSize, filteredSink.coalescing);
+			}
+		});
 	}
 
-	public Filter<Node> getNodeFilter() {
-		return nodeFilter;
+	/**
+	 * Get the maximal count of buffered events in batching mode.
+	 * 
+	 * @return the size of batches, 0 if batching is disabled
+	 */
+	public int getBatchSize() {
+		return filteredSink.batchSize;
 	}
 
-	public Filter<Edge> getEdgeFilter() {
-		return edgeFilter;
+	/**
+	 * Enable or disable the coalescing of attribute events. When enabled,
+	 * events are buffered until the next step begins, and an attribute event
+	 * is merged with the previous buffered event on the same attribute of the
+	 * same element : only the last value of an attribute changed several
+	 * times is sent, and an attribute added then removed is not sent at all.
+	 * Events of an element added or removed in between are not merged.
+	 * 
+	 * This works with the batching mode, in which case buffered events are
+	 * also delivered when the batch is full, and no more merged after.
+	 * 
+	 * @param on
+	 *            true to coalesce attribute events
+	 * @see EventBatch
+	 */
+	public void setAttributeCoalescing(final boolean on) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.setBatching(filteredSink.batchSize, on);
+			}
+		});
 	}
 
-	public boolean contains(Node n) {
-		return nodeFilter.isAvailable(n);
+	/**
+	 * Tell if attribute events are coalesced.
+	 * 
+	 * @return true if attribute events are merged until the next step
+	 */
+	public boolean isAttributeCoalescing() {
+		return filteredSink.coalescing;
 	}
 
-	public boolean contains(Edge e) {
-		return edgeFilter.isAvailable(e);
+	/**
+	 * Evaluate the elements whose filtered attribute has been removed by the
+	 * last event of the base graph, then deliver now the events buffered in
+	 * batching or coalescing mode, and wait for the delivery of the queued
+	 * events in asynchronous mode.
+	 * 
+	 * The base graph notifies the removal of an attribute before doing it, so
+	 * such elements are otherwise only evaluated at the next event of the base
+	 * graph, or at the next step. Reads never evaluate them. This method
+	 * changes the graph, so it has to be called by the thread modifying the
+	 * base graph.
+	 */
+	public void flush() {
+		refresh();
+		filteredSink.flush();
 	}
 
-	public void empty() {
-		filteredNodes.clear();
-		filteredEdges.clear();
-	}
+	/**
+	 * Enable or disable the asynchronous delivery of events. When enabled,
+	 * events are queued in a buffer of the given capacity, and a dedicated
+	 * thread sends them to the sinks. Sinks added or removed afterwards are
+	 * registered by this thread, in the order of the events.
+	 * 
+	 * Disabling it waits until the queued events are delivered.
+	 * 
+	 * @param capacity
+	 *            count of events the buffer can hold, 0 to deliver events
+	 *            synchronously
+	 * @param backpressure
+	 *            what to do when the buffer is full
+	 * @see AsyncDelivery
+	 */
+	public void setAsyncDelivery(int capacity,
+			AsyncDelivery.Backpressure backpressure) {
+		AsyncDelivery d = filteredSink.delivery;
 
-	public <T extends Node> Iterator<T> newFilteredNodeIterator(
-			Iterator<Node> ite) {
-		return new ToFilteredNodeIterator<T>(ite);
-	}
+		if (d != null) {
+			d.shutdown();
+			filteredSink.delivery = null;
+		}
 
-	public <T extends Edge> Iterator<T> newFilteredEdgeIterator(
-			Iterator<Edge> ite) {
-		return new ToFilteredEdgeIterator<T>(ite);
+		if (capacity > 0)
+			filteredSink.delivery = new AsyncDelivery(filteredSink,
+					"delivery-" + id, capacity, backpressure);
 	}
 
-	private void checkArraysSize() {
-		if (filteredNodes.size() >= nodesArray.length) {
-			FilteredNode[] tmp = Arrays.copyOf(nodesArray,
-					nodesArray.length + 8);
-			Arrays.fill(nodesArray, null);
-			nodesArray = tmp;
-		}
+	/**
+	 * Change the sinks or the way events are delivered once the events sent
+	 * before are delivered.
+	 */
+	void configure(Runnable task) {
+		filteredSink.configure(task);
+	}
 
-		if (filteredEdges.size() >= edgesArray.length) {
-			FilteredEdge[] tmp = Arrays.copyOf(edgesArray,
-					edgesArray.length + 8);
-			Arrays.fill(edgesArray, null);
-			edgesArray = tmp;
-		}
+	/**
+	 * Get the asynchronous delivery of events, which gives the counters of
+	 * the queue.
+	 * 
+	 * @return the asynchronous delivery, or null if events are delivered
+	 *         synchronously
+	 */
+	public AsyncDelivery getAsyncDelivery() {
+		return filteredSink.delivery;
 	}
 
 	/*
@@ -327,14 +1444,10 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	public <T extends Edge> T addEdge(String id, Node from, Node to,
 			boolean directed) throws IdAlreadyInUseException,
 			EdgeRejectedException {
-		if (from instanceof FilteredNode && filteredNodes.containsValue(from))
-			from = ((FilteredNode) from).getFilteredElement();
-
-		if (to instanceof FilteredNode && filteredNodes.containsValue(to))
-			to = ((FilteredNode) to).getFilteredElement();
+		from = getUnfilteredNode(from);
+		to = getUnfilteredNode(to);
 
-		element.addEdge(id, from, to, directed);
-		return (T) filteredEdges.get(id);
+		return (T) edges.get(element.addEdge(id, from, to, directed));
 	}
 
 	/*
@@ -344,8 +1457,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Node> T addNode(String id) throws IdAlreadyInUseException {
-		element.addNode(id);
-		return (T) filteredNodes.get(id);
+		return (T) nodes.get(element.addNode(id));
 	}
 
 	/*
@@ -443,12 +1555,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Edge> T getEdge(String id) {
-		T e = element.getEdge(id);
-
-		if (e != null && edgeFilter.isAvailable(e))
-			return (T) filteredEdges.get(id);
-
-		return null;
+		return (T) edges.get(element.getEdge(id));
 	}
 
 	/*
@@ -459,7 +1566,11 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	@SuppressWarnings("unchecked")
 	public <T extends Edge> T getEdge(int index)
 			throws IndexOutOfBoundsException {
-		return (T) edgesArray[index];
+		if (index < 0 || index >= edges.size())
+			throw new IndexOutOfBoundsException("Edge #" + index
+					+ " does not exist");
+
+		return (T) edges.wrapper(index);
 	}
 
 	/*
@@ -468,7 +1579,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.graph.Graph#getEdgeCount()
 	 */
 	public int getEdgeCount() {
-		return filteredEdges.size();
+		return edges.size();
 	}
 
 	/*
@@ -477,8 +1588,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.graph.Graph#getEdgeIterator()
 	 */
 	public <T extends Edge> Iterator<T> getEdgeIterator() {
-		return newFilteredEdgeIterator(new FilteredEdgeIterator<Edge>(element
-				.getEdgeIterator(), edgeFilter));
+		return new EdgeArrayIterator<T>();
 	}
 
 	/*
@@ -493,7 +1603,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 			}
 
 			public int size() {
-				return getNodeCount();
+				return getEdgeCount();
 			}
 		};
 	}
@@ -505,7 +1615,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Node> T getNode(String id) {
-		return (T) filteredNodes.get(id);
+		return (T) nodes.get(element.getNode(id));
 	}
 
 	/*
@@ -516,7 +1626,11 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	@SuppressWarnings("unchecked")
 	public <T extends Node> T getNode(int index)
 			throws IndexOutOfBoundsException {
-		return (T) nodesArray[index];
+		if (index < 0 || index >= nodes.size())
+			throw new IndexOutOfBoundsException("Node #" + index
+					+ " does not exist");
+
+		return (T) nodes.wrapper(index);
 	}
 
 	/*
@@ -525,7 +1639,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.graph.Graph#getNodeCount()
 	 */
 	public int getNodeCount() {
-		return filteredNodes.size();
+		return nodes.size();
 	}
 
 	/*
@@ -534,8 +1648,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.graph.Graph#getNodeIterator()
 	 */
 	public <T extends Node> Iterator<T> getNodeIterator() {
-		return newFilteredNodeIterator(new FilteredNodeIterator<Node>(element
-				.getNodeIterator(), nodeFilter));
+		return new NodeArrayIterator<T>();
 	}
 
 	/*
@@ -705,10 +1818,10 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 */
 	public <T extends Edge> T removeEdge(Node n1, Node n2)
 			throws ElementNotFoundException {
-		if (!nodeFilter.isAvailable(n1))
+		if (!contains(n1))
 			throw new ElementNotFoundException("Node \"%s\"", n1.getId());
 
-		if (!nodeFilter.isAvailable(n2))
+		if (!contains(n2))
 			throw new ElementNotFoundException("Node \"%s\"", n2.getId());
 
 		Edge e = n1.getEdgeBetween(n2);
@@ -721,10 +1834,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.graph.Graph#removeEdge(org.graphstream.graph.Edge)
 	 */
 	public <T extends Edge> T removeEdge(Edge edge) {
-		if (edgeFilter.isAvailable(edge))
+		edge = getUnfilteredEdge(edge);
+
+		if (edges.contains(edge))
 			return element.removeEdge(edge);
 
-		if (!edgeFilter.isAvailable(edge) && isStrict())
+		if (isStrict())
 			throw new ElementNotFoundException("Edge \"%s\"", edge.getId());
 
 		return null;
@@ -767,13 +1882,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Node> T removeNode(Node node) {
-		if (node instanceof FilteredNode && filteredNodes.containsValue(node))
-			node = ((FilteredNode) node).getFilteredElement();
+		node = getUnfilteredNode(node);
 
-		if (!nodeFilter.isAvailable(node) && isStrict())
+		if (!nodes.contains(node) && isStrict())
 			return null;
 
-		FilteredNode fn = filteredNodes.get(node.getId());
+		FilteredNode fn = nodes.get(node);
 		Node n = element.removeNode(node);
 
 		if (n != null)
@@ -867,8 +1981,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * org.graphstream.stream.Source#addAttributeSink(org.graphstream.stream
 	 * .AttributeSink)
 	 */
-	public void addAttributeSink(AttributeSink sink) {
-		filteredSink.addAttributeSink(sink);
+	public void addAttributeSink(final AttributeSink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.addAttributeSink(sink);
+			}
+		});
 	}
 
 	/*
@@ -877,8 +1995,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @seeorg.graphstream.stream.Source#addElementSink(org.graphstream.stream.
 	 * ElementSink)
 	 */
-	public void addElementSink(ElementSink sink) {
-		filteredSink.addElementSink(sink);
+	public void addElementSink(final ElementSink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.addElementSink(sink);
+			}
+		});
 	}
 
 	/*
@@ -886,8 +2008,81 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * 
 	 * @see org.graphstream.stream.Source#addSink(org.graphstream.stream.Sink)
 	 */
-	public void addSink(Sink sink) {
-		filteredSink.addSink(sink);
+	public void addSink(final Sink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.addSink(sink);
+			}
+		});
+	}
+
+	/**
+	 * Add a sink receiving only the node and edge attribute events of some
+	 * keys. Graph attribute events and element events are all sent. The
+	 * projection is removed with {@link #removeSink(Sink)}.
+	 * 
+	 * @param sink
+	 *            the sink
+	 * @param keys
+	 *            keys of the attributes whose events are sent
+	 */
+	public void addSink(Sink sink, String... keys) {
+		addSink(sink, ProjectedSink.keys(keys));
+	}
+
+	/**
+	 * Add a sink receiving only the node and edge attribute events whose key
+	 * is accepted by a filter. Graph attribute events and element events are
+	 * all sent. The projection is removed with {@link #removeSink(Sink)}.
+	 * 
+	 * @param sink
+	 *            the sink
+	 * @param filter
+	 *            filter of the attribute keys
+	 */
+	public void addSink(Sink sink, AttributeKeyFilter filter) {
+		final ProjectedSink projection = new ProjectedSink(sink, filter);
+
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.addSink(projection);
+			}
+		});
+	}
+
+	/**
+	 * Add an attribute sink receiving only the node and edge attribute events
+	 * of some keys. Graph attribute events are all sent. The projection is
+	 * removed with {@link #removeAttributeSink(AttributeSink)}.
+	 * 
+	 * @param sink
+	 *            the attribute sink
+	 * @param keys
+	 *            keys of the attributes whose events are sent
+	 */
+	public void addAttributeSink(AttributeSink sink, String... keys) {
+		addAttributeSink(sink, ProjectedSink.keys(keys));
+	}
+
+	/**
+	 * Add an attribute sink receiving only the node and edge attribute events
+	 * whose key is accepted by a filter. Graph attribute events are all sent.
+	 * The projection is removed with
+	 * {@link #removeAttributeSink(AttributeSink)}.
+	 * 
+	 * @param sink
+	 *            the attribute sink
+	 * @param filter
+	 *            filter of the attribute keys
+	 */
+	public void addAttributeSink(AttributeSink sink, AttributeKeyFilter filter) {
+		final ProjectedSink projection = new ProjectedSink(sink, filter);
+
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.addAttributeSink(projection);
+			}
+		});
 	}
 
 	/*
@@ -896,7 +2091,11 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.stream.Source#clearAttributeSinks()
 	 */
 	public void clearAttributeSinks() {
-		filteredSink.clearAttributeSinks();
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.clearAttributeSinks();
+			}
+		});
 	}
 
 	/*
@@ -905,7 +2104,11 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.stream.Source#clearElementSinks()
 	 */
 	public void clearElementSinks() {
-		filteredSink.clearElementSinks();
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.clearElementSinks();
+			}
+		});
 	}
 
 	/*
@@ -914,7 +2117,11 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see org.graphstream.stream.Source#clearSinks()
 	 */
 	public void clearSinks() {
-		filteredSink.clearSinks();
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.clearSinks();
+			}
+		});
 	}
 
 	/*
@@ -924,8 +2131,13 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * org.graphstream.stream.Source#removeAttributeSink(org.graphstream.stream
 	 * .AttributeSink)
 	 */
-	public void removeAttributeSink(AttributeSink sink) {
-		filteredSink.removeAttributeSink(sink);
+	public void removeAttributeSink(final AttributeSink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.removeAttributeSink(sink);
+				filteredSink.removeProjections(sink, false, true);
+			}
+		});
 	}
 
 	/*
@@ -935,8 +2147,13 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * org.graphstream.stream.Source#removeElementSink(org.graphstream.stream
 	 * .ElementSink)
 	 */
-	public void removeElementSink(ElementSink sink) {
-		filteredSink.removeElementSink(sink);
+	public void removeElementSink(final ElementSink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.removeElementSink(sink);
+				filteredSink.removeProjections(sink, true, false);
+			}
+		});
 	}
 
 	/*
@@ -945,8 +2162,13 @@ public class FilteredGraph extends AbstractElement implements Graph {
 	 * @see
 	 * org.graphstream.stream.Source#removeSink(org.graphstream.stream.Sink)
 	 */
-	public void removeSink(Sink sink) {
-		filteredSink.removeSink(sink);
+	public void removeSink(final Sink sink) {
+		configure(new Runnable() {
+			public void run() {
+				filteredSink.removeSink(sink);
+				filteredSink.removeProjections(sink, true, true);
+			}
+		});
 	}
 
 	/*
@@ -1084,58 +2306,532 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		element.edgeRemoved(sourceId, timeId, edgeId);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
-	 * long)
-	 */
-	public void graphCleared(String sourceId, long timeId) {
-		element.graphCleared(sourceId, timeId);
-	}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+	 * long)
+	 */
+	public void graphCleared(String sourceId, long timeId) {
+		element.graphCleared(sourceId, timeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+	 * java.lang.String)
+	 */
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		element.nodeAdded(sourceId, timeId, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		element.nodeRemoved(sourceId, timeId, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+	 * long, double)
+	 */
+	public void stepBegins(String sourceId, long timeId, double step) {
+		element.stepBegins(sourceId, timeId, step);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Iterable#iterator()
+	 */
+	public Iterator<Node> iterator() {
+		return new NodeArrayIterator<Node>();
+	}
+
+	class FilteredSink extends SourceBase implements Sink {
+		/*
+		 * Events buffered in batching or coalescing mode, null otherwise, and
+		 * the batch which is filled while the other is delivered.
+		 */
+		EventBatch batch;
+		private EventBatch spare;
+		int batchSize;
+		boolean coalescing;
+		private boolean flushing;
+
+		/*
+		 * Delivery thread in asynchronous mode, null otherwise.
+		 */
+		AsyncDelivery delivery;
+
+		long newEvent() {
+			return sourceTime.newEvent();
+		}
+
+		/**
+		 * Set the size of batches, 0 for no limit, and tell if attribute
+		 * events are coalesced. Events are delivered directly if both are
+		 * disabled.
+		 */
+		void setBatching(int size, boolean coalescing) {
+			flushBatch();
+
+			batchSize = size;
+			this.coalescing = coalescing;
+
+			if (size > 0 || coalescing) {
+				int capacity = size > 0 ? size : MIN_CAPACITY;
+				batch = new EventBatch(capacity, coalescing);
+				spare = new EventBatch(capacity, coalescing);
+			} else {
+				batch = null;
+				spare = null;
+			}
+		}
+
+		/**
+		 * Deliver the events which have not been delivered yet. In
+		 * asynchronous mode, this waits for the delivery thread.
+		 */
+		void flush() {
+			if (delivery == null || !delivery.flush())
+				flushBatch();
+		}
+
+		/**
+		 * Run a change of the sinks or of the way events are delivered, once
+		 * the events sent before are delivered. In asynchronous mode, it is
+		 * run by the delivery thread.
+		 */
+		void configure(Runnable task) {
+			if (delivery == null || !delivery.execute(task)) {
+				flushBatch();
+				task.run();
+			}
+		}
+
+		/**
+		 * Deliver the buffered events. Events sent by the sinks while a batch
+		 * is delivered are buffered in the spare batch, and delivered once the
+		 * current one is done.
+		 */
+		void flushBatch() {
+			if (batch == null || flushing)
+				return;
+
+			flushing = true;
+
+			try {
+				while (batch.length() > 0) {
+					EventBatch b = batch;
+					batch = spare;
+					spare = b;
+
+					if (!b.isEmpty())
+						deliver(b);
+
+					b.clear();
+				}
+			} finally {
+				flushing = false;
+			}
+		}
+
+		private void deliver(EventBatch b) {
+			Object[] es = eltsSinks.toArray();
+			Object[] as = attrSinks.toArray();
+
+			//
+			// Sinks receiving both kinds of events get them in a single pass,
+			// so element and attribute events stay interleaved.
+			//
+			for (Object s : es) {
+				if (!attrSinks.contains(s))
+					b.replay((ElementSink) s, null);
+				else if (s instanceof BatchSink)
+					((BatchSink) s).batchReceived(id, b);
+				else
+					b.replay((ElementSink) s, (AttributeSink) s);
+			}
+
+			for (Object s : as) {
+				if (!eltsSinks.contains(s))
+					b.replay(null, (AttributeSink) s);
+			}
+		}
+
+		/**
+		 * Remove the projections registered for a sink, from the element
+		 * sinks, the attribute sinks, or both.
+		 */
+		void removeProjections(Object sink, boolean elements,
+				boolean attributes) {
+			if (elements) {
+				for (Object s : eltsSinks.toArray()) {
+					if (s instanceof ProjectedSink
+							&& ((ProjectedSink) s).target == sink)
+						removeElementSink((ElementSink) s);
+				}
+			}
+
+			if (attributes) {
+				for (Object s : attrSinks.toArray()) {
+					if (s instanceof ProjectedSink
+							&& ((ProjectedSink) s).target == sink)
+						removeAttributeSink((AttributeSink) s);
+				}
+			}
+		}
+
+		private void buffered() {
+			if (batchSize > 0 && batch.length() >= batchSize)
+				flushBatch();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.stream.SourceBase#sendNodeAdded(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void sendNodeAdded(String sourceId, long timeId, String nodeId) {
+			if (delivery != null
+					&& delivery.put(EventBatch.NODE_ADDED, sourceId, timeId,
+							nodeId, null, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendNodeAdded(sourceId, timeId, nodeId);
+			else {
+				batch.element(EventBatch.NODE_ADDED, sourceId, timeId, nodeId);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendNodeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void sendNodeRemoved(String sourceId, long timeId, String nodeId) {
+			if (delivery != null
+					&& delivery.put(EventBatch.NODE_REMOVED, sourceId, timeId,
+							nodeId, null, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendNodeRemoved(sourceId, timeId, nodeId);
+			else {
+				batch.element(EventBatch.NODE_REMOVED, sourceId, timeId,
+						nodeId);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.stream.SourceBase#sendEdgeAdded(java.lang.String,
+		 * long, java.lang.String, java.lang.String, java.lang.String, boolean)
+		 */
+		public void sendEdgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			if (delivery != null
+					&& delivery.put(directed ? EventBatch.DIRECTED_EDGE_ADDED
+							: EventBatch.EDGE_ADDED, sourceId, timeId, edgeId,
+							fromNodeId, toNodeId, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendEdgeAdded(sourceId, timeId, edgeId, fromNodeId,
+						toNodeId, directed);
+			else {
+				batch.edgeAdded(sourceId, timeId, edgeId, fromNodeId,
+						toNodeId, directed);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendEdgeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void sendEdgeRemoved(String sourceId, long timeId, String edgeId) {
+			if (delivery != null
+					&& delivery.put(EventBatch.EDGE_REMOVED, sourceId, timeId,
+							edgeId, null, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendEdgeRemoved(sourceId, timeId, edgeId);
+			else {
+				batch.element(EventBatch.EDGE_REMOVED, sourceId, timeId,
+						edgeId);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendGraphCleared(java.lang.String,
+		 * long)
+		 */
+		public void sendGraphCleared(String sourceId, long timeId) {
+			if (delivery != null
+					&& delivery.put(EventBatch.GRAPH_CLEARED, sourceId, timeId,
+							null, null, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendGraphCleared(sourceId, timeId);
+			else {
+				batch.graphCleared(sourceId, timeId);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendStepBegins(java.lang.String,
+		 * long, double)
+		 */
+		public void sendStepBegins(String sourceId, long timeId, double step) {
+			if (delivery != null
+					&& delivery.put(EventBatch.STEP_BEGINS, sourceId, timeId,
+							null, null, null, null, step))
+				return;
+
+			if (batch == null)
+				super.sendStepBegins(sourceId, timeId, step);
+			else {
+				//
+				// The step ends the batch.
+				//
+				batch.stepBegins(sourceId, timeId, step);
+				flushBatch();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendEdgeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void sendEdgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			if (delivery != null
+					&& delivery.put(EventBatch.EDGE_ATTRIBUTE_ADDED, sourceId,
+							timeId, edgeId, attribute, null, value, 0))
+				return;
+
+			if (batch == null)
+				super.sendEdgeAttributeAdded(sourceId, timeId, edgeId,
+						attribute, value);
+			else {
+				batch.attribute(EventBatch.EDGE_ATTRIBUTE_ADDED, sourceId,
+						timeId, edgeId, attribute, null, value);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendEdgeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void sendEdgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			if (delivery != null
+					&& delivery.put(EventBatch.EDGE_ATTRIBUTE_CHANGED, sourceId,
+							timeId, edgeId, attribute, oldValue, newValue, 0))
+				return;
+
+			if (batch == null)
+				super.sendEdgeAttributeChanged(sourceId, timeId, edgeId,
+						attribute, oldValue, newValue);
+			else {
+				batch.attribute(EventBatch.EDGE_ATTRIBUTE_CHANGED, sourceId,
+						timeId, edgeId, attribute, oldValue, newValue);
+				buffered();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendEdgeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void sendEdgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			if (delivery != null
+					&& delivery.put(EventBatch.EDGE_ATTRIBUTE_REMOVED, sourceId,
+							timeId, edgeId, attribute, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendEdgeAttributeRemoved(sourceId, timeId, edgeId,
+						attribute);
+			else {
+				batch.attribute(EventBatch.EDGE_ATTRIBUTE_REMOVED, sourceId,
+						timeId, edgeId, attribute, null, null);
+				buffered();
+			}
+		}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
-	 * java.lang.String)
-	 */
-	public void nodeAdded(String sourceId, long timeId, String nodeId) {
-		element.nodeAdded(sourceId, timeId, nodeId);
-	}
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendNodeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void sendNodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			if (delivery != null
+					&& delivery.put(EventBatch.NODE_ATTRIBUTE_ADDED, sourceId,
+							timeId, nodeId, attribute, null, value, 0))
+				return;
+
+			if (batch == null)
+				super.sendNodeAttributeAdded(sourceId, timeId, nodeId,
+						attribute, value);
+			else {
+				batch.attribute(EventBatch.NODE_ATTRIBUTE_ADDED, sourceId,
+						timeId, nodeId, attribute, null, value);
+				buffered();
+			}
+		}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
-	 * long, java.lang.String)
-	 */
-	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
-		element.nodeRemoved(sourceId, timeId, nodeId);
-	}
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendNodeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void sendNodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			if (delivery != null
+					&& delivery.put(EventBatch.NODE_ATTRIBUTE_CHANGED, sourceId,
+							timeId, nodeId, attribute, oldValue, newValue, 0))
+				return;
+
+			if (batch == null)
+				super.sendNodeAttributeChanged(sourceId, timeId, nodeId,
+						attribute, oldValue, newValue);
+			else {
+				batch.attribute(EventBatch.NODE_ATTRIBUTE_CHANGED, sourceId,
+						timeId, nodeId, attribute, oldValue, newValue);
+				buffered();
+			}
+		}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
-	 * long, double)
-	 */
-	public void stepBegins(String sourceId, long timeId, double step) {
-		element.stepBegins(sourceId, timeId, step);
-	}
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendNodeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void sendNodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			if (delivery != null
+					&& delivery.put(EventBatch.NODE_ATTRIBUTE_REMOVED, sourceId,
+							timeId, nodeId, attribute, null, null, 0))
+				return;
+
+			if (batch == null)
+				super.sendNodeAttributeRemoved(sourceId, timeId, nodeId,
+						attribute);
+			else {
+				batch.attribute(EventBatch.NODE_ATTRIBUTE_REMOVED, sourceId,
+						timeId, nodeId, attribute, null, null);
+				buffered();
+			}
+		}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see java.lang.Iterable#iterator()
-	 */
-	public Iterator<Node> iterator() {
-		return new FilteredNodeIterator<Node>(element.iterator(), nodeFilter);
-	}
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.stream.SourceBase#sendAttributeChangedEvent(java.lang
+		 * .String, long, java.lang.String,
+		 * org.graphstream.stream.SourceBase.ElementType, java.lang.String,
+		 * org.graphstream.graph.implementations
+		 * .AbstractElement.AttributeChangeEvent, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void sendAttributeChangedEvent(String sourceId, long timeId,
+				String eltId, ElementType eltType, String attribute,
+				AttributeChangeEvent event, Object oldValue, Object newValue) {
+			if (batch == null && delivery == null) {
+				super.sendAttributeChangedEvent(sourceId, timeId, eltId,
+						eltType, attribute, event, oldValue, newValue);
+				return;
+			}
 
-	class FilteredSink extends SourceBase implements Sink {
-		long newEvent() {
-			return sourceTime.newEvent();
+			byte type;
+
+			switch (eltType) {
+			case NODE:
+				type = EventBatch.NODE_ATTRIBUTE_ADDED;
+				break;
+			case EDGE:
+				type = EventBatch.EDGE_ATTRIBUTE_ADDED;
+				break;
+			default:
+				type = EventBatch.GRAPH_ATTRIBUTE_ADDED;
+				break;
+			}
+
+			//
+			// Changed and removed events follow the added one of each kind
+			// of element.
+			//
+			if (event == AttributeChangeEvent.CHANGE)
+				type += 1;
+			else if (event == AttributeChangeEvent.REMOVE)
+				type += 2;
+
+			if (delivery != null
+					&& delivery.put(type, sourceId, timeId, eltId, attribute,
+							oldValue, newValue, 0))
+				return;
+
+			if (batch == null)
+				super.sendAttributeChangedEvent(sourceId, timeId, eltId,
+						eltType, attribute, event, oldValue, newValue);
+			else {
+				batch.attribute(type, sourceId, timeId, eltId, attribute,
+						oldValue, newValue);
+				buffered();
+			}
 		}
 
 		/*
@@ -1146,6 +2842,8 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void edgeAdded(String sourceId, long timeId, String edgeId,
 				String fromNodeId, String toNodeId, boolean directed) {
+			refilterPending();
+
 			Edge e = element.getEdge(edgeId);
 
 			if (edgeFilter.isAvailable(e))
@@ -1159,10 +2857,27 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 * long, java.lang.String)
 		 */
 		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			refilterPending();
+
+			if (!edges.containsId(edgeId)) {
+				//
+				// Only the relocation of the last edge of the base graph
+				// matters, which is done if it is a member.
+				//
+				Edge last = element.getEdgeCount() > 0 ? element
+						.<Edge> getEdge(element.getEdgeCount() - 1) : null;
+
+				if (!edges.contains(last))
+					return;
+			}
+
 			Edge e = element.getEdge(edgeId);
 
-			if (edgeFilter.isAvailable(e))
-				notInclude(e);
+			if (e == null)
+				return;
+
+			notInclude(e);
+			edges.removing(e, element.getEdge(element.getEdgeCount() - 1));
 		}
 
 		/*
@@ -1173,6 +2888,9 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 * long)
 		 */
 		public void graphCleared(String sourceId, long timeId) {
+			refilterPending();
+
+			empty();
 			sendGraphCleared(sourceId, timeId);
 		}
 
@@ -1183,6 +2901,8 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 * long, java.lang.String)
 		 */
 		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			refilterPending();
+
 			Node n = element.getNode(nodeId);
 
 			if (nodeFilter.isAvailable(n))
@@ -1196,10 +2916,27 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 * long, java.lang.String)
 		 */
 		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			refilterPending();
+
+			if (!nodes.containsId(nodeId)) {
+				//
+				// Only the relocation of the last node of the base graph
+				// matters, which is done if it is a member.
+				//
+				Node last = element.getNodeCount() > 0 ? element
+						.<Node> getNode(element.getNodeCount() - 1) : null;
+
+				if (!nodes.contains(last))
+					return;
+			}
+
 			Node n = element.getNode(nodeId);
 
-			if (nodeFilter.isAvailable(n))
-				notInclude(n);
+			if (n == null)
+				return;
+
+			notInclude(n);
+			nodes.removing(n, element.getNode(element.getNodeCount() - 1));
 		}
 
 		/*
@@ -1209,6 +2946,8 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 * long, double)
 		 */
 		public void stepBegins(String sourceId, long timeId, double step) {
+			refilterPending();
+
 			sendStepBegins(sourceId, timeId, step);
 		}
 
@@ -1221,9 +2960,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void edgeAttributeAdded(String sourceId, long timeId,
 				String edgeId, String attribute, Object value) {
-			Edge e = element.getEdge(edgeId);
+			refilterPending();
 
-			if (edgeFilter.isAvailable(e))
+			if (edgeFilterKeys != null && edgeFilterKeys.contains(attribute))
+				refilter(element.<Edge> getEdge(edgeId));
+
+			if (edges.containsId(edgeId))
 				sendEdgeAttributeAdded(sourceId, timeId, edgeId, attribute,
 						value);
 		}
@@ -1239,9 +2981,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		public void edgeAttributeChanged(String sourceId, long timeId,
 				String edgeId, String attribute, Object oldValue,
 				Object newValue) {
-			Edge e = element.getEdge(edgeId);
+			refilterPending();
 
-			if (edgeFilter.isAvailable(e))
+			if (edgeFilterKeys != null && edgeFilterKeys.contains(attribute))
+				refilter(element.<Edge> getEdge(edgeId));
+
+			if (edges.containsId(edgeId))
 				sendEdgeAttributeChanged(sourceId, timeId, edgeId, attribute,
 						oldValue, newValue);
 		}
@@ -1255,10 +3000,19 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void edgeAttributeRemoved(String sourceId, long timeId,
 				String edgeId, String attribute) {
-			Edge e = element.getEdge(edgeId);
+			refilterPending();
 
-			if (edgeFilter.isAvailable(e))
+			if (edges.containsId(edgeId))
 				sendEdgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+
+			//
+			// The attribute is still there, the edge will be evaluated at the
+			// next event.
+			//
+			if (edgeFilterKeys != null && edgeFilterKeys.contains(attribute)) {
+				pendingEdge = element.getEdge(edgeId);
+				pendingEdgeAttribute = attribute;
+			}
 		}
 
 		/*
@@ -1270,6 +3024,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void graphAttributeAdded(String sourceId, long timeId,
 				String attribute, Object value) {
+			refilterPending();
 		}
 
 		/*
@@ -1281,6 +3036,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void graphAttributeChanged(String sourceId, long timeId,
 				String attribute, Object oldValue, Object newValue) {
+			refilterPending();
 		}
 
 		/*
@@ -1292,6 +3048,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void graphAttributeRemoved(String sourceId, long timeId,
 				String attribute) {
+			refilterPending();
 		}
 
 		/*
@@ -1303,9 +3060,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void nodeAttributeAdded(String sourceId, long timeId,
 				String nodeId, String attribute, Object value) {
-			Node n = element.getNode(nodeId);
+			refilterPending();
 
-			if (nodeFilter.isAvailable(n))
+			if (nodeFilterKeys != null && nodeFilterKeys.contains(attribute))
+				refilter(element.<Node> getNode(nodeId));
+
+			if (nodes.containsId(nodeId))
 				sendNodeAttributeAdded(sourceId, timeId, nodeId, attribute,
 						value);
 		}
@@ -1321,9 +3081,12 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		public void nodeAttributeChanged(String sourceId, long timeId,
 				String nodeId, String attribute, Object oldValue,
 				Object newValue) {
-			Node n = element.getNode(nodeId);
+			refilterPending();
 
-			if (nodeFilter.isAvailable(n))
+			if (nodeFilterKeys != null && nodeFilterKeys.contains(attribute))
+				refilter(element.<Node> getNode(nodeId));
+
+			if (nodes.containsId(nodeId))
 				sendNodeAttributeChanged(sourceId, timeId, nodeId, attribute,
 						oldValue, newValue);
 		}
@@ -1337,10 +3100,261 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		public void nodeAttributeRemoved(String sourceId, long timeId,
 				String nodeId, String attribute) {
-			Node n = element.getNode(nodeId);
+			refilterPending();
 
-			if (nodeFilter.isAvailable(n))
+			if (nodes.containsId(nodeId))
 				sendNodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+
+			//
+			// The attribute is still there, the node will be evaluated at the
+			// next event.
+			//
+			if (nodeFilterKeys != null && nodeFilterKeys.contains(attribute)) {
+				pendingNode = element.getNode(nodeId);
+				pendingNodeAttribute = attribute;
+			}
+		}
+	}
+
+	/**
+	 * Iterator over the nodes of this graph, in the order of their index. The
+	 * cost of a full iteration is proportional to the count of nodes of this
+	 * graph.
+	 * 
+	 * This iterator is fail-fast : if a node is included or removed from this
+	 * graph after the creation of the iterator, by other means than the
+	 * {@link #remove()} method of the iterator, a
+	 * {@link java.util.ConcurrentModificationException} is thrown.
+	 */
+	private class NodeArrayIterator<T extends Node> implements Iterator<T> {
+		int next;
+		int current;
+		int expectedModCount;
+
+		NodeArrayIterator() {
+			next = 0;
+			current = -1;
+			expectedModCount = nodesModCount;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < nodes.size();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (expectedModCount != nodesModCount)
+				throw new ConcurrentModificationException();
+
+			if (next >= nodes.size())
+				throw new NoSuchElementException();
+
+			current = next++;
+			return (T) nodes.wrapper(current);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			if (current < 0)
+				throw new IllegalStateException();
+
+			if (expectedModCount != nodesModCount)
+				throw new ConcurrentModificationException();
+
+			Node n = nodes.element(current);
+			removeNode(nodes.wrapper(current));
+
+			//
+			// The last node has been moved at the index of the removed one.
+			//
+			if (current < nodes.size() && nodes.element(current) != n)
+				next = current;
+
+			current = -1;
+			expectedModCount = nodesModCount;
+		}
+	}
+
+	/**
+	 * Iterator over the edges of this graph, in the order of their index. This
+	 * iterator is fail-fast like {@link NodeArrayIterator}.
+	 */
+	private class EdgeArrayIterator<T extends Edge> implements Iterator<T> {
+		int next;
+		int current;
+		int expectedModCount;
+
+		EdgeArrayIterator() {
+			next = 0;
+			current = -1;
+			expectedModCount = edgesModCount;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < edges.size();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (expectedModCount != edgesModCount)
+				throw new ConcurrentModificationException();
+
+			if (next >= edges.size())
+				throw new NoSuchElementException();
+
+			current = next++;
+			return (T) edges.wrapper(current);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			if (current < 0)
+				throw new IllegalStateException();
+
+			if (expectedModCount != edgesModCount)
+				throw new ConcurrentModificationException();
+
+			Edge e = edges.element(current);
+			removeEdge(edges.wrapper(current));
+
+			//
+			// The last edge has been moved at the index of the removed one.
+			//
+			if (current < edges.size() && edges.element(current) != e)
+				next = current;
+
+			current = -1;
+			expectedModCount = edgesModCount;
+		}
+	}
+
+	private static class MembershipFilter<T extends Element> implements
+			Filter<T> {
+		final MembershipIndex<?, ?> index;
+
+		MembershipFilter(MembershipIndex<?, ?> index) {
+			this.index = index;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(T e) {
+			return index.contains(e);
+		}
+	}
+
+	/**
+	 * Filter of the nodes of the base graph of a nested graph : nodes have to
+	 * be in the parent, and are evaluated as nodes of the parent.
+	 */
+	private static class NestedNodeFilter implements Filter<Node> {
+		final FilteredGraph parent;
+		final Filter<Node> filter;
+
+		NestedNodeFilter(FilteredGraph parent, Filter<Node> filter) {
+			this.parent = parent;
+			this.filter = filter;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(Node n) {
+			return parent.nodes.contains(n)
+					&& filter.isAvailable(parent.getFilteredNode(n));
+		}
+	}
+
+	private static class NestedNodeAttributeFilter extends NestedNodeFilter
+			implements AttributeFilter<Node> {
+		NestedNodeAttributeFilter(FilteredGraph parent, Filter<Node> filter) {
+			super(parent, filter);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.graph.filtered.AttributeFilter#getAttributeKeys()
+		 */
+		public String[] getAttributeKeys() {
+			return ((AttributeFilter<?>) filter).getAttributeKeys();
+		}
+	}
+
+	/**
+	 * Filter of the edges of the base graph of a nested graph.
+	 */
+	private static class NestedEdgeFilter implements Filter<Edge> {
+		final FilteredGraph parent;
+		final Filter<Edge> filter;
+
+		NestedEdgeFilter(FilteredGraph parent, Filter<Edge> filter) {
+			this.parent = parent;
+			this.filter = filter;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(Edge e) {
+			return parent.edges.contains(e)
+					&& filter.isAvailable(parent.getFilteredEdge(e));
+		}
+	}
+
+	private static class NestedEdgeAttributeFilter extends NestedEdgeFilter
+			implements AttributeFilter<Edge> {
+		NestedEdgeAttributeFilter(FilteredGraph parent, Filter<Edge> filter) {
+			super(parent, filter);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.graphstream.graph.filtered.AttributeFilter#getAttributeKeys()
+		 */
+		public String[] getAttributeKeys() {
+			return ((AttributeFilter<?>) filter).getAttributeKeys();
 		}
 	}
 
@@ -1367,8 +3381,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		@SuppressWarnings("unchecked")
 		public T next() {
-			Node n = ite.next();
-			return (T) filteredNodes.get(n.getId());
+			return (T) nodes.get(ite.next());
 		}
 
 		/*
@@ -1404,8 +3417,7 @@ public class FilteredGraph extends AbstractElement implements Graph {
 		 */
 		@SuppressWarnings("unchecked")
 		public T next() {
-			Edge e = ite.next();
-			return (T) filteredEdges.get(e.getId());
+			return (T) edges.get(ite.next());
 		}
 
 		/*
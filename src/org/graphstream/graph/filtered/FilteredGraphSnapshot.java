@@ -0,0 +1,746 @@
+package org.graphstream.graph.filtered;
+
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.EdgeFactory;
+import org.graphstream.graph.Element;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.NodeFactory;
+import org.graphstream.stream.AttributeSink;
+import org.graphstream.stream.ElementSink;
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.file.FileSink;
+import org.graphstream.stream.file.FileSource;
+import org.graphstream.ui.layout.Layout;
+import org.graphstream.ui.layout.Layouts;
+import org.graphstream.ui.swingViewer.GraphRenderer;
+import org.graphstream.ui.swingViewer.Viewer;
+
+/**
+ * Read-only view of a filtered graph at some point in time, created by
+ * {@link FilteredGraph#snapshot()}. Nodes, edges, degrees and adjacency of
+ * the snapshot never change, even when the filtered graph does, so the
+ * snapshot can be read by any thread without locking.
+ *
+ * Snapshots share their storage with the filtered graph and with each other.
+ * It is split in chunks which are copied by the filtered graph before being
+ * modified, so taking a snapshot costs a copy of the chunks which have changed
+ * since the previous one, and of the array referencing the chunks.
+ *
+ * Nodes and edges of the snapshot are created when they are first requested,
+ * by any thread reading the snapshot. They are published with atomic
+ * operations, so each one is created once and seen fully built.
+ * The lookup of elements by id builds a map of the ids the first time it is
+ * used. Attributes are not part of the snapshot : they are read and written
+ * on the elements of the base graph, like the attributes of the filtered
+ * graph.
+ */
+public class FilteredGraphSnapshot extends FilteredElement<Graph> implements
+		Graph {
+
+	private final FilteredGraph graph;
+
+	final MembershipIndex.Frozen nodes;
+	final MembershipIndex.Frozen edges;
+
+	/*
+	 * Nodes and edges already created, in chunks created on demand.
+	 */
+	private final AtomicReferenceArray<AtomicReferenceArray<SnapshotNode>>
+			nodeCache;
+	private final AtomicReferenceArray<AtomicReferenceArray<SnapshotEdge>>
+			edgeCache;
+
+	private volatile HashMap<String, Integer> nodeIds;
+	private volatile HashMap<String, Integer> edgeIds;
+
+	FilteredGraphSnapshot(FilteredGraph graph, MembershipIndex.Frozen nodes,
+			MembershipIndex.Frozen edges) {
+		super(graph);
+
+		this.graph = graph;
+		this.nodes = nodes;
+		this.edges = edges;
+
+		nodeCache = new AtomicReferenceArray<AtomicReferenceArray<SnapshotNode>>(
+				nodes.elements.length);
+		edgeCache = new AtomicReferenceArray<AtomicReferenceArray<SnapshotEdge>>(
+				edges.elements.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredElement#target()
+	 */
+	@Override
+	Graph target() {
+		return graph;
+	}
+
+	/**
+	 * Record of the node at a position : in-degree, out-degree and adjacency.
+	 */
+	int[] nodeRecord(int position) {
+		return (int[]) nodes.record(position);
+	}
+
+	/**
+	 * Record of the edge at a position : positions of its endpoints.
+	 */
+	int[] edgeRecord(int position) {
+		return (int[]) edges.record(position);
+	}
+
+	/**
+	 * Node at a position, or null if the position is -1.
+	 */
+	SnapshotNode node(int position) {
+		if (position < 0)
+			return null;
+
+		AtomicReferenceArray<SnapshotNode> chunk = chunk(nodeCache, position);
+		SnapshotNode n = chunk.get(position & ChunkedArray.MASK);
+
+		//
+		// Two threads can create the same node, only the first one stored is
+		// kept.
+		//
+		if (n == null) {
+			n = new SnapshotNode((Node) nodes.element(position), this,
+					position);
+
+			if (!chunk.compareAndSet(position & ChunkedArray.MASK, null, n))
+				n = chunk.get(position & ChunkedArray.MASK);
+		}
+
+		return n;
+	}
+
+	/**
+	 * Edge at a position.
+	 */
+	SnapshotEdge edge(int position) {
+		AtomicReferenceArray<SnapshotEdge> chunk = chunk(edgeCache, position);
+		SnapshotEdge e = chunk.get(position & ChunkedArray.MASK);
+
+		if (e == null) {
+			e = new SnapshotEdge((Edge) edges.element(position), this,
+					position);
+
+			if (!chunk.compareAndSet(position & ChunkedArray.MASK, null, e))
+				e = chunk.get(position & ChunkedArray.MASK);
+		}
+
+		return e;
+	}
+
+	/**
+	 * Chunk of a cache holding a position, created if needed.
+	 */
+	private static <T> AtomicReferenceArray<T> chunk(
+			AtomicReferenceArray<AtomicReferenceArray<T>> cache, int position) {
+		int c = position >>> ChunkedArray.SHIFT;
+		AtomicReferenceArray<T> chunk = cache.get(c);
+
+		if (chunk == null) {
+			chunk = new AtomicReferenceArray<T>(ChunkedArray.CHUNK);
+
+			if (!cache.compareAndSet(c, null, chunk))
+				chunk = cache.get(c);
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Get the node of the base graph filtered by a node of this snapshot, or
+	 * the given node if it does not belong to this snapshot.
+	 */
+	Node unwrap(Node n) {
+		if (n instanceof SnapshotNode && ((SnapshotNode) n).snapshot == this)
+			return ((SnapshotNode) n).getFilteredElement();
+
+		return n;
+	}
+
+	private static HashMap<String, Integer> ids(MembershipIndex.Frozen frozen) {
+		HashMap<String, Integer> ids = new HashMap<String, Integer>(Math.max(
+				16, frozen.size * 4 / 3 + 1));
+
+		for (int p = 0; p < frozen.size; p++)
+			ids.put(frozen.element(p).getId(), p);
+
+		return ids;
+	}
+
+	/**
+	 * Get the filtered graph this snapshot has been taken from.
+	 *
+	 * @return the filtered graph
+	 */
+	public FilteredGraph getFilteredGraph() {
+		return graph;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#getNode(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode(String id) {
+		HashMap<String, Integer> ids = nodeIds;
+
+		if (ids == null) {
+			ids = ids(nodes);
+			nodeIds = ids;
+		}
+
+		Integer p = ids.get(id);
+		return p == null ? null : (T) node(p);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#getNode(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode(int index)
+			throws IndexOutOfBoundsException {
+		if (index < 0 || index >= nodes.size)
+			throw new IndexOutOfBoundsException("Node #" + index
+					+ " does not exist");
+
+		return (T) node(index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#getEdge(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(String id) {
+		HashMap<String, Integer> ids = edgeIds;
+
+		if (ids == null) {
+			ids = ids(edges);
+			edgeIds = ids;
+		}
+
+		Integer p = ids.get(id);
+		return p == null ? null : (T) edge(p);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#getEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(int index)
+			throws IndexOutOfBoundsException {
+		if (index < 0 || index >= edges.size)
+			throw new IndexOutOfBoundsException("Edge #" + index
+					+ " does not exist");
+
+		return (T) edge(index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getNodeCount()
+	 */
+	public int getNodeCount() {
+		return nodes.size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getEdgeCount()
+	 */
+	public int getEdgeCount() {
+		return edges.size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getNodeIterator()
+	 */
+	public <T extends Node> Iterator<T> getNodeIterator() {
+		return new PositionIterator<T>(nodes.size, true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEdgeIterator() {
+		return new PositionIterator<T>(edges.size, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	public Iterator<Node> iterator() {
+		return getNodeIterator();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getEachNode()
+	 */
+	public <T extends Node> Iterable<? extends T> getEachNode() {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return getNodeIterator();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getEachEdge()
+	 */
+	public <T extends Edge> Iterable<? extends T> getEachEdge() {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return getEdgeIterator();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getNodeSet()
+	 */
+	public <T extends Node> Collection<T> getNodeSet() {
+		return new AbstractCollection<T>() {
+			public Iterator<T> iterator() {
+				return getNodeIterator();
+			}
+
+			public int size() {
+				return getNodeCount();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Structure#getEdgeSet()
+	 */
+	public <T extends Edge> Collection<T> getEdgeSet() {
+		return new AbstractCollection<T>() {
+			public Iterator<T> iterator() {
+				return getEdgeIterator();
+			}
+
+			public int size() {
+				return getEdgeCount();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#nodeFactory()
+	 */
+	public NodeFactory<? extends Node> nodeFactory() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#edgeFactory()
+	 */
+	public EdgeFactory<? extends Edge> edgeFactory() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#isStrict()
+	 */
+	public boolean isStrict() {
+		return target().isStrict();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#isAutoCreationEnabled()
+	 */
+	public boolean isAutoCreationEnabled() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#nullAttributesAreErrors()
+	 */
+	public boolean nullAttributesAreErrors() {
+		return target().nullAttributesAreErrors();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#getStep()
+	 */
+	public double getStep() {
+		return target().getStep();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#display()
+	 */
+	public Viewer display() {
+		return display(true);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#display(boolean)
+	 */
+	public Viewer display(boolean autoLayout) {
+		Viewer viewer = new Viewer(this,
+				Viewer.ThreadingModel.GRAPH_IN_ANOTHER_THREAD);
+		GraphRenderer renderer = Viewer.newGraphRenderer();
+		viewer.addView(Viewer.DEFAULT_VIEW_ID, renderer);
+		if (autoLayout) {
+			Layout layout = Layouts.newLayoutAlgorithm();
+			viewer.enableAutoLayout(layout);
+		}
+		return viewer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Graph#write(java.lang.String)
+	 */
+	public void write(String filename) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.Graph#write(org.graphstream.stream.file.FileSink,
+	 * java.lang.String)
+	 */
+	public void write(FileSink output, String filename) throws IOException {
+		output.writeAll(this, filename);
+	}
+
+	/*
+	 * Snapshots can not be modified.
+	 */
+
+	public void setNullAttributesAreErrors(boolean on) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setNodeFactory(NodeFactory<? extends Node> nf) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setEdgeFactory(EdgeFactory<? extends Edge> ef) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setStrict(boolean on) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setAutoCreate(boolean on) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Node> T addNode(String id) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Node> T removeNode(String id) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Node> T removeNode(int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Node> T removeNode(Node node) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, String node1, String node2) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, String from, String to,
+			boolean directed) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, int index1, int index2) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, int fromIndex, int toIndex,
+			boolean directed) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, Node node1, Node node2) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T addEdge(String id, Node from, Node to,
+			boolean directed) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(String from, String to) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(String id) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(int index) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(int fromIndex, int toIndex) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(Node node1, Node node2) {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T extends Edge> T removeEdge(Edge edge) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void stepBegins(double time) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void read(String filename) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void read(FileSource input, String filename) {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * A snapshot never sends events, sinks are not kept.
+	 */
+
+	public Iterable<AttributeSink> attributeSinks() {
+		return Collections.<AttributeSink> emptyList();
+	}
+
+	public Iterable<ElementSink> elementSinks() {
+		return Collections.<ElementSink> emptyList();
+	}
+
+	public void addSink(Sink sink) {
+	}
+
+	public void removeSink(Sink sink) {
+	}
+
+	public void addAttributeSink(AttributeSink sink) {
+	}
+
+	public void removeAttributeSink(AttributeSink sink) {
+	}
+
+	public void addElementSink(ElementSink sink) {
+	}
+
+	public void removeElementSink(ElementSink sink) {
+	}
+
+	public void clearElementSinks() {
+	}
+
+	public void clearAttributeSinks() {
+	}
+
+	public void clearSinks() {
+	}
+
+	/*
+	 * Events can not be applied to a snapshot.
+	 */
+
+	public void edgeAttributeAdded(String sourceId, long timeId,
+			String edgeId, String attribute, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			String edgeId, String attribute) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void graphAttributeAdded(String sourceId, long timeId,
+			String attribute, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void graphAttributeChanged(String sourceId, long timeId,
+			String attribute, Object oldValue, Object newValue) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void graphAttributeRemoved(String sourceId, long timeId,
+			String attribute) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void nodeAttributeAdded(String sourceId, long timeId,
+			String nodeId, String attribute, Object value) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void graphCleared(String sourceId, long timeId) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void stepBegins(String sourceId, long timeId, double step) {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getId();
+	}
+
+	/**
+	 * Iterator over the nodes or the edges of the snapshot, in the order of
+	 * their index.
+	 */
+	private class PositionIterator<T> implements Iterator<T> {
+		final int count;
+		final boolean nodes;
+		int next;
+
+		PositionIterator(int count, boolean nodes) {
+			this.count = count;
+			this.nodes = nodes;
+			next = 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next >= count)
+				throw new NoSuchElementException();
+
+			Element e = nodes ? node(next) : edge(next);
+			next++;
+
+			return (T) e;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+}
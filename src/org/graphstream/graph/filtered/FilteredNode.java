@@ -2,26 +2,33 @@ package org.graphstream.graph.filtered;
 
 import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import org.graphstream.graph.BreadthFirstIterator;
-import org.graphstream.graph.DepthFirstIterator;
 import org.graphstream.graph.Edge;
+import org.graphstream.graph.ElementNotFoundException;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
-import org.graphstream.util.FilteredEdgeIterator;
-import org.graphstream.util.FilteredNodeIterator;
 
 public class FilteredNode extends FilteredElement<Node> implements Node {
 
 	FilteredGraph graph;
-	int iDegree, oDegree, ioDegree;
 
+	/**
+	 * Create the wrapper of a node. Degrees and edges of the node are not
+	 * stored here but in the graph, so several wrappers of the same node would
+	 * see the same edges.
+	 * 
+	 * @param target
+	 *            the node of the base graph
+	 * @param g
+	 *            the filtered graph
+	 */
 	public FilteredNode(Node target, FilteredGraph g) {
 		super(target);
 
 		graph = g;
-		iDegree = oDegree = ioDegree = 0;
 	}
 
 	/*
@@ -30,37 +37,61 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.filtered.FilteredElement#getFilteredElement()
 	 */
 	public Node getFilteredElement() {
-		return element;
+		return target();
 	}
 
-	void register(Edge e) {
-		assert graph.getEdgeFilter().isAvailable(e);
+	/**
+	 * Position of this node in the graph, where its degrees and edges are
+	 * stored.
+	 * 
+	 * @throws ElementNotFoundException
+	 *             if this node has left the graph
+	 */
+	private int position() {
+		int p = getIndex();
 
-		if (e.isDirected()) {
-			if (e.getSourceNode().getId().equals(getId()))
-				oDegree++;
-			else
-				iDegree++;
-		} else {
-			oDegree++;
-			iDegree++;
-		}
+		if (p < 0)
+			throw new ElementNotFoundException("Node \"%s\"", target()
+					.getId());
 
-		ioDegree++;
+		return p;
 	}
 
-	void unregister(Edge e) {
-		if (e.isDirected()) {
-			if (e.getSourceNode().getId().equals(getId()))
-				oDegree--;
-			else
-				iDegree--;
-		} else {
-			oDegree--;
-			iDegree--;
-		}
+	/**
+	 * Look for an included edge of this node, in a section of the adjacency,
+	 * whose opposite is a given node of the base graph.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Edge> T locateEdge(Node target, int from, int to) {
+		int e = graph.nodes.locate(position(), target, from, to);
+		return e < 0 ? null : (T) graph.edges.wrapper(e);
+	}
+
+	private Node unfilteredNode(int index) {
+		if (index < 0 || index >= graph.getNodeCount())
+			throw new IndexOutOfBoundsException("Node #" + index
+					+ " does not exist");
 
-		ioDegree--;
+		return graph.nodes.element(index);
+	}
+
+	/**
+	 * Wrapper of the edge in a slot of the adjacency of this node.
+	 */
+	private FilteredEdge edgeAt(int slot) {
+		return graph.edges.wrapper(graph.nodes.adjacency[position()][slot]);
+	}
+
+	private int iDegree() {
+		return graph.nodes.inDegrees[position()];
+	}
+
+	private int oDegree() {
+		return graph.nodes.outDegrees[position()];
+	}
+
+	private int ioDegree() {
+		return graph.nodes.degrees[position()];
 	}
 
 	/*
@@ -69,7 +100,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getBreadthFirstIterator()
 	 */
 	public <T extends Node> Iterator<T> getBreadthFirstIterator() {
-		return new BreadthFirstIterator<T>(this);
+		return new FilteredTraversal<T>(graph, position(), false, true);
 	}
 
 	/*
@@ -78,7 +109,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getBreadthFirstIterator(boolean)
 	 */
 	public <T extends Node> Iterator<T> getBreadthFirstIterator(boolean directed) {
-		return new BreadthFirstIterator<T>(this, directed);
+		return new FilteredTraversal<T>(graph, position(), false, directed);
 	}
 
 	/*
@@ -87,7 +118,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getDegree()
 	 */
 	public int getDegree() {
-		return ioDegree;
+		return ioDegree();
 	}
 
 	/*
@@ -96,7 +127,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getDepthFirstIterator()
 	 */
 	public <T extends Node> Iterator<T> getDepthFirstIterator() {
-		return new DepthFirstIterator<T>(this);
+		return new FilteredTraversal<T>(graph, position(), true, true);
 	}
 
 	/*
@@ -105,7 +136,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getDepthFirstIterator(boolean)
 	 */
 	public <T extends Node> Iterator<T> getDepthFirstIterator(boolean directed) {
-		return new DepthFirstIterator<T>(this, directed);
+		return new FilteredTraversal<T>(graph, position(), true, directed);
 	}
 
 	/*
@@ -152,29 +183,13 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * 
 	 * @see org.graphstream.graph.Node#getEdge(int)
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Edge> T getEdge(int i) {
-		int j = 0;
-
-		if (i < 0 || i >= ioDegree)
+		if (i < 0 || i >= ioDegree())
 			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
 					+ " has no edge " + i);
 
-		while (j < element.getDegree()) {
-			Edge e = element.getEdge(j);
-
-			assert e != null;
-
-			if (graph.getEdgeFilter().isAvailable(e)) {
-				if (i == 0)
-					return graph.getEdge(e.getId());
-				else if (i > 0)
-					i--;
-			}
-
-			j++;
-		}
-
-		throw new InternalError();
+		return (T) edgeAt(i);
 	}
 
 	/*
@@ -183,12 +198,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeBetween(java.lang.String)
 	 */
 	public <T extends Edge> T getEdgeBetween(String id) {
-		Edge e = element.getEdgeBetween(id);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.element.getNode(id), 0, ioDegree());
 	}
 
 	/*
@@ -198,15 +208,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * org.graphstream.graph.Node#getEdgeBetween(org.graphstream.graph.Node)
 	 */
 	public <T extends Edge> T getEdgeBetween(Node node) {
-		if (node instanceof FilteredElement<?>)
-			node = (Node) ((FilteredElement<?>) node).getFilteredElement();
-
-		Edge e = element.getEdgeBetween(node);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.getUnfilteredNode(node), 0, ioDegree());
 	}
 
 	/*
@@ -216,12 +218,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 */
 	public <T extends Edge> T getEdgeBetween(int index)
 			throws IndexOutOfBoundsException {
-		Edge e = element.getEdgeBetween(index);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(unfilteredNode(index), 0, ioDegree());
 	}
 
 	/*
@@ -230,12 +227,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeFrom(java.lang.String)
 	 */
 	public <T extends Edge> T getEdgeFrom(String id) {
-		Edge e = element.getEdgeFrom(id);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.element.getNode(id), 0, iDegree());
 	}
 
 	/*
@@ -244,15 +236,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeFrom(org.graphstream.graph.Node)
 	 */
 	public <T extends Edge> T getEdgeFrom(Node node) {
-		if (node instanceof FilteredElement<?>)
-			node = (Node) ((FilteredElement<?>) node).getFilteredElement();
-
-		Edge e = element.getEdgeFrom(node);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.getUnfilteredNode(node), 0, iDegree());
 	}
 
 	/*
@@ -262,12 +246,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 */
 	public <T extends Edge> T getEdgeFrom(int index)
 			throws IndexOutOfBoundsException {
-		Edge e = element.getEdgeFrom(index);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(unfilteredNode(index), 0, iDegree());
 	}
 
 	/*
@@ -276,9 +255,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeIterator()
 	 */
 	public <T extends Edge> Iterator<T> getEdgeIterator() {
-		Iterator<Edge> org = element.getEdgeIterator();
-		return graph.newFilteredEdgeIterator(new FilteredEdgeIterator<Edge>(
-				org, graph.edgeFilter));
+		return new AdjacencyIterator<T>(0, ioDegree());
 	}
 
 	/*
@@ -306,12 +283,8 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeToward(java.lang.String)
 	 */
 	public <T extends Edge> T getEdgeToward(String id) {
-		Edge e = element.getEdgeToward(id);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.element.getNode(id), ioDegree() - oDegree(),
+				ioDegree());
 	}
 
 	/*
@@ -320,15 +293,8 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEdgeToward(org.graphstream.graph.Node)
 	 */
 	public <T extends Edge> T getEdgeToward(Node node) {
-		if (node instanceof FilteredElement<?>)
-			node = (Node) ((FilteredElement<?>) node).getFilteredElement();
-
-		Edge e = element.getEdgeToward(node);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(graph.getUnfilteredNode(node), ioDegree()
+				- oDegree(), ioDegree());
 	}
 
 	/*
@@ -338,12 +304,8 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 */
 	public <T extends Edge> T getEdgeToward(int index)
 			throws IndexOutOfBoundsException {
-		Edge e = element.getEdgeToward(index);
-
-		if (graph.getEdgeFilter().isAvailable(e))
-			return graph.getEdge(e.getId());
-
-		return null;
+		return locateEdge(unfilteredNode(index), ioDegree() - oDegree(),
+				ioDegree());
 	}
 
 	/*
@@ -351,27 +313,13 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * 
 	 * @see org.graphstream.graph.Node#getEnteringEdge(int)
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Edge> T getEnteringEdge(int i) {
-		int j = 0;
-
-		if (i < 0 || i >= iDegree)
+		if (i < 0 || i >= iDegree())
 			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
 					+ " has no edge " + i);
 
-		while (j < element.getInDegree()) {
-			Edge e = element.getEnteringEdge(j);
-
-			if (graph.getEdgeFilter().isAvailable(e)) {
-				if (i == 0)
-					return graph.getEdge(e.getId());
-				else
-					i--;
-			}
-
-			j++;
-		}
-
-		throw new InternalError();
+		return (T) edgeAt(i);
 	}
 
 	/*
@@ -380,9 +328,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getEnteringEdgeIterator()
 	 */
 	public <T extends Edge> Iterator<T> getEnteringEdgeIterator() {
-		Iterator<Edge> org = element.getEnteringEdgeIterator();
-		return graph.newFilteredEdgeIterator(new FilteredEdgeIterator<Edge>(
-				org, graph.edgeFilter));
+		return new AdjacencyIterator<T>(0, iDegree());
 	}
 
 	/*
@@ -419,7 +365,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getInDegree()
 	 */
 	public int getInDegree() {
-		return iDegree;
+		return iDegree();
 	}
 
 	/*
@@ -427,27 +373,13 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * 
 	 * @see org.graphstream.graph.Node#getLeavingEdge(int)
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Edge> T getLeavingEdge(int i) {
-		int j = 0;
-
-		if (i < 0 || i >= oDegree)
+		if (i < 0 || i >= oDegree())
 			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
 					+ " has no edge " + i);
 
-		while (j < element.getOutDegree()) {
-			Edge e = element.getLeavingEdge(j);
-
-			if (graph.getEdgeFilter().isAvailable(e)) {
-				if (i == 0)
-					return graph.getEdge(e.getId());
-				else
-					i--;
-			}
-
-			j++;
-		}
-
-		throw new InternalError();
+		return (T) edgeAt(ioDegree() - oDegree() + i);
 	}
 
 	/*
@@ -456,9 +388,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getLeavingEdgeIterator()
 	 */
 	public <T extends Edge> Iterator<T> getLeavingEdgeIterator() {
-		Iterator<Edge> org = element.getLeavingEdgeIterator();
-		return graph.newFilteredEdgeIterator(new FilteredEdgeIterator<Edge>(
-				org, graph.edgeFilter));
+		return new AdjacencyIterator<T>(ioDegree() - oDegree(), ioDegree());
 	}
 
 	/*
@@ -486,9 +416,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getNeighborNodeIterator()
 	 */
 	public <T extends Node> Iterator<T> getNeighborNodeIterator() {
-		Iterator<Node> org = element.getNeighborNodeIterator();
-		return graph.newFilteredNodeIterator(new FilteredNodeIterator<Node>(
-				org, graph.nodeFilter));
+		return new NeighborIterator<T>();
 	}
 
 	/*
@@ -497,7 +425,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see org.graphstream.graph.Node#getOutDegree()
 	 */
 	public int getOutDegree() {
-		return oDegree;
+		return oDegree();
 	}
 
 	/*
@@ -588,9 +516,7 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	 * @see java.lang.Iterable#iterator()
 	 */
 	public Iterator<Edge> iterator() {
-		Iterator<Edge> org = element.iterator();
-		return graph.newFilteredEdgeIterator(new FilteredEdgeIterator<Edge>(
-				org, graph.edgeFilter));
+		return new AdjacencyIterator<Edge>(0, ioDegree());
 	}
 
 	/*
@@ -602,4 +528,123 @@ public class FilteredNode extends FilteredElement<Node> implements Node {
 	public String toString() {
 		return getId();
 	}
+
+	/**
+	 * Iterator over a section of the adjacency of this node. This iterator is
+	 * fail-fast : it throws a {@link java.util.ConcurrentModificationException}
+	 * if edges of the graph have been included or removed since its creation.
+	 */
+	private class AdjacencyIterator<T extends Edge> implements Iterator<T> {
+		int[] adjacency;
+		int next;
+		int end;
+		int expectedModCount;
+
+		AdjacencyIterator(int from, int to) {
+			adjacency = graph.nodes.adjacencyOf(position());
+			next = from;
+			end = to;
+			expectedModCount = graph.edgesModCount;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		/**
+		 * Position of the next edge.
+		 */
+		int nextPosition() {
+			if (expectedModCount != graph.edgesModCount)
+				throw new ConcurrentModificationException();
+
+			if (next >= end)
+				throw new NoSuchElementException();
+
+			return adjacency[next++];
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			return (T) graph.edges.wrapper(nextPosition());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+
+	/**
+	 * Iterator over the opposite nodes of the included edges of this node,
+	 * skipping the opposites which are not included in the graph.
+	 */
+	private class NeighborIterator<T extends Node> implements Iterator<T> {
+		AdjacencyIterator<Edge> edges;
+		int next;
+
+		NeighborIterator() {
+			edges = new AdjacencyIterator<Edge>(0, ioDegree());
+			lookup();
+		}
+
+		private void lookup() {
+			next = -1;
+
+			while (next < 0 && edges.hasNext()) {
+				Edge e = graph.edges.element(edges.nextPosition());
+				next = graph.nodes.indexOf(e.getOpposite(element));
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next >= 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next < 0)
+				throw new NoSuchElementException();
+
+			int n = next;
+			lookup();
+
+			return (T) graph.nodes.wrapper(n);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
 }
@@ -0,0 +1,299 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.graphstream.graph.Node;
+
+/**
+ * Breadth-first or depth-first iterator over the nodes of a
+ * {@link FilteredGraph} reachable from a node.
+ *
+ * The traversal works on the positions of the nodes and edges in the graph :
+ * the frontier is an array of positions, and visited nodes are marked in a
+ * bit set borrowed from the graph and given back once the traversal is over.
+ * Apart from the growth of the frontier, it allocates nothing, and
+ * {@link #nextIndex()} avoids the wrappers of the visited nodes.
+ *
+ * In breadth-first order, the frontier is a circular queue holding the nodes
+ * of at most two levels. In depth-first order, it is a stack holding, for each
+ * node of the current path, its position and the next slot of its adjacency
+ * to explore. Nodes are given in preorder.
+ *
+ * This iterator is fail-fast : it throws a
+ * {@link ConcurrentModificationException} if nodes or edges have been included
+ * or removed since its creation.
+ *
+ * @param <T>
+ *            type of the nodes
+ */
+public class FilteredTraversal<T extends Node> implements Iterator<T> {
+
+	private final FilteredGraph graph;
+	private final boolean depthFirst;
+	private final boolean directed;
+
+	private final int expectedNodesModCount;
+	private final int expectedEdgesModCount;
+
+	private BitSet visited;
+
+	/*
+	 * Breadth-first : circular queue of positions, from head, and count of
+	 * queued nodes. Depth-first : stack of positions and of the next slots of
+	 * their adjacency, of the given size.
+	 */
+	private int[] frontier;
+	private int[] slots;
+	private int head;
+	private int size;
+
+	/*
+	 * Position of the next node, -1 at the end, and the depths of the next
+	 * node, of the last given node and the largest one.
+	 */
+	private int next;
+	private int nextDepth;
+	private int depth;
+	private int depthMax;
+
+	/*
+	 * Breadth-first : count of queued nodes left in the level of the next
+	 * node.
+	 */
+	private int levelLeft;
+
+	FilteredTraversal(FilteredGraph graph, int start, boolean depthFirst,
+			boolean directed) {
+		this.graph = graph;
+		this.depthFirst = depthFirst;
+		this.directed = directed;
+
+		expectedNodesModCount = graph.nodesModCount;
+		expectedEdgesModCount = graph.edgesModCount;
+
+		visited = graph.borrowVisited();
+		visited.set(start);
+
+		frontier = new int[16];
+		slots = depthFirst ? new int[16] : null;
+		head = 0;
+		size = 0;
+
+		next = start;
+		nextDepth = 0;
+		depth = -1;
+		depthMax = 0;
+		levelLeft = 0;
+
+		if (depthFirst)
+			push(start);
+		else {
+			enqueue(start);
+			levelLeft = 1;
+		}
+	}
+
+	/**
+	 * Tell if edges are only followed from their source to their target.
+	 *
+	 * @return true if the traversal is directed
+	 */
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/**
+	 * Tell if nodes are given in depth-first order.
+	 *
+	 * @return true for a depth-first traversal, false for a breadth-first one
+	 */
+	public boolean isDepthFirst() {
+		return depthFirst;
+	}
+
+	/**
+	 * Get the depth of the last node given, the distance to the start node in
+	 * a breadth-first traversal, the length of the current path in a
+	 * depth-first one.
+	 *
+	 * @return depth of the last node, -1 if no node has been given yet
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Get the largest depth of the nodes given so far.
+	 *
+	 * @return the largest depth
+	 */
+	public int getDepthMax() {
+		return depthMax;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		return next >= 0;
+	}
+
+	/**
+	 * Get the index of the next node in the graph, without creating its
+	 * wrapper.
+	 *
+	 * @return index of the next node
+	 * @see FilteredGraph#getNode(int)
+	 */
+	public int nextIndex() {
+		if (expectedNodesModCount != graph.nodesModCount
+				|| expectedEdgesModCount != graph.edgesModCount)
+			throw new ConcurrentModificationException();
+
+		if (next < 0)
+			throw new NoSuchElementException();
+
+		int n = next;
+		depth = nextDepth;
+		depthMax = Math.max(depthMax, depth);
+
+		if (depthFirst)
+			advanceDepthFirst();
+		else
+			advanceBreadthFirst();
+
+		if (next < 0)
+			release();
+
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Iterator#next()
+	 */
+	@SuppressWarnings("unchecked")
+	public T next() {
+		return (T) graph.nodes.wrapper(nextIndex());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Start of the section of the adjacency of a node which is followed.
+	 */
+	private int from(int node) {
+		NodeIndex nodes = graph.nodes;
+		return directed ? nodes.degrees[node] - nodes.outDegrees[node] : 0;
+	}
+
+	/**
+	 * Queue the unvisited neighbors of the node at the head of the queue,
+	 * and take it out of the queue.
+	 */
+	private void advanceBreadthFirst() {
+		int node = frontier[head];
+		head = (head + 1) % frontier.length;
+		size--;
+		levelLeft--;
+
+		for (int s = from(node); s < graph.nodes.degrees[node]; s++) {
+			int o = graph.nodes.opposite(node, s);
+
+			if (o >= 0 && !visited.get(o)) {
+				visited.set(o);
+				enqueue(o);
+			}
+		}
+
+		if (size == 0) {
+			next = -1;
+			return;
+		}
+
+		if (levelLeft == 0) {
+			levelLeft = size;
+			nextDepth++;
+		}
+
+		next = frontier[head];
+	}
+
+	private void enqueue(int node) {
+		if (size == frontier.length) {
+			int[] q = new int[size * 2];
+			int first = frontier.length - head;
+
+			System.arraycopy(frontier, head, q, 0, first);
+			System.arraycopy(frontier, 0, q, first, head);
+
+			frontier = q;
+			head = 0;
+		}
+
+		frontier[(head + size) % frontier.length] = node;
+		size++;
+	}
+
+	/**
+	 * Go down to the first unvisited neighbor of the deepest node of the
+	 * path having one, going up the path as nodes are exhausted.
+	 */
+	private void advanceDepthFirst() {
+		while (size > 0) {
+			int node = frontier[size - 1];
+			int end = graph.nodes.degrees[node];
+
+			while (slots[size - 1] < end) {
+				int o = graph.nodes.opposite(node, slots[size - 1]++);
+
+				if (o >= 0 && !visited.get(o)) {
+					visited.set(o);
+					next = o;
+					nextDepth = size;
+					push(o);
+					return;
+				}
+			}
+
+			size--;
+		}
+
+		next = -1;
+	}
+
+	private void push(int node) {
+		if (size == frontier.length) {
+			frontier = Arrays.copyOf(frontier, size * 2);
+			slots = Arrays.copyOf(slots, size * 2);
+		}
+
+		frontier[size] = node;
+		slots[size] = from(node);
+		size++;
+	}
+
+	/**
+	 * Give the visited set back to the graph, at the end of the traversal.
+	 */
+	private void release() {
+		if (visited != null) {
+			graph.releaseVisited(visited);
+			visited = null;
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.util.Filter;
+import org.graphstream.util.Filters;
+
+/**
+ * A partition of a graph in disjoint filtered graphs, one for each key of the
+ * nodes.
+ *
+ * A node is in the partition of its key. An edge is in the partition of its
+ * endpoints if they have the same key, otherwise it is a cut edge. Cut edges
+ * are in a separate filtered graph, without nodes. Partitions are created
+ * when a new key appears, and are kept when they become empty.
+ *
+ * All the partitions are built in a single pass over the base graph, and
+ * share a single sink of the base graph. An event is only sent to the
+ * partition it concerns : the key of a new node, or of the endpoints of a new
+ * edge, gives its partition, and other events are routed by the element they
+ * concern. When an attribute the key depends on changes, the node and its
+ * edges are moved to their new partitions.
+ */
+public class GraphPartition {
+
+	private final PartitionKey key;
+	private final HashSet<String> keyAttributes;
+	private final Router router;
+
+	private final HashMap<Object, FilteredGraph> partitions;
+	private final FilteredGraph cut;
+
+	/*
+	 * Node whose key attribute is being removed, and this attribute. The base
+	 * graph notifies the removal before doing it, so it is moved at the next
+	 * event, or by flush() once the attribute is gone.
+	 */
+	private Node pendingNode;
+	private String pendingAttribute;
+
+	/**
+	 * Partition a graph by the value of a node attribute.
+	 *
+	 * @param base
+	 *            the graph to partition
+	 * @param attribute
+	 *            key of the attribute giving the partition of the nodes
+	 */
+	public GraphPartition(Graph base, final String attribute) {
+		this(base, new PartitionKey() {
+			public Object getKey(Node n) {
+				return n.getAttribute(attribute);
+			}
+
+			public String[] getAttributeKeys() {
+				return new String[] { attribute };
+			}
+		});
+	}
+
+	/**
+	 * Partition a graph by a key function.
+	 *
+	 * @param base
+	 *            the graph to partition
+	 * @param key
+	 *            the key of the nodes
+	 */
+	public GraphPartition(Graph base, PartitionKey key) {
+		this.key = key;
+		this.keyAttributes = new HashSet<String>(Arrays.asList(key
+				.getAttributeKeys()));
+
+		partitions = new HashMap<Object, FilteredGraph>();
+		router = new Router(base);
+		cut = router.newSubgraph(base.getId() + "-cut", Filters
+				.<Node> falseFilter(), new CutFilter());
+
+		build();
+	}
+
+	/**
+	 * Get the partition of a key.
+	 *
+	 * @param k
+	 *            a key
+	 * @return the partition, or null if no node has had this key
+	 */
+	public FilteredGraph getPartition(Object k) {
+		return partitions.get(k);
+	}
+
+	/**
+	 * Get all the partitions.
+	 *
+	 * @return an unmodifiable view of the partitions
+	 */
+	public Collection<FilteredGraph> getPartitions() {
+		return Collections.unmodifiableCollection(partitions.values());
+	}
+
+	/**
+	 * Get the count of partitions.
+	 *
+	 * @return count of partitions
+	 */
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * Move the node whose key attribute has been removed by the last event of
+	 * the base graph. It is otherwise moved at the next event of the base
+	 * graph. This method changes the partitions, so it has to be called by
+	 * the thread modifying the base graph.
+	 */
+	public void flush() {
+		router.refresh();
+	}
+
+	/**
+	 * Get the graph of the edges whose endpoints are in different
+	 * partitions, or in none. It contains no node.
+	 *
+	 * @return the cut edges
+	 */
+	public FilteredGraph getCutEdges() {
+		return cut;
+	}
+
+	/**
+	 * Destroy all the partitions and unregister the sink of the base graph.
+	 */
+	public void destroy() {
+		router.destroy();
+		partitions.clear();
+	}
+
+	/**
+	 * Fill the partitions : the key of each node is computed once, then nodes
+	 * and edges are included in their partition.
+	 */
+	private void build() {
+		Graph g = router.element;
+		int count = g.getNodeCount();
+		Object[] keys = new Object[count];
+		HashMap<Object, int[]> sizes = new HashMap<Object, int[]>();
+
+		for (int i = 0; i < count; i++) {
+			Node n = g.getNode(i);
+
+			if (!router.inBase(n))
+				continue;
+
+			Object k = key.getKey(n);
+			keys[i] = k;
+
+			if (k != null) {
+				int[] size = sizes.get(k);
+
+				if (size == null)
+					sizes.put(k, new int[] { 1 });
+				else
+					size[0]++;
+			}
+		}
+
+		for (Object k : sizes.keySet())
+			partition(k).ensureCapacity(sizes.get(k)[0], 0);
+
+		for (int i = 0; i < count; i++) {
+			if (keys[i] != null)
+				partitions.get(keys[i]).include(g.<Node> getNode(i));
+		}
+
+		for (int i = 0; i < g.getEdgeCount(); i++) {
+			Edge e = g.getEdge(i);
+			Object k0 = keys[e.getNode0().getIndex()];
+			Object k1 = keys[e.getNode1().getIndex()];
+
+			if (k0 != null && k0.equals(k1))
+				partitions.get(k0).include(e);
+			else
+				cut.include(e);
+		}
+	}
+
+	/**
+	 * Get the partition of a key, creating it if needed.
+	 */
+	private FilteredGraph partition(Object k) {
+		if (k == null)
+			return null;
+
+		FilteredGraph p = partitions.get(k);
+
+		if (p == null) {
+			p = router.newSubgraph(router.getBaseGraph().getId() + "-" + k,
+					new NodeFilter(k), new EdgeFilter(k));
+			partitions.put(k, p);
+		}
+
+		return p;
+	}
+
+	/**
+	 * Get the graph an edge belongs to, its partition or the cut edges.
+	 */
+	private FilteredGraph target(Edge e) {
+		Object k = key.getKey(e.getNode0());
+
+		if (k != null && k.equals(key.getKey(e.getNode1())))
+			return partition(k);
+
+		return cut;
+	}
+
+	/**
+	 * Move a node and its edges to their partitions after a change of its
+	 * key. Edges leave their previous partition before the node does, and
+	 * enter the new one after it.
+	 */
+	private void move(Node n) {
+		FilteredGraph from = router.subgraphOf(n);
+		FilteredGraph to = partition(key.getKey(n));
+
+		if (from == to)
+			return;
+
+		for (Edge e : n.getEachEdge()) {
+			FilteredGraph f = router.subgraphOf(e);
+
+			if (f != null && f != target(e))
+				f.notInclude(e);
+		}
+
+		if (from != null)
+			from.notInclude(n);
+
+		if (to != null)
+			to.include(n);
+
+		for (Edge e : n.getEachEdge())
+			target(e).include(e);
+	}
+
+	/**
+	 * The manager of the partitions, sending the additions of elements to
+	 * their partition only.
+	 */
+	private class Router extends SubgraphManager {
+
+		Router(Graph base) {
+			super(base);
+		}
+
+		/**
+		 * Tell if a node of the graph the sink is registered on is in the
+		 * graph partitioned.
+		 */
+		boolean inBase(Node n) {
+			Graph base = getBaseGraph();
+			return !(base instanceof FilteredGraph)
+					|| ((FilteredGraph) base).nodes.contains(n);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.graph.filtered.SubgraphManager#scansSubgraphs()
+		 */
+		boolean scansSubgraphs() {
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.graph.filtered.SubgraphManager#refilterPending()
+		 */
+		void refilterPending() {
+			super.refilterPending();
+
+			if (pendingNode != null) {
+				Node n = pendingNode;
+				pendingNode = null;
+				move(n);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.graph.filtered.SubgraphManager#refresh()
+		 */
+		void refresh() {
+			if (pendingNode != null
+					&& !pendingNode.hasAttribute(pendingAttribute)) {
+				Node n = pendingNode;
+				pendingNode = null;
+				move(n);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.graph.filtered.SubgraphManager#routeNodeAdded(java
+		 * .lang.String, long, java.lang.String)
+		 */
+		void routeNodeAdded(String sourceId, long timeId, String nodeId) {
+			refilterPending();
+
+			Node n = element.getNode(nodeId);
+			FilteredGraph p = n == null ? null : partition(key.getKey(n));
+
+			if (p != null)
+				p.filteredSink.nodeAdded(sourceId, timeId, nodeId);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.graph.filtered.SubgraphManager#routeEdgeAdded(java
+		 * .lang.String, long, java.lang.String, java.lang.String,
+		 * java.lang.String, boolean)
+		 */
+		void routeEdgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			refilterPending();
+
+			Edge e = element.getEdge(edgeId);
+
+			if (e != null)
+				target(e).filteredSink.edgeAdded(sourceId, timeId, edgeId,
+						fromNodeId, toNodeId, directed);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.graph.filtered.SubgraphManager#routeNode(int,
+		 * java.lang.String, long, java.lang.String, java.lang.String,
+		 * java.lang.Object, java.lang.Object)
+		 */
+		void routeNode(int type, String sourceId, long timeId, String nodeId,
+				String attribute, Object oldValue, Object newValue) {
+			super.routeNode(type, sourceId, timeId, nodeId, attribute,
+					oldValue, newValue);
+
+			if (!keyAttributes.contains(attribute))
+				return;
+
+			Node n = element.getNode(nodeId);
+
+			if (n == null || !inBase(n))
+				return;
+
+			if (type == NODE_ATTRIBUTE_REMOVED) {
+				pendingNode = n;
+				pendingAttribute = attribute;
+			} else
+				move(n);
+		}
+	}
+
+	/**
+	 * Filter of the nodes of a partition.
+	 */
+	private class NodeFilter implements Filter<Node> {
+		final Object k;
+
+		NodeFilter(Object k) {
+			this.k = k;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(Node n) {
+			return k.equals(key.getKey(n));
+		}
+	}
+
+	/**
+	 * Filter of the edges of a partition.
+	 */
+	private class EdgeFilter implements Filter<Edge> {
+		final Object k;
+
+		EdgeFilter(Object k) {
+			this.k = k;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(Edge e) {
+			return k.equals(key.getKey(e.getNode0()))
+					&& k.equals(key.getKey(e.getNode1()));
+		}
+	}
+
+	/**
+	 * Filter of the cut edges.
+	 */
+	private class CutFilter implements Filter<Edge> {
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.util.Filter#isAvailable(org.graphstream.graph.
+		 * Element)
+		 */
+		public boolean isAvailable(Edge e) {
+			Object k = key.getKey(e.getNode0());
+			return k == null || !k.equals(key.getKey(e.getNode1()));
+		}
+	}
+}
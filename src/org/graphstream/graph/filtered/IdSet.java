@@ -0,0 +1,177 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+
+/**
+ * A set of element ids, used to answer membership queries by id without
+ * looking up the base graph.
+ *
+ * Ids are stored in a single open-addressing table, probed linearly, so
+ * adding an id allocates nothing unless the table grows, and testing an id
+ * never allocates. The ids themselves are the strings of the base elements,
+ * they are not copied.
+ */
+final class IdSet {
+
+	/*
+	 * Marker of a slot whose id has been removed, compared by reference.
+	 */
+	private static final String REMOVED = new String("removed");
+
+	private String[] table;
+	private int size;
+
+	/*
+	 * Count of slots holding an id or the removed marker.
+	 */
+	private int used;
+
+	IdSet() {
+		table = new String[FilteredGraph.MIN_CAPACITY];
+		size = 0;
+		used = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Slot of an id in a table of a given length.
+	 */
+	private static int slot(String id, int length) {
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		return (h * 0x9E3779B9) & (length - 1);
+	}
+
+	/**
+	 * Test if the set contains an id.
+	 *
+	 * @param id
+	 *            an id, can be null
+	 * @return true if id is in the set
+	 */
+	boolean contains(String id) {
+		if (id == null || size == 0)
+			return false;
+
+		String[] t = table;
+		int mask = t.length - 1;
+
+		for (int i = slot(id, t.length);; i = (i + 1) & mask) {
+			String k = t[i];
+
+			if (k == null)
+				return false;
+
+			if (k != REMOVED && (k == id || k.equals(id)))
+				return true;
+		}
+	}
+
+	/**
+	 * Add an id to the set.
+	 *
+	 * @param id
+	 *            the id to add
+	 */
+	void add(String id) {
+		if ((used + 1) * 2 > table.length)
+			rehash(size + 1);
+
+		int mask = table.length - 1;
+		int free = -1;
+		int i = slot(id, table.length);
+
+		for (;; i = (i + 1) & mask) {
+			String k = table[i];
+
+			if (k == null)
+				break;
+
+			if (k == REMOVED) {
+				if (free < 0)
+					free = i;
+			} else if (k == id || k.equals(id))
+				return;
+		}
+
+		if (free < 0) {
+			free = i;
+			used++;
+		}
+
+		table[free] = id;
+		size++;
+	}
+
+	/**
+	 * Remove an id from the set.
+	 *
+	 * @param id
+	 *            the id to remove
+	 */
+	void remove(String id) {
+		if (size == 0)
+			return;
+
+		int mask = table.length - 1;
+
+		for (int i = slot(id, table.length);; i = (i + 1) & mask) {
+			String k = table[i];
+
+			if (k == null)
+				return;
+
+			if (k != REMOVED && (k == id || k.equals(id))) {
+				table[i] = REMOVED;
+				size--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove all the ids, shrinking the table.
+	 */
+	void clear() {
+		if (table.length > FilteredGraph.MIN_CAPACITY)
+			table = new String[FilteredGraph.MIN_CAPACITY];
+		else
+			Arrays.fill(table, null);
+
+		size = 0;
+		used = 0;
+	}
+
+	/**
+	 * Build the table again, dropping the removed markers, with room for a
+	 * given count of ids.
+	 */
+	private void rehash(int count) {
+		int length = FilteredGraph.MIN_CAPACITY;
+
+		while (length < count * 4)
+			length <<= 1;
+
+		String[] old = table;
+		table = new String[length];
+		used = 0;
+
+		int mask = length - 1;
+
+		for (String k : old) {
+			if (k == null || k == REMOVED)
+				continue;
+
+			int i = slot(k, length);
+
+			while (table[i] != null)
+				i = (i + 1) & mask;
+
+			table[i] = k;
+			used++;
+		}
+	}
+}
@@ -0,0 +1,714 @@
+package org.graphstream.graph.filtered;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.graphstream.graph.Element;
+
+/**
+ * Membership store of a filtered graph. Members are ordered by their index in
+ * the filtered graph, their position, and keyed by their index in the base
+ * graph : a bitset tells if a base index is a member and an array gives the
+ * position of this member.
+ *
+ * Everything known about a member is kept in arrays indexed by its position,
+ * so wrappers hold no state and are created only when needed. In eager mode,
+ * the wrapper of each member is created when the member is added and kept
+ * until it is removed. In lazy mode, wrappers are created when they are
+ * requested and kept through soft references, so the garbage collector can
+ * reclaim the ones that are not used anymore. A wrapper is never reclaimed
+ * while it is used, so a member has a single wrapper at a time.
+ *
+ * When recycling is enabled, wrappers of removed members are kept in a pool
+ * and given to the next members instead of creating new ones. Their
+ * generation is increased each time they are reused. Pooled wrappers are
+ * detached, so references kept on them are rejected instead of filtering the
+ * removed element, and once reused they can be told apart by their
+ * generation.
+ *
+ * Base graphs remove elements by moving their last element into the slot of
+ * the removed one. Such relocations are announced with
+ * {@link #removing(Element, Element)} before the removal and applied once the
+ * base graph has really moved the element.
+ *
+ * Subclasses storing more data about members override
+ * {@link #resize(int)}, {@link #move(int, int)} and {@link #release(int)}
+ * to keep their arrays in line with the positions.
+ *
+ * Once {@link #freeze()} has been called, members are also copied in a
+ * chunked copy-on-write array, and each position has an immutable record
+ * built by {@link #record(int)}. Positions whose record is out of date are
+ * marked with {@link #changed(int)}, and only these records are built again
+ * by the next freeze.
+ *
+ * @param <E>
+ *            type of the base elements
+ * @param <F>
+ *            type of the wrappers
+ */
+abstract class MembershipIndex<E extends Element, F extends FilteredElement<E>> {
+
+	private BitSet members;
+	private int[] positions;
+
+	/*
+	 * Ids of the members, to reject events on other elements without looking
+	 * up the base graph.
+	 */
+	private final IdSet ids;
+
+	private Element[] elements;
+	private Object[] wrappers;
+	private int size;
+
+	private boolean lazy;
+
+	/**
+	 * Maximal count of wrappers waiting to be reused.
+	 */
+	static final int POOL_CAPACITY = 1024;
+
+	private Object[] pool;
+	private int poolSize;
+
+	private Element[] pendingElements;
+	private int[] pendingFrom;
+	private int[] pendingTo;
+	private int pendingCount;
+
+	/*
+	 * Copies of the members and of their records, null until the first
+	 * freeze, and positions whose record has to be built again.
+	 */
+	private ChunkedArray frozenElements;
+	private ChunkedArray frozenRecords;
+	private BitSet changed;
+
+	MembershipIndex(int capacity, boolean lazy) {
+		members = new BitSet();
+		positions = new int[FilteredGraph.MIN_CAPACITY];
+		ids = new IdSet();
+		elements = new Element[Math.max(capacity, 0)];
+		wrappers = new Object[elements.length];
+		size = 0;
+
+		this.lazy = lazy;
+
+		pool = null;
+		poolSize = 0;
+
+		pendingElements = new Element[4];
+		pendingFrom = new int[4];
+		pendingTo = new int[4];
+		pendingCount = 0;
+
+		frozenElements = null;
+		frozenRecords = null;
+		changed = null;
+	}
+
+	/**
+	 * Create the wrapper of a base element.
+	 */
+	abstract F newWrapper(E e);
+
+	/**
+	 * Build the immutable record of the member at a position, stored by
+	 * {@link #freeze()}.
+	 */
+	abstract Object record(int position);
+
+	/**
+	 * Called once a member has been added at a position.
+	 */
+	void entered(int position) {
+	}
+
+	/**
+	 * Called before the member at a position is removed.
+	 */
+	void leaving(int position) {
+	}
+
+	/**
+	 * Number of members.
+	 *
+	 * @return count of members
+	 */
+	final int size() {
+		return size;
+	}
+
+	/**
+	 * Length of the arrays indexed by positions.
+	 *
+	 * @return the capacity
+	 */
+	final int capacity() {
+		return elements.length;
+	}
+
+	/**
+	 * Test if a base element is a member.
+	 *
+	 * @param e
+	 *            a base element, can be null
+	 * @return true if e is a member
+	 */
+	final boolean contains(Element e) {
+		return indexOf(e) >= 0;
+	}
+
+	/**
+	 * Test if an element of the base graph with a given id is a member. This
+	 * does not look up the base graph, nor allocate.
+	 *
+	 * @param id
+	 *            id of a base element, can be null
+	 * @return true if the element with this id is a member
+	 */
+	final boolean containsId(String id) {
+		return ids.contains(id);
+	}
+
+	/**
+	 * Get the position of a base element.
+	 *
+	 * @param e
+	 *            a base element, can be null
+	 * @return position of e, or -1 if e is not a member
+	 */
+	final int indexOf(Element e) {
+		if (e == null)
+			return -1;
+
+		if (pendingCount > 0)
+			settle();
+
+		int i = e.getIndex();
+
+		if (i < 0 || !members.get(i))
+			return -1;
+
+		int p = positions[i];
+
+		if (elements[p] == e)
+			return p;
+
+		if (elements[p].getIndex() == i)
+			return -1;
+
+		//
+		// The slot is out of date, some relocation has been missed.
+		//
+		resync();
+		i = e.getIndex();
+
+		if (!members.get(i))
+			return -1;
+
+		p = positions[i];
+		return elements[p] == e ? p : -1;
+	}
+
+	/**
+	 * Get the base element at a position.
+	 *
+	 * @param position
+	 *            a position lower than {@link #size()}
+	 * @return the base element
+	 */
+	@SuppressWarnings("unchecked")
+	final E element(int position) {
+		return (E) elements[position];
+	}
+
+	/**
+	 * Get the wrapper of a base element.
+	 *
+	 * @param e
+	 *            a base element, can be null
+	 * @return the wrapper of e, or null if e is not a member
+	 */
+	final F get(Element e) {
+		int p = indexOf(e);
+		return p < 0 ? null : wrapper(p);
+	}
+
+	/**
+	 * Get the wrapper of the member at a position, creating it if needed.
+	 *
+	 * @param position
+	 *            a position lower than {@link #size()}
+	 * @return the wrapper
+	 */
+	@SuppressWarnings("unchecked")
+	final F wrapper(int position) {
+		F f = cached(position);
+
+		if (f == null) {
+			if (poolSize > 0) {
+				f = (F) pool[--poolSize];
+				pool[poolSize] = null;
+				f.recycle(element(position));
+			} else
+				f = newWrapper(element(position));
+
+			f.setIndex(position);
+			wrappers[position] = lazy ? new SoftReference<F>(f) : f;
+		}
+
+		return f;
+	}
+
+	/**
+	 * Get the wrapper of the member at a position if it exists.
+	 */
+	@SuppressWarnings("unchecked")
+	final F cached(int position) {
+		Object w = wrappers[position];
+
+		if (w instanceof Reference<?>)
+			return ((Reference<F>) w).get();
+
+		return (F) w;
+	}
+
+	/**
+	 * Test if a wrapper is the current wrapper of a member.
+	 *
+	 * @param f
+	 *            a wrapper
+	 * @return true if f wraps a member, has not been replaced and is not
+	 *         waiting to be reused
+	 */
+	final boolean owns(F f) {
+		if (f.isDetached())
+			return false;
+
+		int p = indexOf(f.element);
+		return p >= 0 && cached(p) == f;
+	}
+
+	/**
+	 * Add a base element at the last position.
+	 *
+	 * @param e
+	 *            the base element, which must not be a member
+	 * @return the position of e
+	 */
+	final int add(E e) {
+		if (pendingCount > 0)
+			settle();
+
+		int i = e.getIndex();
+
+		if (i < positions.length && members.get(i)
+				&& elements[positions[i]].getIndex() != i)
+			resync();
+
+		if (size == elements.length)
+			resize(newCapacity(elements.length, size + 1));
+
+		int p = size++;
+		elements[p] = e;
+		put(e, p);
+		ids.add(e.getId());
+
+		if (changed != null) {
+			frozenElements.set(p, e);
+			changed.set(p);
+		}
+
+		if (!lazy)
+			wrapper(p);
+
+		entered(p);
+
+		return p;
+	}
+
+	/**
+	 * Map the index of a member to its position.
+	 */
+	private void put(Element e, int position) {
+		int i = e.getIndex();
+
+		if (i >= positions.length)
+			positions = Arrays.copyOf(positions, Math.max(i + 1,
+					positions.length * 2));
+
+		members.set(i);
+		positions[i] = position;
+	}
+
+	/**
+	 * Remove a base element. The last member is moved at the position of the
+	 * removed one.
+	 *
+	 * @param e
+	 *            a base element
+	 * @return the position e had, or -1 if e was not a member
+	 */
+	final int remove(Element e) {
+		int p = indexOf(e);
+
+		if (p < 0)
+			return -1;
+
+		leaving(p);
+		dispose(cached(p));
+		members.clear(e.getIndex());
+		ids.remove(e.getId());
+		size--;
+
+		if (p != size) {
+			move(size, p);
+			positions[elements[p].getIndex()] = p;
+		}
+
+		release(size);
+
+		return p;
+	}
+
+	/**
+	 * Announce that the base graph is about to remove an element, moving its
+	 * last element into the slot of the removed one. The removed element must
+	 * not be a member anymore.
+	 *
+	 * @param removed
+	 *            the element being removed
+	 * @param last
+	 *            the element at the last index of the base graph
+	 */
+	final void removing(Element removed, Element last) {
+		if (last == null || last == removed || !contains(last))
+			return;
+
+		if (pendingCount == pendingElements.length) {
+			int capacity = pendingCount * 2;
+
+			pendingElements = Arrays.copyOf(pendingElements, capacity);
+			pendingFrom = Arrays.copyOf(pendingFrom, capacity);
+			pendingTo = Arrays.copyOf(pendingTo, capacity);
+		}
+
+		pendingElements[pendingCount] = last;
+		pendingFrom[pendingCount] = last.getIndex();
+		pendingTo[pendingCount] = removed.getIndex();
+		pendingCount++;
+	}
+
+	/**
+	 * Enable or disable the lazy mode.
+	 *
+	 * @param on
+	 *            true to keep wrappers through soft references
+	 */
+	final void setLazy(boolean on) {
+		if (lazy == on)
+			return;
+
+		lazy = on;
+
+		for (int p = 0; p < size; p++) {
+			if (lazy) {
+				F f = cached(p);
+				wrappers[p] = f == null ? null : new SoftReference<F>(f);
+			} else
+				wrappers[p] = wrapper(p);
+		}
+	}
+
+	final boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Enable or disable the recycling of wrappers.
+	 *
+	 * @param on
+	 *            true to reuse the wrappers of removed members
+	 */
+	final void setRecycling(boolean on) {
+		if (on && pool == null)
+			pool = new Object[16];
+		else if (!on) {
+			pool = null;
+			poolSize = 0;
+		}
+	}
+
+	final boolean isRecycling() {
+		return pool != null;
+	}
+
+	/**
+	 * Detach the wrapper of a removed member, and keep it for a next member if
+	 * recycling is enabled.
+	 */
+	private void dispose(F f) {
+		if (f == null)
+			return;
+
+		f.setIndex(-1);
+
+		if (pool != null && poolSize < POOL_CAPACITY) {
+			if (poolSize == pool.length)
+				pool = Arrays.copyOf(pool, Math.min(POOL_CAPACITY,
+						pool.length * 2));
+
+			f.detach();
+			pool[poolSize++] = f;
+		}
+	}
+
+	/**
+	 * Ensure that the arrays indexed by positions can hold a given count of
+	 * members.
+	 *
+	 * @param capacity
+	 *            count of members
+	 */
+	final void ensureCapacity(int capacity) {
+		if (capacity > elements.length)
+			resize(newCapacity(elements.length, capacity));
+	}
+
+	/**
+	 * Shrink the arrays indexed by positions when less than a quarter of them
+	 * is used.
+	 */
+	final void compact() {
+		if (elements.length > FilteredGraph.MIN_CAPACITY
+				&& size < elements.length / 4)
+			resize(Math.max(FilteredGraph.MIN_CAPACITY, size * 2));
+	}
+
+	/**
+	 * Shrink all the storage to the current members.
+	 */
+	void trimToSize() {
+		if (pendingCount > 0)
+			settle();
+
+		resize(size);
+
+		int length = members.length();
+		BitSet tmp = new BitSet(length);
+		tmp.or(members);
+		members = tmp;
+
+		if (positions.length > length)
+			positions = Arrays.copyOf(positions, Math.max(length,
+					FilteredGraph.MIN_CAPACITY));
+	}
+
+	/**
+	 * Remove all members.
+	 */
+	void clear() {
+		for (int p = 0; p < size; p++) {
+			dispose(cached(p));
+			release(p);
+		}
+
+		members.clear();
+		positions = new int[FilteredGraph.MIN_CAPACITY];
+		ids.clear();
+		size = 0;
+
+		clearPending();
+	}
+
+	/**
+	 * Change the length of the arrays indexed by positions.
+	 *
+	 * @param capacity
+	 *            the new length, not lower than {@link #size()}
+	 */
+	void resize(int capacity) {
+		elements = Arrays.copyOf(elements, capacity);
+		wrappers = Arrays.copyOf(wrappers, capacity);
+	}
+
+	/**
+	 * Move the member at a position to another, free, position.
+	 *
+	 * @param from
+	 *            current position of the member
+	 * @param to
+	 *            new position of the member
+	 */
+	void move(int from, int to) {
+		elements[to] = elements[from];
+		wrappers[to] = wrappers[from];
+
+		if (changed != null) {
+			frozenElements.set(to, elements[to]);
+			changed.set(to);
+		}
+
+		F f = cached(to);
+
+		if (f != null)
+			f.setIndex(to);
+	}
+
+	/**
+	 * Clear a position which is not used anymore.
+	 *
+	 * @param position
+	 *            the free position
+	 */
+	void release(int position) {
+		elements[position] = null;
+		wrappers[position] = null;
+
+		if (changed != null) {
+			frozenElements.set(position, null);
+			changed.set(position);
+		}
+	}
+
+	/**
+	 * Mark the record of a position as out of date. This does nothing until
+	 * the first freeze.
+	 *
+	 * @param position
+	 *            a position
+	 */
+	final void changed(int position) {
+		if (changed != null)
+			changed.set(position);
+	}
+
+	/**
+	 * Build again the out of date records and get the current members and
+	 * records. The first call copies all the members, next ones only copy the
+	 * chunks which have changed since the previous call.
+	 *
+	 * @return the frozen members and records
+	 */
+	final Frozen freeze() {
+		if (changed == null) {
+			frozenElements = new ChunkedArray();
+			frozenRecords = new ChunkedArray();
+			changed = new BitSet();
+
+			for (int p = 0; p < size; p++)
+				frozenElements.set(p, elements[p]);
+
+			changed.set(0, size);
+		}
+
+		for (int p = changed.nextSetBit(0); p >= 0; p = changed
+				.nextSetBit(p + 1))
+			frozenRecords.set(p, p < size ? record(p) : null);
+
+		changed.clear();
+
+		return new Frozen(frozenElements.freeze(), frozenRecords.freeze(),
+				size);
+	}
+
+	static int newCapacity(int current, int needed) {
+		int capacity = Math.max(FilteredGraph.MIN_CAPACITY, current
+				+ (current >> 1));
+		return Math.max(capacity, needed);
+	}
+
+	/**
+	 * Apply the pending relocations that the base graph has done.
+	 */
+	private void settle() {
+		int done = 0;
+
+		while (done < pendingCount) {
+			Element e = pendingElements[done];
+			int from = pendingFrom[done];
+			int to = pendingTo[done];
+
+			if (e.getIndex() == from)
+				break;
+
+			if (e.getIndex() != to || !members.get(from)
+					|| elements[positions[from]] != e || members.get(to)) {
+				//
+				// The base graph did not behave as expected, rebuild the whole
+				// index.
+				//
+				resync();
+				return;
+			}
+
+			if (to >= positions.length)
+				positions = Arrays.copyOf(positions, Math.max(to + 1,
+						positions.length * 2));
+
+			positions[to] = positions[from];
+			members.set(to);
+			members.clear(from);
+
+			done++;
+		}
+
+		if (done > 0) {
+			System.arraycopy(pendingElements, done, pendingElements, 0,
+					pendingCount - done);
+			System.arraycopy(pendingFrom, done, pendingFrom, 0, pendingCount
+					- done);
+			System.arraycopy(pendingTo, done, pendingTo, 0, pendingCount
+					- done);
+
+			for (int i = pendingCount - done; i < pendingCount; i++)
+				pendingElements[i] = null;
+
+			pendingCount -= done;
+		}
+	}
+
+	/**
+	 * Rebuild the index from the current index of each member.
+	 */
+	private void resync() {
+		clearPending();
+		members.clear();
+
+		for (int p = 0; p < size; p++)
+			put(elements[p], p);
+	}
+
+	/**
+	 * Members and records at the time of a freeze. Chunks are never modified.
+	 */
+	static final class Frozen {
+		final Object[][] elements;
+		final Object[][] records;
+		final int size;
+
+		Frozen(Object[][] elements, Object[][] records, int size) {
+			this.elements = elements;
+			this.records = records;
+			this.size = size;
+		}
+
+		Element element(int position) {
+			return (Element) ChunkedArray.get(elements, position);
+		}
+
+		Object record(int position) {
+			return ChunkedArray.get(records, position);
+		}
+	}
+
+	private void clearPending() {
+		for (int i = 0; i < pendingCount; i++)
+			pendingElements[i] = null;
+
+		pendingCount = 0;
+	}
+}
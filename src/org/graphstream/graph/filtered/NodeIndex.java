@@ -0,0 +1,466 @@
+package org.graphstream.graph.filtered;
+
+import java.util.Arrays;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+
+/**
+ * Nodes of a filtered graph. Besides the membership, it stores the degrees and
+ * the adjacency of each node, so that they are known without creating the
+ * wrapper of the node.
+ *
+ * The adjacency of a node holds the positions of its included edges. It is
+ * divided in three sections : entering edges in [0, degree - outDegree),
+ * undirected edges and loops in [degree - outDegree, inDegree) and leaving
+ * edges in [inDegree, degree). So entering edges are in [0, inDegree) and
+ * leaving edges are in [degree - outDegree, degree).
+ */
+class NodeIndex extends MembershipIndex<Node, FilteredNode> {
+
+	private static final int I = 0;
+	private static final int IO = 1;
+	private static final int O = 2;
+
+	private static final int[] NO_EDGE = new int[0];
+
+	final FilteredGraph graph;
+
+	int[] inDegrees, outDegrees, degrees;
+	int[][] adjacency;
+
+	/*
+	 * Count of nodes of each degree, sum and bounds of the degrees, and
+	 * count of changes of these statistics.
+	 */
+	int[] degreeCounts;
+	long degreeSum;
+	int minDegree, maxDegree;
+	int degreeModCount;
+
+	/*
+	 * Count of included edges registered in all their endpoints, that is
+	 * edges whose endpoints are both included.
+	 */
+	int linkedEdges;
+
+	NodeIndex(FilteredGraph graph, int capacity, boolean lazy) {
+		super(capacity, lazy);
+
+		this.graph = graph;
+
+		inDegrees = new int[capacity()];
+		outDegrees = new int[capacity()];
+		degrees = new int[capacity()];
+		adjacency = new int[capacity()][];
+
+		degreeCounts = new int[16];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.filtered.MembershipIndex#newWrapper(org.graphstream
+	 * .graph.Element)
+	 */
+	FilteredNode newWrapper(Node n) {
+		return graph.newFilteredNode(n);
+	}
+
+	/**
+	 * The record of a node holds its in-degree, its out-degree and then its
+	 * adjacency.
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#record(int)
+	 */
+	Object record(int position) {
+		int degree = degrees[position];
+		int[] record = new int[degree + 2];
+
+		record[0] = inDegrees[position];
+		record[1] = outDegrees[position];
+
+		if (degree > 0)
+			System.arraycopy(adjacency[position], 0, record, 2, degree);
+
+		return record;
+	}
+
+	/**
+	 * Add an included edge to the adjacency of a node.
+	 *
+	 * @param node
+	 *            position of the node
+	 * @param edge
+	 *            position of the edge
+	 */
+	void register(int node, int edge) {
+		int iDegree = inDegrees[node];
+		int oDegree = outDegrees[node];
+		int ioDegree = degrees[node];
+		int ioStart = ioDegree - oDegree;
+
+		int[] adj = adjacency[node];
+
+		if (adj == null || ioDegree >= adj.length) {
+			adj = adj == null ? new int[4] : Arrays.copyOf(adj,
+					adj.length * 2);
+			adjacency[node] = adj;
+		}
+
+		switch (typeOf(node, edge)) {
+		case I:
+			shift(node, iDegree, ioDegree);
+			shift(node, ioStart, iDegree);
+			put(node, edge, ioStart);
+			iDegree++;
+			break;
+		case IO:
+			shift(node, iDegree, ioDegree);
+			put(node, edge, iDegree);
+			iDegree++;
+			oDegree++;
+			break;
+		case O:
+			put(node, edge, ioDegree);
+			oDegree++;
+			break;
+		}
+
+		if (registeredInOpposite(node, edge))
+			linkedEdges++;
+
+		inDegrees[node] = iDegree;
+		outDegrees[node] = oDegree;
+		degrees[node] = ioDegree + 1;
+		degreeChanged(ioDegree, ioDegree + 1);
+
+		if (!isLazy())
+			link(node, edge, wrapper(node));
+
+		changed(node);
+		graph.edges.changed(edge);
+	}
+
+	/**
+	 * Remove an included edge from the adjacency of a node.
+	 *
+	 * @param node
+	 *            position of the node
+	 * @param edge
+	 *            position of the edge
+	 */
+	void unregister(int node, int edge) {
+		int iDegree = inDegrees[node];
+		int oDegree = outDegrees[node];
+		int ioDegree = degrees[node];
+		int ioStart = ioDegree - oDegree;
+		int p = slotOf(node, edge);
+
+		assert adjacency[node][p] == edge;
+
+		if (registeredInOpposite(node, edge))
+			linkedEdges--;
+
+		switch (typeOf(node, edge)) {
+		case I:
+			shift(node, ioStart - 1, p);
+			shift(node, iDegree - 1, ioStart - 1);
+			shift(node, ioDegree - 1, iDegree - 1);
+			iDegree--;
+			break;
+		case IO:
+			shift(node, iDegree - 1, p);
+			shift(node, ioDegree - 1, iDegree - 1);
+			iDegree--;
+			oDegree--;
+			break;
+		case O:
+			shift(node, ioDegree - 1, p);
+			oDegree--;
+			break;
+		}
+
+		inDegrees[node] = iDegree;
+		outDegrees[node] = oDegree;
+		degrees[node] = ioDegree - 1;
+		degreeChanged(ioDegree, ioDegree - 1);
+
+		if (!isLazy())
+			link(node, edge, null);
+
+		changed(node);
+		graph.edges.changed(edge);
+	}
+
+	/**
+	 * Move a node from a degree to the next or the previous one in the
+	 * statistics. Bounds only move by one, toward the new degree.
+	 */
+	private void degreeChanged(int from, int to) {
+		if (to == degreeCounts.length)
+			degreeCounts = Arrays.copyOf(degreeCounts, to * 2);
+
+		degreeCounts[from]--;
+		degreeCounts[to]++;
+		degreeSum += to - from;
+		degreeModCount++;
+
+		if (to > maxDegree || from == maxDegree && degreeCounts[from] == 0)
+			maxDegree = to;
+
+		if (to < minDegree || from == minDegree && degreeCounts[from] == 0)
+			minDegree = to;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#entered(int)
+	 */
+	void entered(int position) {
+		degreeCounts[0]++;
+		minDegree = 0;
+		degreeModCount++;
+	}
+
+	/**
+	 * Remove the node from the statistics and from the wrappers of its edges.
+	 * Bounds left without node are searched again among the degrees.
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#leaving(int)
+	 */
+	void leaving(int position) {
+		int degree = degrees[position];
+		int[] adj = adjacency[position];
+
+		for (int i = 0; i < degree; i++) {
+			if (registeredInOpposite(position, adj[i]))
+				linkedEdges--;
+
+			if (!isLazy())
+				link(position, adj[i], null);
+		}
+
+		degreeCounts[degree]--;
+		degreeSum -= degree;
+		degreeModCount++;
+
+		if (size() == 1) {
+			minDegree = 0;
+			maxDegree = 0;
+			return;
+		}
+
+		while (degreeCounts[maxDegree] == 0)
+			maxDegree--;
+
+		while (degreeCounts[minDegree] == 0)
+			minDegree++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#clear()
+	 */
+	void clear() {
+		super.clear();
+
+		degreeCounts = new int[16];
+		degreeSum = 0;
+		minDegree = 0;
+		maxDegree = 0;
+		degreeModCount++;
+		linkedEdges = 0;
+	}
+
+	/**
+	 * Look for an included edge of a node, in a section of its adjacency,
+	 * whose opposite is a given node of the base graph.
+	 *
+	 * @return position of the edge, or -1 if there is no such edge
+	 */
+	int locate(int node, Node target, int from, int to) {
+		if (target == null)
+			return -1;
+
+		Node n = element(node);
+		int[] adj = adjacency[node];
+
+		for (int i = from; i < to; i++) {
+			if (graph.edges.element(adj[i]).getOpposite(n) == target)
+				return adj[i];
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Position of the opposite of the edge in a slot of the adjacency of a
+	 * node, or -1 if it is not included.
+	 */
+	int opposite(int node, int slot) {
+		Edge e = graph.edges.element(adjacency[node][slot]);
+		return indexOf(e.getOpposite(element(node)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#trimToSize()
+	 */
+	void trimToSize() {
+		super.trimToSize();
+
+		for (int p = 0; p < size(); p++) {
+			if (adjacency[p] != null && adjacency[p].length > degrees[p])
+				adjacency[p] = degrees[p] == 0 ? null : Arrays.copyOf(
+						adjacency[p], degrees[p]);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#resize(int)
+	 */
+	void resize(int capacity) {
+		super.resize(capacity);
+
+		inDegrees = Arrays.copyOf(inDegrees, capacity);
+		outDegrees = Arrays.copyOf(outDegrees, capacity);
+		degrees = Arrays.copyOf(degrees, capacity);
+		adjacency = Arrays.copyOf(adjacency, capacity);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#move(int, int)
+	 */
+	void move(int from, int to) {
+		//
+		// Edges of the removed node and of the moved one see their endpoint
+		// change.
+		//
+		edgesChanged(to);
+		edgesChanged(from);
+
+		super.move(from, to);
+
+		inDegrees[to] = inDegrees[from];
+		outDegrees[to] = outDegrees[from];
+		degrees[to] = degrees[from];
+		adjacency[to] = adjacency[from];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.MembershipIndex#release(int)
+	 */
+	void release(int position) {
+		edgesChanged(position);
+		super.release(position);
+
+		inDegrees[position] = 0;
+		outDegrees[position] = 0;
+		degrees[position] = 0;
+		adjacency[position] = null;
+	}
+
+	/**
+	 * Adjacency of a node, never null.
+	 */
+	int[] adjacencyOf(int node) {
+		int[] adj = adjacency[node];
+		return adj == null ? NO_EDGE : adj;
+	}
+
+	/**
+	 * Set the endpoint held by the wrapper of an edge for one of its
+	 * endpoints, in eager mode.
+	 */
+	private void link(int node, int edge, FilteredNode n) {
+		FilteredEdge f = graph.edges.wrapper(edge);
+		Edge e = graph.edges.element(edge);
+		Node target = element(node);
+
+		if (e.getNode0() == target)
+			f.node0 = n;
+
+		if (e.getNode1() == target)
+			f.node1 = n;
+	}
+
+	/**
+	 * Mark the records of the edges of a node as out of date.
+	 */
+	private void edgesChanged(int node) {
+		int[] adj = adjacency[node];
+
+		for (int i = 0; i < degrees[node]; i++)
+			graph.edges.changed(adj[i]);
+	}
+
+	/**
+	 * Whether an edge registered in a node is also registered in its other
+	 * endpoint. A loop has no other endpoint.
+	 */
+	private boolean registeredInOpposite(int node, int edge) {
+		Edge e = graph.edges.element(edge);
+
+		if (e.isLoop())
+			return true;
+
+		int q = indexOf(e.getOpposite(element(node)));
+
+		if (q < 0)
+			return false;
+
+		int s = slotOf(q, edge);
+		return s < degrees[q] && adjacency[q][s] == edge;
+	}
+
+	private int typeOf(int node, int edge) {
+		Edge e = graph.edges.element(edge);
+
+		if (!e.isDirected() || e.isLoop())
+			return IO;
+
+		return e.getSourceNode() == element(node) ? O : I;
+	}
+
+	/**
+	 * Slot of an edge in the adjacency of one of its endpoints.
+	 */
+	private int slotOf(int node, int edge) {
+		EdgeIndex edges = graph.edges;
+
+		if (edges.element(edge).getNode0() == element(node))
+			return edges.slots0[edge];
+
+		return edges.slots1[edge];
+	}
+
+	private void put(int node, int edge, int slot) {
+		EdgeIndex edges = graph.edges;
+
+		adjacency[node][slot] = edge;
+
+		if (edges.element(edge).getNode0() == element(node))
+			edges.slots0[edge] = slot;
+		else
+			edges.slots1[edge] = slot;
+	}
+
+	/**
+	 * Move the edge in a slot of the adjacency of a node to another slot.
+	 */
+	private void shift(int node, int from, int to) {
+		if (from != to)
+			put(node, adjacency[node][from], to);
+	}
+}
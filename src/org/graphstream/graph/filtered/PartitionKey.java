@@ -0,0 +1,28 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.graph.Node;
+
+/**
+ * The key giving the partition of a node in a {@link GraphPartition}.
+ *
+ * Keys are compared with {@link Object#equals(Object)}. A node whose key is
+ * null is in no partition.
+ */
+public interface PartitionKey {
+	/**
+	 * Get the key of a node.
+	 *
+	 * @param n
+	 *            a node of the base graph
+	 * @return the key of the partition of n, or null
+	 */
+	Object getKey(Node n);
+
+	/**
+	 * Keys of the attributes the key of a node depends on. A change of one of
+	 * these attributes moves the node to its new partition.
+	 *
+	 * @return the attribute keys
+	 */
+	String[] getAttributeKeys();
+}
@@ -0,0 +1,264 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.stream.AttributeSink;
+import org.graphstream.stream.ElementSink;
+import org.graphstream.stream.Sink;
+
+/**
+ * Sink registered in place of a sink receiving only the node and edge
+ * attribute events of some keys. Other events are forwarded as they are.
+ *
+ * The answer of the key filter is kept for the last keys seen, indexed by the
+ * identity of the key strings. Keys are usually the same string instances from
+ * one event to the next, so most events are matched without hashing nor
+ * comparing strings.
+ */
+class ProjectedSink implements Sink {
+
+	/*
+	 * Count of keys whose answer is kept, a power of two.
+	 */
+	private static final int CACHE_SIZE = 64;
+
+	final AttributeSink target;
+	private final AttributeKeyFilter filter;
+
+	private final String[] seen;
+	private final boolean[] accepted;
+
+	ProjectedSink(AttributeSink target, AttributeKeyFilter filter) {
+		this.target = target;
+		this.filter = filter;
+
+		seen = new String[CACHE_SIZE];
+		accepted = new boolean[CACHE_SIZE];
+	}
+
+	/**
+	 * Filter accepting a set of keys. Keys are interned, so the keys of
+	 * events which are constant strings are found by reference.
+	 */
+	static AttributeKeyFilter keys(String... keys) {
+		final String[] interned = new String[keys.length];
+
+		for (int i = 0; i < keys.length; i++)
+			interned[i] = keys[i].intern();
+
+		return new AttributeKeyFilter() {
+			public boolean isAvailable(String key) {
+				for (String k : interned) {
+					if (k == key)
+						return true;
+				}
+
+				for (String k : interned) {
+					if (k.equals(key))
+						return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	private boolean accept(String key) {
+		int i = System.identityHashCode(key) & (CACHE_SIZE - 1);
+
+		if (seen[i] == key)
+			return accepted[i];
+
+		boolean a = filter.isAvailable(key);
+		seen[i] = key;
+		accepted[i] = a;
+
+		return a;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String
+	 * , long, java.lang.String, java.lang.Object)
+	 */
+	public void graphAttributeAdded(String sourceId, long timeId,
+			String attribute, Object value) {
+		target.graphAttributeAdded(sourceId, timeId, attribute, value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.
+	 * String, long, java.lang.String, java.lang.Object, java.lang.Object)
+	 */
+	public void graphAttributeChanged(String sourceId, long timeId,
+			String attribute, Object oldValue, Object newValue) {
+		target.graphAttributeChanged(sourceId, timeId, attribute, oldValue,
+				newValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.
+	 * String, long, java.lang.String)
+	 */
+	public void graphAttributeRemoved(String sourceId, long timeId,
+			String attribute) {
+		target.graphAttributeRemoved(sourceId, timeId, attribute);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String,
+	 * long, java.lang.String, java.lang.String, java.lang.Object)
+	 */
+	public void nodeAttributeAdded(String sourceId, long timeId, String nodeId,
+			String attribute, Object value) {
+		if (accept(attribute))
+			target.nodeAttributeAdded(sourceId, timeId, nodeId, attribute,
+					value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String
+	 * , long, java.lang.String, java.lang.String, java.lang.Object,
+	 * java.lang.Object)
+	 */
+	public void nodeAttributeChanged(String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		if (accept(attribute))
+			target.nodeAttributeChanged(sourceId, timeId, nodeId, attribute,
+					oldValue, newValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String
+	 * , long, java.lang.String, java.lang.String)
+	 */
+	public void nodeAttributeRemoved(String sourceId, long timeId,
+			String nodeId, String attribute) {
+		if (accept(attribute))
+			target.nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String,
+	 * long, java.lang.String, java.lang.String, java.lang.Object)
+	 */
+	public void edgeAttributeAdded(String sourceId, long timeId, String edgeId,
+			String attribute, Object value) {
+		if (accept(attribute))
+			target.edgeAttributeAdded(sourceId, timeId, edgeId, attribute,
+					value);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String
+	 * , long, java.lang.String, java.lang.String, java.lang.Object,
+	 * java.lang.Object)
+	 */
+	public void edgeAttributeChanged(String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		if (accept(attribute))
+			target.edgeAttributeChanged(sourceId, timeId, edgeId, attribute,
+					oldValue, newValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String
+	 * , long, java.lang.String, java.lang.String)
+	 */
+	public void edgeAttributeRemoved(String sourceId, long timeId,
+			String edgeId, String attribute) {
+		if (accept(attribute))
+			target.edgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+	}
+
+	/*
+	 * Element events are only received when the target has been registered
+	 * as a whole sink.
+	 */
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+	 * java.lang.String)
+	 */
+	public void nodeAdded(String sourceId, long timeId, String nodeId) {
+		((ElementSink) target).nodeAdded(sourceId, timeId, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+		((ElementSink) target).nodeRemoved(sourceId, timeId, nodeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long,
+	 * java.lang.String, java.lang.String, java.lang.String, boolean)
+	 */
+	public void edgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		((ElementSink) target).edgeAdded(sourceId, timeId, edgeId, fromNodeId,
+				toNodeId, directed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+	 * long, java.lang.String)
+	 */
+	public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+		((ElementSink) target).edgeRemoved(sourceId, timeId, edgeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+	 * long)
+	 */
+	public void graphCleared(String sourceId, long timeId) {
+		((ElementSink) target).graphCleared(sourceId, timeId);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+	 * long, double)
+	 */
+	public void stepBegins(String sourceId, long timeId, double step) {
+		((ElementSink) target).stepBegins(sourceId, timeId, step);
+	}
+}
@@ -0,0 +1,165 @@
+package org.graphstream.graph.filtered;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+
+/**
+ * Edge of a {@link FilteredGraphSnapshot}. Endpoints are read from the record
+ * of the edge in the snapshot, an endpoint which is not in the snapshot is
+ * null.
+ */
+class SnapshotEdge extends FilteredElement<Edge> implements Edge {
+
+	final FilteredGraphSnapshot snapshot;
+
+	/*
+	 * Snapshot elements can be created by any thread reading the snapshot,
+	 * so they use their own final fields instead of the fields of
+	 * FilteredElement, which change when wrappers are recycled.
+	 */
+	private final Edge base;
+	private final int position;
+
+	SnapshotEdge(Edge target, FilteredGraphSnapshot snapshot, int position) {
+		super(target);
+
+		this.snapshot = snapshot;
+		this.base = target;
+		this.position = position;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredElement#target()
+	 */
+	@Override
+	Edge target() {
+		return base;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredElement#getIndex()
+	 */
+	@Override
+	public int getIndex() {
+		return position;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#getNode0()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode0() {
+		return (T) snapshot.node(snapshot.edgeRecord(getIndex())[0]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#getNode1()
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Node> T getNode1() {
+		return (T) snapshot.node(snapshot.edgeRecord(getIndex())[1]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#getOpposite(org.graphstream.graph.Node)
+	 */
+	public <T extends Node> T getOpposite(Node node) {
+		if (node == null)
+			return null;
+
+		Node n = snapshot.unwrap(node);
+
+		if (n == base.getNode0())
+			return getNode1();
+
+		if (n == base.getNode1())
+			return getNode0();
+
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#getSourceNode()
+	 */
+	public <T extends Node> T getSourceNode() {
+		return base.getSourceNode() == base.getNode0() ? this
+				.<T> getNode0() : this.<T> getNode1();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#getTargetNode()
+	 */
+	public <T extends Node> T getTargetNode() {
+		return base.getTargetNode() == base.getNode1() ? this
+				.<T> getNode1() : this.<T> getNode0();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#isDirected()
+	 */
+	public boolean isDirected() {
+		return base.isDirected();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Edge#isLoop()
+	 */
+	public boolean isLoop() {
+		return base.isLoop();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+
+		if (!(o instanceof SnapshotEdge))
+			return false;
+
+		SnapshotEdge e = (SnapshotEdge) o;
+		return e.snapshot == snapshot && e.getIndex() == getIndex();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return base.hashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getId();
+	}
+}
@@ -0,0 +1,705 @@
+package org.graphstream.graph.filtered;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.graphstream.graph.BreadthFirstIterator;
+import org.graphstream.graph.DepthFirstIterator;
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * Node of a {@link FilteredGraphSnapshot}. Degrees and edges are read from
+ * the record of the node in the snapshot.
+ */
+class SnapshotNode extends FilteredElement<Node> implements Node {
+
+	final FilteredGraphSnapshot snapshot;
+
+	/*
+	 * Snapshot elements can be created by any thread reading the snapshot,
+	 * so they use their own final fields instead of the fields of
+	 * FilteredElement, which change when wrappers are recycled.
+	 */
+	private final Node base;
+	private final int position;
+
+	SnapshotNode(Node target, FilteredGraphSnapshot snapshot, int position) {
+		super(target);
+
+		this.snapshot = snapshot;
+		this.base = target;
+		this.position = position;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredElement#target()
+	 */
+	@Override
+	Node target() {
+		return base;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.filtered.FilteredElement#getIndex()
+	 */
+	@Override
+	public int getIndex() {
+		return position;
+	}
+
+	private int[] record() {
+		return snapshot.nodeRecord(getIndex());
+	}
+
+	/**
+	 * Look for an edge in the slots [from, to) of the record whose opposite is
+	 * a given node of the base graph.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Edge> T locateEdge(int[] record, Node target,
+			int from, int to) {
+		if (target == null)
+			return null;
+
+		for (int i = from; i < to; i++) {
+			SnapshotEdge e = snapshot.edge(record[i]);
+
+			if (e.getFilteredElement().getOpposite(base) == target)
+				return (T) e;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Look for an edge in the slots [from, to) of the record whose opposite
+	 * has a given id.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Edge> T locateEdge(int[] record, String id, int from,
+			int to) {
+		for (int i = from; i < to; i++) {
+			SnapshotEdge e = snapshot.edge(record[i]);
+
+			if (e.getFilteredElement().getOpposite(base).getId().equals(id))
+				return (T) e;
+		}
+
+		return null;
+	}
+
+	private Node unfilteredNode(int index) {
+		return ((SnapshotNode) snapshot.getNode(index)).getFilteredElement();
+	}
+
+	/*
+	 * Sections of the record : degrees are followed by the entering edges in
+	 * [2, enteringEnd) and the leaving edges in [leavingStart, length).
+	 */
+
+	private static int enteringEnd(int[] record) {
+		return 2 + record[0];
+	}
+
+	private static int leavingStart(int[] record) {
+		return record.length - record[1];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getGraph()
+	 */
+	public Graph getGraph() {
+		return snapshot;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getDegree()
+	 */
+	public int getDegree() {
+		return record().length - 2;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getInDegree()
+	 */
+	public int getInDegree() {
+		return record()[0];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getOutDegree()
+	 */
+	public int getOutDegree() {
+		return record()[1];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getBreadthFirstIterator()
+	 */
+	public <T extends Node> Iterator<T> getBreadthFirstIterator() {
+		return new BreadthFirstIterator<T>(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getBreadthFirstIterator(boolean)
+	 */
+	public <T extends Node> Iterator<T> getBreadthFirstIterator(boolean directed) {
+		return new BreadthFirstIterator<T>(this, directed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getDepthFirstIterator()
+	 */
+	public <T extends Node> Iterator<T> getDepthFirstIterator() {
+		return new DepthFirstIterator<T>(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getDepthFirstIterator(boolean)
+	 */
+	public <T extends Node> Iterator<T> getDepthFirstIterator(boolean directed) {
+		return new DepthFirstIterator<T>(this, directed);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEdge(int i) {
+		int[] record = record();
+
+		if (i < 0 || i >= record.length - 2)
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) snapshot.edge(record[2 + i]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEnteringEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getEnteringEdge(int i) {
+		int[] record = record();
+
+		if (i < 0 || i >= record[0])
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) snapshot.edge(record[2 + i]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getLeavingEdge(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Edge> T getLeavingEdge(int i) {
+		int[] record = record();
+
+		if (i < 0 || i >= record[1])
+			throw new IndexOutOfBoundsException("Node \"" + getId() + "\""
+					+ " has no edge " + i);
+
+		return (T) snapshot.edge(record[leavingStart(record) + i]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeBetween(java.lang.String)
+	 */
+	public <T extends Edge> T getEdgeBetween(String id) {
+		int[] record = record();
+		return locateEdge(record, id, 2, record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.Node#getEdgeBetween(org.graphstream.graph.Node)
+	 */
+	public <T extends Edge> T getEdgeBetween(Node node) {
+		int[] record = record();
+		return locateEdge(record, snapshot.unwrap(node), 2,
+				record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeBetween(int)
+	 */
+	public <T extends Edge> T getEdgeBetween(int index)
+			throws IndexOutOfBoundsException {
+		int[] record = record();
+		return locateEdge(record, unfilteredNode(index), 2,
+				record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeFrom(java.lang.String)
+	 */
+	public <T extends Edge> T getEdgeFrom(String id) {
+		int[] record = record();
+		return locateEdge(record, id, 2, enteringEnd(record));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeFrom(org.graphstream.graph.Node)
+	 */
+	public <T extends Edge> T getEdgeFrom(Node node) {
+		int[] record = record();
+		return locateEdge(record, snapshot.unwrap(node), 2,
+				enteringEnd(record));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeFrom(int)
+	 */
+	public <T extends Edge> T getEdgeFrom(int index)
+			throws IndexOutOfBoundsException {
+		int[] record = record();
+		return locateEdge(record, unfilteredNode(index), 2,
+				enteringEnd(record));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeToward(java.lang.String)
+	 */
+	public <T extends Edge> T getEdgeToward(String id) {
+		int[] record = record();
+		return locateEdge(record, id, leavingStart(record), record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeToward(org.graphstream.graph.Node)
+	 */
+	public <T extends Edge> T getEdgeToward(Node node) {
+		int[] record = record();
+		return locateEdge(record, snapshot.unwrap(node), leavingStart(record),
+				record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeToward(int)
+	 */
+	public <T extends Edge> T getEdgeToward(int index)
+			throws IndexOutOfBoundsException {
+		int[] record = record();
+		return locateEdge(record, unfilteredNode(index), leavingStart(record),
+				record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeBetween(java.lang.String)
+	 */
+	public boolean hasEdgeBetween(String id) {
+		return getEdgeBetween(id) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.graphstream.graph.Node#hasEdgeBetween(org.graphstream.graph.Node)
+	 */
+	public boolean hasEdgeBetween(Node node) {
+		return getEdgeBetween(node) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeBetween(int)
+	 */
+	public boolean hasEdgeBetween(int index) throws IndexOutOfBoundsException {
+		return getEdgeBetween(index) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeFrom(java.lang.String)
+	 */
+	public boolean hasEdgeFrom(String id) {
+		return getEdgeFrom(id) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeFrom(org.graphstream.graph.Node)
+	 */
+	public boolean hasEdgeFrom(Node node) {
+		return getEdgeFrom(node) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeFrom(int)
+	 */
+	public boolean hasEdgeFrom(int index) throws IndexOutOfBoundsException {
+		return getEdgeFrom(index) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeToward(java.lang.String)
+	 */
+	public boolean hasEdgeToward(String id) {
+		return getEdgeToward(id) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeToward(org.graphstream.graph.Node)
+	 */
+	public boolean hasEdgeToward(Node node) {
+		return getEdgeToward(node) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#hasEdgeToward(int)
+	 */
+	public boolean hasEdgeToward(int index) throws IndexOutOfBoundsException {
+		return getEdgeToward(index) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEdgeIterator() {
+		int[] record = record();
+		return new RecordIterator<T>(record, 2, record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEnteringEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getEnteringEdgeIterator() {
+		int[] record = record();
+		return new RecordIterator<T>(record, 2, enteringEnd(record));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getLeavingEdgeIterator()
+	 */
+	public <T extends Edge> Iterator<T> getLeavingEdgeIterator() {
+		int[] record = record();
+		return new RecordIterator<T>(record, leavingStart(record), record.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEachEdge()
+	 */
+	public <T extends Edge> Iterable<T> getEachEdge() {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return getEdgeIterator();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEachEnteringEdge()
+	 */
+	public <T extends Edge> Iterable<T> getEachEnteringEdge() {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return getEnteringEdgeIterator();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEachLeavingEdge()
+	 */
+	public <T extends Edge> Iterable<T> getEachLeavingEdge() {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return getLeavingEdgeIterator();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEdgeSet()
+	 */
+	public <T extends Edge> Collection<T> getEdgeSet() {
+		return new AbstractCollection<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return getEdgeIterator();
+			}
+
+			@Override
+			public int size() {
+				return getDegree();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getEnteringEdgeSet()
+	 */
+	public <T extends Edge> Collection<T> getEnteringEdgeSet() {
+		return new AbstractCollection<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return getEnteringEdgeIterator();
+			}
+
+			@Override
+			public int size() {
+				return getInDegree();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getLeavingEdgeSet()
+	 */
+	public <T extends Edge> Collection<T> getLeavingEdgeSet() {
+		return new AbstractCollection<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return getLeavingEdgeIterator();
+			}
+
+			@Override
+			public int size() {
+				return getOutDegree();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.graphstream.graph.Node#getNeighborNodeIterator()
+	 */
+	public <T extends Node> Iterator<T> getNeighborNodeIterator() {
+		return new NeighborIterator<T>(record());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	public Iterator<Edge> iterator() {
+		return getEdgeIterator();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+
+		if (!(o instanceof SnapshotNode))
+			return false;
+
+		SnapshotNode n = (SnapshotNode) o;
+		return n.snapshot == snapshot && n.getIndex() == getIndex();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return base.hashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getId();
+	}
+
+	/**
+	 * Iterator over a section of the record of this node.
+	 */
+	private class RecordIterator<T extends Edge> implements Iterator<T> {
+		final int[] record;
+		int next;
+		final int end;
+
+		RecordIterator(int[] record, int from, int to) {
+			this.record = record;
+			next = from;
+			end = to;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next >= end)
+				throw new NoSuchElementException();
+
+			return (T) snapshot.edge(record[next++]);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+
+	/**
+	 * Iterator over the opposite nodes of the edges of this node, skipping
+	 * the opposites which are not in the snapshot.
+	 */
+	private class NeighborIterator<T extends Node> implements Iterator<T> {
+		final int[] record;
+		int slot;
+		int next;
+
+		NeighborIterator(int[] record) {
+			this.record = record;
+			slot = 2;
+			lookup();
+		}
+
+		private void lookup() {
+			next = -1;
+
+			while (next < 0 && slot < record.length) {
+				int[] ends = snapshot.edgeRecord(record[slot++]);
+				next = ends[0] == getIndex() ? ends[1] : ends[0];
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return next >= 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (next < 0)
+				throw new NoSuchElementException();
+
+			int n = next;
+			lookup();
+
+			return (T) snapshot.node(n);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"this iterator does not allow removing");
+		}
+	}
+}
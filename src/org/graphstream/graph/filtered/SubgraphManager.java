@@ -0,0 +1,809 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.stream.Sink;
+import org.graphstream.util.Filter;
+
+/**
+ * A set of filtered graphs over the same base graph, sharing a single sink of
+ * the base graph.
+ *
+ * Each subgraph has a slot, and each element of the base graph a mask of the
+ * slots of the subgraphs containing it. An event on an element is only sent to
+ * these subgraphs, and to the subgraphs whose filters depend on the changed
+ * attribute. Only the addition of elements, the steps and the clearing of the
+ * base graph are sent to all the subgraphs, since their filters have to be
+ * evaluated.
+ *
+ * Slots are reused, so creating and destroying subgraphs does not change the
+ * sinks of the base graph nor grow the masks.
+ */
+public class SubgraphManager {
+
+	private final Graph base;
+	final Graph element;
+	private final ManagerSink sink;
+
+	/*
+	 * Subgraphs by slot, null for free slots.
+	 */
+	private FilteredGraph[] subgraphs;
+	private int count;
+
+	/*
+	 * Count of words of the masks, and masks of the elements of the base
+	 * graph, by index : the mask of the element at index i is in [i * words,
+	 * (i + 1) * words).
+	 */
+	private int words;
+	private long[] nodeMasks;
+	private long[] edgeMasks;
+
+	/*
+	 * Masks of the subgraphs whose filters depend on an attribute, by key,
+	 * computed again when a filter changes.
+	 */
+	private HashMap<String, long[]> nodeWatchers;
+	private HashMap<String, long[]> edgeWatchers;
+	private boolean watchersChanged;
+
+	/*
+	 * Subgraphs which have been notified of the removal of an attribute their
+	 * filters depend on, evaluated at the next event.
+	 */
+	private final ArrayList<FilteredGraph> pending;
+
+	/**
+	 * Create a manager of subgraphs of a graph. If this graph is a filtered
+	 * graph, subgraphs are nested in it and the sink is registered on its base
+	 * graph.
+	 *
+	 * @param base
+	 *            the graph subgraphs are built on
+	 */
+	public SubgraphManager(Graph base) {
+		this.base = base;
+		this.element = base instanceof FilteredGraph ? ((FilteredGraph) base).element
+				: base;
+
+		subgraphs = new FilteredGraph[64];
+		count = 0;
+		words = 1;
+		nodeMasks = new long[0];
+		edgeMasks = new long[0];
+		nodeWatchers = new HashMap<String, long[]>();
+		edgeWatchers = new HashMap<String, long[]>();
+		watchersChanged = false;
+		pending = new ArrayList<FilteredGraph>();
+
+		sink = new ManagerSink();
+		element.addSink(sink);
+	}
+
+	/**
+	 * Create a new subgraph.
+	 *
+	 * @param id
+	 *            id of the subgraph
+	 * @param nf
+	 *            the node filter
+	 * @param ef
+	 *            the edge filter
+	 * @return the new subgraph
+	 */
+	public FilteredGraph newSubgraph(String id, Filter<Node> nf,
+			Filter<Edge> ef) {
+		return newSubgraph(id, nf, ef, false);
+	}
+
+	/**
+	 * Create a new subgraph, in lazy mode or not.
+	 *
+	 * @param id
+	 *            id of the subgraph
+	 * @param nf
+	 *            the node filter
+	 * @param ef
+	 *            the edge filter
+	 * @param lazy
+	 *            true to create wrappers on demand
+	 * @return the new subgraph
+	 * @see FilteredGraph#setLazy(boolean)
+	 */
+	public FilteredGraph newSubgraph(String id, Filter<Node> nf,
+			Filter<Edge> ef, boolean lazy) {
+		return new FilteredGraph(id, base, nf, ef, lazy, this);
+	}
+
+	/**
+	 * Get the count of subgraphs which have not been destroyed.
+	 *
+	 * @return count of subgraphs
+	 */
+	public int getSubgraphCount() {
+		return count;
+	}
+
+	/**
+	 * Get the graph subgraphs are built on.
+	 *
+	 * @return the base graph
+	 */
+	public Graph getBaseGraph() {
+		return base;
+	}
+
+	/**
+	 * Destroy all the subgraphs and unregister the sink of this manager.
+	 */
+	public void destroy() {
+		for (int i = 0; i < subgraphs.length; i++) {
+			if (subgraphs[i] != null)
+				subgraphs[i].destroy();
+		}
+
+		element.removeSink(sink);
+	}
+
+	/**
+	 * Give a slot to a new subgraph and register its elements.
+	 */
+	void attach(FilteredGraph g) {
+		int slot = 0;
+
+		while (slot < subgraphs.length && subgraphs[slot] != null)
+			slot++;
+
+		if (slot == subgraphs.length)
+			subgraphs = Arrays.copyOf(subgraphs, slot * 2);
+
+		if (slot >= words * 64)
+			widen(words * 2);
+
+		subgraphs[slot] = g;
+		g.slot = slot;
+		count++;
+
+		for (int i = 0; i < g.nodes.size(); i++)
+			included(slot, g.nodes.element(i));
+
+		for (int i = 0; i < g.edges.size(); i++)
+			included(slot, g.edges.element(i));
+
+		watchersChanged = true;
+	}
+
+	/**
+	 * Free the slot of a destroyed subgraph, which is empty.
+	 */
+	void detach(FilteredGraph g) {
+		if (g.slot < 0 || subgraphs[g.slot] != g)
+			return;
+
+		subgraphs[g.slot] = null;
+		g.slot = -1;
+		pending.remove(g);
+		count--;
+
+		watchersChanged = true;
+	}
+
+	/**
+	 * Called when the filters of a subgraph change.
+	 */
+	void filtersChanged() {
+		watchersChanged = true;
+	}
+
+	void included(int slot, Node n) {
+		nodeMasks = set(nodeMasks, n.getIndex(), slot);
+	}
+
+	void included(int slot, Edge e) {
+		edgeMasks = set(edgeMasks, e.getIndex(), slot);
+	}
+
+	void excluded(int slot, Node n) {
+		clear(nodeMasks, n.getIndex(), slot);
+	}
+
+	void excluded(int slot, Edge e) {
+		clear(edgeMasks, e.getIndex(), slot);
+	}
+
+	/**
+	 * Called before a subgraph removes all its elements.
+	 */
+	void emptied(FilteredGraph g) {
+		for (int i = 0; i < g.nodes.size(); i++)
+			excluded(g.slot, g.nodes.element(i));
+
+		for (int i = 0; i < g.edges.size(); i++)
+			excluded(g.slot, g.edges.element(i));
+	}
+
+	private long[] set(long[] masks, int index, int slot) {
+		int p = index * words + (slot >>> 6);
+
+		if (p >= masks.length)
+			masks = Arrays.copyOf(masks, Math.max((index + 1) * words,
+					masks.length * 2));
+
+		masks[p] |= 1L << slot;
+		return masks;
+	}
+
+	private void clear(long[] masks, int index, int slot) {
+		int p = index * words + (slot >>> 6);
+
+		if (p < masks.length)
+			masks[p] &= ~(1L << slot);
+	}
+
+	private long word(long[] masks, int index, int w) {
+		int p = index * words + w;
+		return index >= 0 && p < masks.length ? masks[p] : 0;
+	}
+
+	/**
+	 * Change the count of words of the masks.
+	 */
+	private void widen(int newWords) {
+		nodeMasks = widen(nodeMasks, newWords);
+		edgeMasks = widen(edgeMasks, newWords);
+		words = newWords;
+		watchersChanged = true;
+	}
+
+	private long[] widen(long[] masks, int newWords) {
+		int n = masks.length / words;
+		long[] wider = new long[n * newWords];
+
+		for (int i = 0; i < n; i++)
+			System.arraycopy(masks, i * words, wider, i * newWords, words);
+
+		return wider;
+	}
+
+	/**
+	 * Move the mask of the last element to the index of a removed element,
+	 * as the base graph does with the elements.
+	 */
+	private void relocate(long[] masks, int index, int last) {
+		for (int w = 0; w < words; w++) {
+			int p = index * words + w;
+
+			if (p < masks.length)
+				masks[p] = index == last ? 0 : word(masks, last, w);
+
+			if (last * words + w < masks.length)
+				masks[last * words + w] = 0;
+		}
+	}
+
+	private void computeWatchers() {
+		nodeWatchers.clear();
+		edgeWatchers.clear();
+
+		for (int slot = 0; slot < subgraphs.length; slot++) {
+			FilteredGraph g = subgraphs[slot];
+
+			if (g == null)
+				continue;
+
+			watch(nodeWatchers, g.nodeFilterKeys, slot);
+			watch(edgeWatchers, g.edgeFilterKeys, slot);
+		}
+
+		watchersChanged = false;
+	}
+
+	private void watch(HashMap<String, long[]> watchers, Set<String> keys,
+			int slot) {
+		if (keys == null)
+			return;
+
+		for (String key : keys) {
+			long[] mask = watchers.get(key);
+
+			if (mask == null) {
+				mask = new long[words];
+				watchers.put(key, mask);
+			}
+
+			mask[slot >>> 6] |= 1L << slot;
+		}
+	}
+
+	private long[] nodeWatchers(String key) {
+		if (watchersChanged)
+			computeWatchers();
+
+		return nodeWatchers.get(key);
+	}
+
+	private long[] edgeWatchers(String key) {
+		if (watchersChanged)
+			computeWatchers();
+
+		return edgeWatchers.get(key);
+	}
+
+	/**
+	 * Evaluate the subgraphs waiting for the removal of an attribute.
+	 */
+	void refilterPending() {
+		if (pending.isEmpty())
+			return;
+
+		for (int i = 0; i < pending.size(); i++)
+			pending.get(i).refilterPending();
+
+		pending.clear();
+	}
+
+	/**
+	 * Bring the subgraphs up to date when one of them is flushed. Subgraphs
+	 * evaluate their own elements waiting for the removal of an attribute, so
+	 * there is nothing to do by default.
+	 */
+	void refresh() {
+	}
+
+	/**
+	 * Add the subgraphs of a mask watching an attribute to the pending ones.
+	 */
+	private void pending(long[] watchers) {
+		if (watchers == null)
+			return;
+
+		for (int w = 0; w < watchers.length; w++) {
+			long bits = watchers[w];
+
+			while (bits != 0) {
+				int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				if (subgraphs[slot] != null)
+					pending.add(subgraphs[slot]);
+			}
+		}
+	}
+
+	/*
+	 * Kinds of events routed to the subgraphs.
+	 */
+	static final int NODE_ADDED = 0;
+	static final int NODE_REMOVED = 1;
+	static final int EDGE_ADDED = 2;
+	static final int EDGE_REMOVED = 3;
+	static final int NODE_ATTRIBUTE_ADDED = 4;
+	static final int NODE_ATTRIBUTE_CHANGED = 5;
+	static final int NODE_ATTRIBUTE_REMOVED = 6;
+	static final int EDGE_ATTRIBUTE_ADDED = 7;
+	static final int EDGE_ATTRIBUTE_CHANGED = 8;
+	static final int EDGE_ATTRIBUTE_REMOVED = 9;
+	static final int STEP_BEGINS = 10;
+	static final int GRAPH_CLEARED = 11;
+
+	/**
+	 * Send an event to the subgraphs whose slot is in the masks of one or two
+	 * elements or in a mask of watchers, or to all the subgraphs if no mask is
+	 * given.
+	 */
+	private void route(long[] masks, int i0, int i1, long[] watchers,
+			int type, String sourceId, long timeId, String id, String a,
+			Object v0, Object v1, boolean directed, double step) {
+		for (int w = 0; w < words; w++) {
+			long bits;
+
+			if (masks == null)
+				bits = -1L;
+			else
+				bits = word(masks, i0, w) | word(masks, i1, w)
+						| (watchers == null ? 0 : watchers[w]);
+
+			while (bits != 0) {
+				int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				if (slot >= subgraphs.length)
+					break;
+
+				FilteredGraph g = subgraphs[slot];
+
+				if (g != null)
+					deliver(g.filteredSink, type, sourceId, timeId, id, a,
+							v0, v1, directed, step);
+			}
+		}
+	}
+
+	private void deliver(Sink s, int type, String sourceId, long timeId,
+			String id, String a, Object v0, Object v1, boolean directed,
+			double step) {
+		switch (type) {
+		case NODE_ADDED:
+			s.nodeAdded(sourceId, timeId, id);
+			break;
+		case NODE_REMOVED:
+			s.nodeRemoved(sourceId, timeId, id);
+			break;
+		case EDGE_ADDED:
+			s.edgeAdded(sourceId, timeId, id, a, (String) v0, directed);
+			break;
+		case EDGE_REMOVED:
+			s.edgeRemoved(sourceId, timeId, id);
+			break;
+		case NODE_ATTRIBUTE_ADDED:
+			s.nodeAttributeAdded(sourceId, timeId, id, a, v1);
+			break;
+		case NODE_ATTRIBUTE_CHANGED:
+			s.nodeAttributeChanged(sourceId, timeId, id, a, v0, v1);
+			break;
+		case NODE_ATTRIBUTE_REMOVED:
+			s.nodeAttributeRemoved(sourceId, timeId, id, a);
+			break;
+		case EDGE_ATTRIBUTE_ADDED:
+			s.edgeAttributeAdded(sourceId, timeId, id, a, v1);
+			break;
+		case EDGE_ATTRIBUTE_CHANGED:
+			s.edgeAttributeChanged(sourceId, timeId, id, a, v0, v1);
+			break;
+		case EDGE_ATTRIBUTE_REMOVED:
+			s.edgeAttributeRemoved(sourceId, timeId, id, a);
+			break;
+		case STEP_BEGINS:
+			s.stepBegins(sourceId, timeId, step);
+			break;
+		case GRAPH_CLEARED:
+			s.graphCleared(sourceId, timeId);
+			break;
+		}
+	}
+
+	void routeNode(int type, String sourceId, long timeId,
+			String nodeId, String attribute, Object oldValue, Object newValue) {
+		refilterPending();
+
+		long[] watchers = nodeWatchers(attribute);
+		Node n = element.getNode(nodeId);
+		int i = n == null ? -1 : n.getIndex();
+
+		if (watchers != null || i >= 0)
+			route(nodeMasks, i, -1, watchers, type, sourceId, timeId, nodeId,
+					attribute, oldValue, newValue, false, 0);
+
+		if (type == NODE_ATTRIBUTE_REMOVED)
+			pending(watchers);
+	}
+
+	private void routeEdge(int type, String sourceId, long timeId,
+			String edgeId, String attribute, Object oldValue, Object newValue) {
+		refilterPending();
+
+		long[] watchers = edgeWatchers(attribute);
+		Edge e = element.getEdge(edgeId);
+		int i = e == null ? -1 : e.getIndex();
+
+		if (watchers != null || i >= 0)
+			route(edgeMasks, i, -1, watchers, type, sourceId, timeId, edgeId,
+					attribute, oldValue, newValue, false, 0);
+
+		if (type == EDGE_ATTRIBUTE_REMOVED)
+			pending(watchers);
+	}
+
+	private void routeAll(int type, String sourceId, long timeId, String id,
+			String a, Object v0, boolean directed, double step) {
+		refilterPending();
+		route(null, -1, -1, null, type, sourceId, timeId, id, a, v0, null,
+				directed, step);
+	}
+
+	/**
+	 * Send the addition of a node to the subgraphs which may include it, all
+	 * of them by default.
+	 */
+	void routeNodeAdded(String sourceId, long timeId, String nodeId) {
+		routeAll(NODE_ADDED, sourceId, timeId, nodeId, null, null, false, 0);
+	}
+
+	/**
+	 * Send the addition of an edge to the subgraphs which may include it, all
+	 * of them by default.
+	 */
+	void routeEdgeAdded(String sourceId, long timeId, String edgeId,
+			String fromNodeId, String toNodeId, boolean directed) {
+		routeAll(EDGE_ADDED, sourceId, timeId, edgeId, fromNodeId, toNodeId,
+				directed, 0);
+	}
+
+	/**
+	 * Tell if subgraphs evaluate their filters over the base graph when they
+	 * are created. Otherwise they are created empty, and filled by the
+	 * manager.
+	 */
+	boolean scansSubgraphs() {
+		return true;
+	}
+
+	/**
+	 * Get the first subgraph containing a node.
+	 * 
+	 * @return the subgraph, or null if no subgraph contains n
+	 */
+	FilteredGraph subgraphOf(Node n) {
+		return first(nodeMasks, n.getIndex());
+	}
+
+	/**
+	 * Get the first subgraph containing an edge.
+	 * 
+	 * @return the subgraph, or null if no subgraph contains e
+	 */
+	FilteredGraph subgraphOf(Edge e) {
+		return first(edgeMasks, e.getIndex());
+	}
+
+	/**
+	 * Get the subgraphs containing a node or another.
+	 * 
+	 * @param list
+	 *            list receiving the subgraphs, cleared first
+	 */
+	void subgraphsOf(Node n0, Node n1, ArrayList<FilteredGraph> list) {
+		int i0 = n0 == null ? -1 : n0.getIndex();
+		int i1 = n1 == null ? -1 : n1.getIndex();
+
+		list.clear();
+
+		for (int w = 0; w < words; w++) {
+			long bits = word(nodeMasks, i0, w) | word(nodeMasks, i1, w);
+
+			while (bits != 0) {
+				int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				if (slot < subgraphs.length && subgraphs[slot] != null)
+					list.add(subgraphs[slot]);
+			}
+		}
+	}
+
+	private FilteredGraph first(long[] masks, int index) {
+		for (int w = 0; w < words; w++) {
+			long bits = word(masks, index, w);
+
+			if (bits != 0)
+				return subgraphs[(w << 6) + Long.numberOfTrailingZeros(bits)];
+		}
+
+		return null;
+	}
+
+	/**
+	 * The sink of the base graph, routing its events to the subgraphs.
+	 */
+	private class ManagerSink implements Sink {
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.Object)
+		 */
+		public void graphAttributeAdded(String sourceId, long timeId,
+				String attribute, Object value) {
+			refilterPending();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.Object, java.lang.Object)
+		 */
+		public void graphAttributeChanged(String sourceId, long timeId,
+				String attribute, Object oldValue, Object newValue) {
+			refilterPending();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang
+		 * .String, long, java.lang.String)
+		 */
+		public void graphAttributeRemoved(String sourceId, long timeId,
+				String attribute) {
+			refilterPending();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void nodeAttributeAdded(String sourceId, long timeId,
+				String nodeId, String attribute, Object value) {
+			routeNode(NODE_ATTRIBUTE_ADDED, sourceId, timeId, nodeId,
+					attribute, null, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void nodeAttributeChanged(String sourceId, long timeId,
+				String nodeId, String attribute, Object oldValue,
+				Object newValue) {
+			routeNode(NODE_ATTRIBUTE_CHANGED, sourceId, timeId, nodeId,
+					attribute, oldValue, newValue);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void nodeAttributeRemoved(String sourceId, long timeId,
+				String nodeId, String attribute) {
+			routeNode(NODE_ATTRIBUTE_REMOVED, sourceId, timeId, nodeId,
+					attribute, null, null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object)
+		 */
+		public void edgeAttributeAdded(String sourceId, long timeId,
+				String edgeId, String attribute, Object value) {
+			routeEdge(EDGE_ATTRIBUTE_ADDED, sourceId, timeId, edgeId,
+					attribute, null, value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang
+		 * .String, long, java.lang.String, java.lang.String, java.lang.Object,
+		 * java.lang.Object)
+		 */
+		public void edgeAttributeChanged(String sourceId, long timeId,
+				String edgeId, String attribute, Object oldValue,
+				Object newValue) {
+			routeEdge(EDGE_ATTRIBUTE_CHANGED, sourceId, timeId, edgeId,
+					attribute, oldValue, newValue);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang
+		 * .String, long, java.lang.String, java.lang.String)
+		 */
+		public void edgeAttributeRemoved(String sourceId, long timeId,
+				String edgeId, String attribute) {
+			routeEdge(EDGE_ATTRIBUTE_REMOVED, sourceId, timeId, edgeId,
+					attribute, null, null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void nodeAdded(String sourceId, long timeId, String nodeId) {
+			routeNodeAdded(sourceId, timeId, nodeId);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+			refilterPending();
+
+			Node n = element.getNode(nodeId);
+
+			if (n == null)
+				return;
+
+			//
+			// Subgraphs containing the last node have to relocate it.
+			//
+			int i = n.getIndex();
+			int last = element.getNodeCount() - 1;
+
+			route(nodeMasks, i, last, null, NODE_REMOVED, sourceId, timeId,
+					nodeId, null, null, null, false, 0);
+			relocate(nodeMasks, i, last);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String,
+		 * long, java.lang.String, java.lang.String, java.lang.String, boolean)
+		 */
+		public void edgeAdded(String sourceId, long timeId, String edgeId,
+				String fromNodeId, String toNodeId, boolean directed) {
+			routeEdgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId,
+					directed);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+		 * long, java.lang.String)
+		 */
+		public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+			refilterPending();
+
+			Edge e = element.getEdge(edgeId);
+
+			if (e == null)
+				return;
+
+			int i = e.getIndex();
+			int last = element.getEdgeCount() - 1;
+
+			route(edgeMasks, i, last, null, EDGE_REMOVED, sourceId, timeId,
+					edgeId, null, null, null, false, 0);
+			relocate(edgeMasks, i, last);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+		 * long)
+		 */
+		public void graphCleared(String sourceId, long timeId) {
+			routeAll(GRAPH_CLEARED, sourceId, timeId, null, null, null, false,
+					0);
+
+			Arrays.fill(nodeMasks, 0);
+			Arrays.fill(edgeMasks, 0);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+		 * long, double)
+		 */
+		public void stepBegins(String sourceId, long timeId, double step) {
+			routeAll(STEP_BEGINS, sourceId, timeId, null, null, null, false,
+					step);
+		}
+	}
+}
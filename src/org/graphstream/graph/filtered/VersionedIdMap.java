@@ -0,0 +1,114 @@
+package org.graphstream.graph.filtered;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map from ids to the wrappers of a {@link ConcurrentFilteredGraph}, read
+ * consistently with the views it publishes.
+ *
+ * Views are numbered, and each entry holds the versions of the views in which
+ * its wrapper is present. A wrapper removed by a change keeps its entry until
+ * the view of this change is published, and a wrapper added by a change is
+ * ignored by readers until then. When an id is removed and added again before
+ * a view is published, the new entry keeps the previous one for the readers
+ * of the older views.
+ *
+ * Entries are only modified by the thread holding the lock of the graph.
+ * Entries which only matter to older views are dropped once a view is
+ * published.
+ *
+ * @param <T>
+ *            type of the wrappers
+ */
+final class VersionedIdMap<T> {
+
+	private static final long ALIVE = Long.MAX_VALUE;
+
+	private final ConcurrentHashMap<String, Entry<T>> entries;
+
+	/*
+	 * Ids changed since the last published view.
+	 */
+	private final ArrayList<String> changed;
+
+	VersionedIdMap() {
+		entries = new ConcurrentHashMap<String, Entry<T>>();
+		changed = new ArrayList<String>();
+	}
+
+	/**
+	 * Get the wrapper of an id in a view.
+	 *
+	 * @param id
+	 *            id of the element
+	 * @param version
+	 *            version of the view
+	 * @return the wrapper, or null if the id is not in the view
+	 */
+	T get(String id, long version) {
+		for (Entry<T> e = entries.get(id); e != null; e = e.previous) {
+			if (e.added <= version && version < e.removed)
+				return e.element;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Add a wrapper, present from a version on.
+	 */
+	void put(String id, T element, long version) {
+		Entry<T> e = entries.get(id);
+
+		entries.put(id, new Entry<T>(element, version, e));
+		changed.add(id);
+	}
+
+	/**
+	 * Remove the wrapper of an id, absent from a version on.
+	 */
+	void remove(String id, long version) {
+		Entry<T> e = entries.get(id);
+
+		if (e != null && e.removed == ALIVE) {
+			e.removed = version;
+			changed.add(id);
+		}
+	}
+
+	/**
+	 * Drop the entries of the ids changed since the previous view which are
+	 * not in the view just published.
+	 */
+	void published(long version) {
+		for (int i = 0; i < changed.size(); i++) {
+			String id = changed.get(i);
+			Entry<T> e = entries.get(id);
+
+			if (e == null)
+				continue;
+
+			if (e.removed <= version)
+				entries.remove(id, e);
+			else
+				e.previous = null;
+		}
+
+		changed.clear();
+	}
+
+	private static class Entry<T> {
+		final T element;
+		final long added;
+		volatile long removed;
+		volatile Entry<T> previous;
+
+		Entry(T element, long added, Entry<T> previous) {
+			this.element = element;
+			this.added = added;
+			this.removed = ALIVE;
+			this.previous = previous;
+		}
+	}
+}